@@ -0,0 +1,119 @@
+package com.theopeneffect.flexml.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+import com.theopeneffect.flexml.FlexibleImage;
+import com.theopeneffect.flexml.LayoutDescription;
+import com.theopeneffect.flexml.RenderPanel;
+
+/**
+ * Generates the layouts and panels the benchmarks run against. Layouts are
+ * generated from a fixed seed so every run measures the same screen.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+final class BenchmarkLayouts
+{
+	// Size of the headless surface panels are painted into
+	static final int PANEL_WIDTH = 1280;
+	static final int PANEL_HEIGHT = 720;
+	
+	private BenchmarkLayouts()
+	{
+		// Only static access
+	}
+	
+	/**
+	 * Generate a layout description with elements scattered over the panel
+	 * 
+	 * @param elements Number of elements
+	 * @param zDepth Number of distinct zScores to spread elements over
+	 * @return The layout description text
+	 */
+	static String generateLayout(int elements, int zDepth)
+	{
+		Random random = new Random(elements * 31L + zDepth);
+		StringBuilder layout = new StringBuilder(elements * 80);
+		layout.append("## Generated benchmark layout\n");
+		for (int i = 0; i < elements; i++)
+		{
+			double width = 2 + random.nextInt(20);
+			double height = 2 + random.nextInt(20);
+			layout.append("<id:\"element").append(i).append('"')
+			      .append("; posX:").append(random.nextInt(100 - (int)width)).append('%')
+			      .append("; posY:").append(random.nextInt(100 - (int)height)).append('%')
+			      .append("; width:").append(width).append('%')
+			      .append("; height:").append(height).append('%')
+			      .append("; zScore:").append(random.nextInt(zDepth))
+			      .append("; enterable:").append(random.nextBoolean())
+			      .append(">\n");
+		}
+		return layout.toString();
+	}
+	
+	/**
+	 * Parse a layout description from text
+	 * 
+	 * @param layout The layout description text
+	 * @return The parsed LayoutDescription
+	 */
+	static LayoutDescription parse(String layout)
+	{
+		return new LayoutDescription(new ByteArrayInputStream(layout.getBytes(Charset.forName("UTF-8"))));
+	}
+	
+	/**
+	 * Create a panel holding one small FlexibleImage for each generated element
+	 * 
+	 * @param elements Number of elements
+	 * @param zDepth Number of distinct zScores to spread elements over
+	 * @return A RenderPanel sized to the benchmark surface
+	 */
+	static RenderPanel createPanel(int elements, int zDepth)
+	{
+		RenderPanel panel = new RenderPanel(parse(generateLayout(elements, zDepth)), PANEL_WIDTH, PANEL_HEIGHT);
+		panel.setSize(PANEL_WIDTH, PANEL_HEIGHT);
+		Random random = new Random(elements);
+		for (int i = 0; i < elements; i++)
+		{
+			panel.add(new FlexibleImage(createImage(32, 32, new Color(random.nextInt())), "element" + i));
+		}
+		return panel;
+	}
+	
+	/**
+	 * Create a solid image with a border
+	 * 
+	 * @param width Width of the image
+	 * @param height Height of the image
+	 * @param color Fill color
+	 * @return The image
+	 */
+	static BufferedImage createImage(int width, int height, Color color)
+	{
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(color);
+		g.fillRect(0, 0, width, height);
+		g.setColor(Color.BLACK);
+		g.drawRect(0, 0, width - 1, height - 1);
+		g.dispose();
+		return image;
+	}
+	
+	/**
+	 * Create the headless surface panels are painted into
+	 * 
+	 * @return An image the size of the benchmark panel
+	 */
+	static BufferedImage createSurface()
+	{
+		return new BufferedImage(PANEL_WIDTH, PANEL_HEIGHT, BufferedImage.TYPE_INT_RGB);
+	}
+}
@@ -0,0 +1,95 @@
+package com.theopeneffect.flexml.benchmarks;
+
+import java.awt.EventQueue;
+import java.awt.event.MouseEvent;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.theopeneffect.flexml.RenderPanel;
+
+/**
+ * Measures the latency of dispatching a single mouse press or mouse move to the
+ * Renderable under the pointer, at points spread over the whole panel. Moves are
+ * resolved on the event dispatch thread, so each move waits for its resolution.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class HitTestBenchmark
+{
+	// Number of distinct points cycled through, so no single cell dominates
+	private static final int POINTS = 1024;
+	
+	@Param({"100", "1000", "5000"})
+	public int elements;
+	
+	@Param({"1", "4", "12"})
+	public int zDepth;
+	
+	// Waits for everything already queued on the event dispatch thread
+	private static final Runnable FLUSH = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			// Do Nothing
+		}
+	};
+	
+	private RenderPanel panel;
+	private MouseEvent[] presses;
+	private MouseEvent[] moves;
+	private int next;
+	
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		panel = BenchmarkLayouts.createPanel(elements, zDepth);
+		
+		// Paint once so everything a real panel would have resolved is in place
+		panel.paint(BenchmarkLayouts.createSurface().createGraphics());
+		
+		Random random = new Random(42);
+		presses = new MouseEvent[POINTS];
+		moves = new MouseEvent[POINTS];
+		for (int i = 0; i < POINTS; i++)
+		{
+			int x = random.nextInt(BenchmarkLayouts.PANEL_WIDTH);
+			int y = random.nextInt(BenchmarkLayouts.PANEL_HEIGHT);
+			presses[i] = new MouseEvent(panel, MouseEvent.MOUSE_PRESSED, 0, 0, x, y, 1, false, MouseEvent.BUTTON1);
+			moves[i] = new MouseEvent(panel, MouseEvent.MOUSE_MOVED, 0, 0, x, y, 0, false, MouseEvent.NOBUTTON);
+		}
+	}
+	
+	@Benchmark
+	public void mousePressed()
+	{
+		panel.mousePressed(presses[next++ & (POINTS - 1)]);
+	}
+	
+	@Benchmark
+	public void mouseMoved() throws Exception
+	{
+		panel.mouseMoved(moves[next++ & (POINTS - 1)]);
+		EventQueue.invokeAndWait(FLUSH);
+	}
+}
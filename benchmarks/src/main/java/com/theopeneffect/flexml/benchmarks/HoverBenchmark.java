@@ -0,0 +1,95 @@
+package com.theopeneffect.flexml.benchmarks;
+
+import java.awt.EventQueue;
+import java.awt.event.MouseEvent;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.theopeneffect.flexml.RenderPanel;
+
+/**
+ * Measures the cost of a burst of mouse movement, from the movement events
+ * reaching the panel to the hover state of the renderables being brought up to
+ * date on the event dispatch thread.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class HoverBenchmark
+{
+	// Number of distinct points cycled through, so no single cell dominates
+	private static final int POINTS = 1024;
+
+	// Largest step of the simulated pointer between events, in pixels
+	private static final int MAX_STEP = 12;
+
+	// Waits for everything already queued on the event dispatch thread
+	private static final Runnable FLUSH = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			// Do Nothing
+		}
+	};
+
+	@Param({"100", "1000", "5000"})
+	public int elements;
+
+	@Param({"1", "50"})
+	public int burst;
+
+	private RenderPanel panel;
+	private MouseEvent[] moves;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		panel = BenchmarkLayouts.createPanel(elements, 4);
+
+		// Paint once so everything a real panel would have resolved is in place
+		panel.paint(BenchmarkLayouts.createSurface().createGraphics());
+
+		// A pointer wandering across the panel, as a user's would
+		Random random = new Random(42);
+		moves = new MouseEvent[POINTS];
+		int x = BenchmarkLayouts.PANEL_WIDTH / 2;
+		int y = BenchmarkLayouts.PANEL_HEIGHT / 2;
+		for (int i = 0; i < POINTS; i++)
+		{
+			x = Math.max(0, Math.min(BenchmarkLayouts.PANEL_WIDTH - 1, x + random.nextInt(MAX_STEP * 2 + 1) - MAX_STEP));
+			y = Math.max(0, Math.min(BenchmarkLayouts.PANEL_HEIGHT - 1, y + random.nextInt(MAX_STEP * 2 + 1) - MAX_STEP));
+			moves[i] = new MouseEvent(panel, MouseEvent.MOUSE_MOVED, 0, 0, x, y, 0, false, MouseEvent.NOBUTTON);
+		}
+	}
+
+	@Benchmark
+	public void motionBurst() throws Exception
+	{
+		for (int i = 0; i < burst; i++)
+		{
+			panel.mouseMoved(moves[next++ & (POINTS - 1)]);
+		}
+		EventQueue.invokeAndWait(FLUSH);
+	}
+}
@@ -0,0 +1,83 @@
+package com.theopeneffect.flexml.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.theopeneffect.flexml.FlexibleImage;
+import com.theopeneffect.flexml.LayoutDescription;
+import com.theopeneffect.flexml.RenderPanel;
+import com.theopeneffect.flexml.ScaledImageCache;
+
+/**
+ * Measures drawing a large FlexibleImage scaled into a smaller box at each
+ * RenderPanel quality level, with and without the shared scaled image cache.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ImageScalingBenchmark
+{
+	@Param({"1", "2", "3"})
+	public int quality;
+	
+	@Param({"false", "true"})
+	public boolean scaledImageCache;
+	
+	private RenderPanel panel;
+	private BufferedImage surface;
+	private Graphics2D graphics;
+	
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		// A 2048x2048 image drawn into a 40% x 60% box of the panel
+		LayoutDescription layout = new LayoutDescription(new ByteArrayInputStream(
+				"<id:image; posX:10%; posY:10%; width:40%; height:60%; zScore:0>".getBytes()));
+		panel = new RenderPanel(layout, BenchmarkLayouts.PANEL_WIDTH, BenchmarkLayouts.PANEL_HEIGHT);
+		panel.setSize(BenchmarkLayouts.PANEL_WIDTH, BenchmarkLayouts.PANEL_HEIGHT);
+		panel.setQuality(quality);
+		panel.add(new FlexibleImage(BenchmarkLayouts.createImage(2048, 2048, Color.ORANGE), "image"));
+		
+		ScaledImageCache.clear();
+		ScaledImageCache.setCapacity(scaledImageCache ? 64L * 1024 * 1024 : 0);
+		surface = BenchmarkLayouts.createSurface();
+		graphics = surface.createGraphics();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		graphics.dispose();
+		ScaledImageCache.clear();
+	}
+	
+	@Benchmark
+	public BufferedImage drawScaledImage()
+	{
+		panel.paint(graphics);
+		return surface;
+	}
+}
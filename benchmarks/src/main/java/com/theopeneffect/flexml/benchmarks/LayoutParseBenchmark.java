@@ -0,0 +1,83 @@
+package com.theopeneffect.flexml.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.theopeneffect.flexml.LayoutDescription;
+
+/**
+ * Measures loading generated layouts of 1k to 100k elements, both by parsing the
+ * text format and by opening the compiled binary format.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LayoutParseBenchmark
+{
+	@Param({"1000", "10000", "100000"})
+	public int lines;
+	
+	private byte[] layoutText;
+	private File compiledLayout;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException
+	{
+		String layout = BenchmarkLayouts.generateLayout(lines, 12);
+		layoutText = layout.getBytes(Charset.forName("UTF-8"));
+		
+		compiledLayout = File.createTempFile("flexml-benchmark", ".flb");
+		OutputStream output = new FileOutputStream(compiledLayout);
+		try
+		{
+			BenchmarkLayouts.parse(layout).writeCompiled(output);
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		compiledLayout.delete();
+	}
+	
+	@Benchmark
+	public LayoutDescription parseText()
+	{
+		return new LayoutDescription(new ByteArrayInputStream(layoutText));
+	}
+	
+	@Benchmark
+	public LayoutDescription loadCompiled() throws IOException
+	{
+		return LayoutDescription.loadCompiled(compiledLayout);
+	}
+}
@@ -0,0 +1,72 @@
+package com.theopeneffect.flexml.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.theopeneffect.flexml.RenderPanel;
+
+/**
+ * Measures painting a full frame of a RenderPanel into a headless BufferedImage,
+ * across element counts and zScore depths, with and without layer caching.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class PaintBenchmark
+{
+	@Param({"100", "1000", "5000"})
+	public int elements;
+	
+	@Param({"1", "4", "12"})
+	public int zDepth;
+	
+	@Param({"false", "true"})
+	public boolean layerCaching;
+	
+	private RenderPanel panel;
+	private BufferedImage surface;
+	private Graphics2D graphics;
+	
+	@Setup(Level.Trial)
+	public void setUp()
+	{
+		panel = BenchmarkLayouts.createPanel(elements, zDepth);
+		panel.setLayerCaching(layerCaching);
+		surface = BenchmarkLayouts.createSurface();
+		graphics = surface.createGraphics();
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		graphics.dispose();
+	}
+	
+	@Benchmark
+	public BufferedImage paintFrame()
+	{
+		panel.paint(graphics);
+		return surface;
+	}
+}
@@ -0,0 +1,332 @@
+package com.theopeneffect.flexml;
+
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+
+/**
+ * Draws a RenderPanel continuously from a dedicated render thread, through a
+ * double-buffered BufferStrategy, at a steady target frame rate. Each frame the
+ * panel's Animated renderables and tweens are advanced by the time since the
+ * previous frame, and the whole panel is drawn and shown, without posting
+ * repaints to the event dispatch thread.
+ *
+ * Add the ActiveRenderLoop to a window in place of the RenderPanel, and call start
+ * once it is displayed. Mouse and keyboard events received by the loop are passed
+ * to the panel on the event dispatch thread as usual.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+public class ActiveRenderLoop extends Canvas implements Runnable
+{
+	private static final long serialVersionUID = 0xFEED;
+
+	/**
+	 * What to do when frames are missed because a frame, or something else on the
+	 * machine, took longer than the frame period
+	 */
+	public static enum SkippedFramePolicy
+	{
+		/**
+		 * Drop the missed frames and start a new schedule from the next frame. Animations
+		 * are advanced once by the whole time elapsed.
+		 */
+		DROP,
+
+		/**
+		 * Keep to the original schedule, advancing animations once for each missed frame
+		 * period (up to a limit) before drawing a single frame, so animations which
+		 * depend on even steps stay smooth.
+		 */
+		CATCH_UP
+	}
+
+	// Most missed frames CATCH_UP advances animations through individually
+	private static final int MAX_CATCH_UP_FRAMES = 5;
+
+	// Time before a frame is due at which to stop sleeping and wait by yielding, for accurate pacing
+	private static final long SPIN_NANOS = 1000000L;
+
+	private static final long NANOS_PER_SECOND = 1000000000L;
+
+	// The panel drawn each frame
+	private final RenderPanel panel;
+
+	private volatile int targetFramesPerSecond;
+	private volatile SkippedFramePolicy skippedFramePolicy = SkippedFramePolicy.DROP;
+
+	// The thread drawing frames, or null when stopped
+	private volatile Thread renderThread = null;
+
+	// Frames drawn and frames missed since the loop was created
+	private volatile long framesRendered = 0;
+	private volatile long framesSkipped = 0;
+
+	/**
+	 * Create an ActiveRenderLoop drawing the provided RenderPanel
+	 *
+	 * @param panel The RenderPanel to draw
+	 * @param targetFramesPerSecond Frame rate to draw at
+	 */
+	public ActiveRenderLoop(RenderPanel panel, int targetFramesPerSecond)
+	{
+		this.panel = panel;
+		setTargetFramesPerSecond(targetFramesPerSecond);
+		setPreferredSize(panel.getPreferredSize());
+		setMinimumSize(panel.getMinimumSize());
+
+		// Frames are drawn by the render thread, so system repaints are ignored while it runs
+		setIgnoreRepaint(true);
+		setFocusTraversalKeysEnabled(false);
+		addMouseListener(panel);
+		addMouseMotionListener(panel);
+		addMouseWheelListener(panel);
+		addKeyListener(panel);
+	}
+
+	/**
+	 * Create an ActiveRenderLoop drawing the provided RenderPanel at 60 frames per second
+	 *
+	 * @param panel The RenderPanel to draw
+	 */
+	public ActiveRenderLoop(RenderPanel panel)
+	{
+		this(panel, 60);
+	}
+
+	public int getTargetFramesPerSecond()
+	{
+		return targetFramesPerSecond;
+	}
+
+	public void setTargetFramesPerSecond(int targetFramesPerSecond)
+	{
+		if (targetFramesPerSecond <= 0)
+		{
+			throw new IllegalArgumentException("Target frame rate must be positive");
+		}
+		this.targetFramesPerSecond = targetFramesPerSecond;
+	}
+
+	public SkippedFramePolicy getSkippedFramePolicy()
+	{
+		return skippedFramePolicy;
+	}
+
+	public void setSkippedFramePolicy(SkippedFramePolicy skippedFramePolicy)
+	{
+		this.skippedFramePolicy = skippedFramePolicy;
+	}
+
+	/**
+	 * Get the number of frames drawn
+	 *
+	 * @return Frames drawn since the loop was created
+	 */
+	public long getFramesRendered()
+	{
+		return framesRendered;
+	}
+
+	/**
+	 * Get the number of frames missed because earlier frames ran late
+	 *
+	 * @return Frames missed since the loop was created
+	 */
+	public long getFramesSkipped()
+	{
+		return framesSkipped;
+	}
+
+	/**
+	 * Start drawing frames on the render thread, if not already started
+	 */
+	public synchronized void start()
+	{
+		if (renderThread == null)
+		{
+			// Tweens are advanced by each frame rather than the Animator's shared timer
+			panel.getAnimator().setExternallyClocked(true);
+			Thread thread = new Thread(this, "FlexML render loop");
+			thread.setDaemon(true);
+			renderThread = thread;
+			thread.start();
+		}
+	}
+
+	/**
+	 * Stop drawing frames, waiting for the frame being drawn to finish
+	 */
+	public void stop()
+	{
+		Thread thread;
+		synchronized (this)
+		{
+			thread = renderThread;
+			renderThread = null;
+		}
+		if (thread != null && thread != Thread.currentThread())
+		{
+			thread.interrupt();
+			try
+			{
+				thread.join();
+			} catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+		}
+		if (thread != null)
+		{
+			panel.getAnimator().setExternallyClocked(false);
+		}
+	}
+
+	/**
+	 * Stop the render thread before the BufferStrategy is lost along with the native window
+	 */
+	@Override
+	public void removeNotify()
+	{
+		stop();
+		super.removeNotify();
+	}
+
+	/**
+	 * Draw the panel directly when the render thread isn't running
+	 */
+	@Override
+	public void paint(Graphics g)
+	{
+		if (renderThread == null)
+		{
+			panel.setSize(getWidth(), getHeight());
+			panel.paint(g);
+		}
+	}
+
+	/**
+	 * Draw frames at the target frame rate until stopped
+	 */
+	@Override
+	public void run()
+	{
+		long lastTick = System.nanoTime();
+		long nextFrame = lastTick;
+		while (renderThread == Thread.currentThread())
+		{
+			long period = NANOS_PER_SECOND / targetFramesPerSecond;
+			if (!waitUntil(nextFrame))
+			{
+				return;
+			}
+
+			// Frames which should have started during a late frame have been missed
+			long now = System.nanoTime();
+			long missed = (now - nextFrame) / period;
+			if (missed > 0)
+			{
+				framesSkipped += missed;
+				if (skippedFramePolicy == SkippedFramePolicy.CATCH_UP)
+				{
+					long steps = Math.min(missed, MAX_CATCH_UP_FRAMES);
+					for (int i = 0; i < steps; i++)
+					{
+						panel.tick(period);
+					}
+					lastTick += steps * period;
+					nextFrame += missed * period;
+				}
+				else
+				{
+					nextFrame = now;
+				}
+			}
+
+			panel.tick(now - lastTick);
+			lastTick = now;
+			if (render())
+			{
+				framesRendered++;
+			}
+			nextFrame += period;
+		}
+	}
+
+	/**
+	 * Sleep until shortly before a time, then yield until it arrives
+	 *
+	 * @param time Time to wait until, as given by System.nanoTime
+	 * @return Whether the wait finished, rather than being interrupted
+	 */
+	private boolean waitUntil(long time)
+	{
+		try
+		{
+			long remaining = time - System.nanoTime();
+			if (remaining > SPIN_NANOS)
+			{
+				Thread.sleep((remaining - SPIN_NANOS) / 1000000L);
+			}
+			while (System.nanoTime() < time)
+			{
+				Thread.yield();
+			}
+			return true;
+		} catch (InterruptedException e) { return false; }
+	}
+
+	/**
+	 * Draw the panel to the back buffer and show it, drawing again if the buffer's
+	 * contents were lost along the way
+	 *
+	 * @return Whether a frame was shown
+	 */
+	private boolean render()
+	{
+		int width = getWidth();
+		int height = getHeight();
+		if (!isDisplayable() || width <= 0 || height <= 0)
+		{
+			return false;
+		}
+		if (panel.getWidth() != width || panel.getHeight() != height)
+		{
+			panel.setSize(width, height);
+		}
+
+		try
+		{
+			BufferStrategy strategy = getBufferStrategy();
+			if (strategy == null)
+			{
+				createBufferStrategy(2);
+				strategy = getBufferStrategy();
+			}
+
+			Color background = getBackground() != null ? getBackground() : Color.BLACK;
+			do
+			{
+				do
+				{
+					Graphics g = strategy.getDrawGraphics();
+					try
+					{
+						// The back buffer still holds an older frame, so clear it first
+						g.setClip(0, 0, width, height);
+						g.setColor(background);
+						g.fillRect(0, 0, width, height);
+						panel.paint(g);
+					}
+					finally
+					{
+						g.dispose();
+					}
+				} while (strategy.contentsRestored());
+				strategy.show();
+			} while (strategy.contentsLost());
+			Toolkit.getDefaultToolkit().sync();
+			return true;
+		} catch (IllegalStateException e) { return false; } // The window was closed while drawing
+	}
+}
@@ -0,0 +1,19 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Implemented by Renderables which animate over time. While on the screen, an
+ * Animated Renderable is advanced once per frame by the RenderPanel's clock, such
+ * as an ActiveRenderLoop, and should invalidate itself when its appearance changes.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public interface Animated
+{
+	/**
+	 * Advance the animation
+	 * 
+	 * @param deltaNanos Time since the previous tick, in nanoseconds
+	 */
+	public void tick(long deltaNanos);
+}
@@ -0,0 +1,318 @@
+package com.theopeneffect.flexml;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.swing.Timer;
+
+/**
+ * Runs the Tweens animating the elements of a RenderPanel. Animated values are
+ * held by the Animator and override the values in the panel's layout, which is
+ * left unchanged, until reset.
+ *
+ * Every running tween of every Animator is advanced together once per frame,
+ * by a single timer shared by all Animators on the event dispatch thread, or by
+ * the panel's ActiveRenderLoop when it has one. The elements changed by a frame
+ * are passed to the panel in one batch, which repaints only the areas they moved
+ * through.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+public class Animator
+{
+	// Interval of the shared timer, for about 60 frames per second
+	private static final int FRAME_MILLIS = 16;
+
+	// Animators with running tweens which are advanced by the shared timer. Code holding
+	// both locks always takes the lock on Animator.class before an Animator's own monitor.
+	private static final ArrayList<Animator> timedAnimators = new ArrayList<Animator>();
+
+	// Timer advancing every timed Animator, created on first use
+	private static Timer sharedTimer;
+
+	// Panel the animated elements belong to
+	private final RenderPanel panel;
+
+	// Running tweens, in the order they were started
+	private final ArrayList<Tween> tweens = new ArrayList<Tween>();
+
+	// Animated value of each property of each animated element, NaN where a property isn't animated
+	private final HashMap<String, double[]> values = new HashMap<String, double[]>();
+
+	// Whether the panel's frames are driven by something other than the shared timer
+	private boolean externallyClocked = false;
+
+	// Time this Animator was last advanced by the shared timer
+	private long lastFrameNanos;
+
+	/**
+	 * Create an Animator for the provided panel
+	 *
+	 * @param panel Panel the animated elements belong to
+	 */
+	Animator(RenderPanel panel)
+	{
+		this.panel = panel;
+	}
+
+	/**
+	 * Start running a tween. A running tween of the same property of the same
+	 * element is replaced, continuing from wherever it had reached.
+	 *
+	 * @param tween The tween to run
+	 */
+	public void start(Tween tween)
+	{
+		synchronized (this)
+		{
+			for (int i = tweens.size() - 1; i >= 0; i--)
+			{
+				Tween running = tweens.get(i);
+				if (running.getProperty() == tween.getProperty() && running.getIdentifier().equals(tween.getIdentifier()))
+				{
+					tweens.remove(i);
+				}
+			}
+			tweens.add(tween);
+		}
+		schedule();
+	}
+
+	/**
+	 * Stop every tween of an element, leaving it where the tweens had reached
+	 *
+	 * @param identifier Identifier of the element
+	 */
+	public synchronized void cancel(String identifier)
+	{
+		for (int i = tweens.size() - 1; i >= 0; i--)
+		{
+			if (tweens.get(i).getIdentifier().equals(identifier))
+			{
+				tweens.remove(i);
+			}
+		}
+	}
+
+	/**
+	 * Stop every tween of an element and return it to the position, size and
+	 * opacity described by the layout
+	 *
+	 * @param identifier Identifier of the element
+	 */
+	public void reset(String identifier)
+	{
+		boolean wasAnimated;
+		synchronized (this)
+		{
+			cancel(identifier);
+			wasAnimated = values.remove(identifier) != null;
+		}
+		if (wasAnimated)
+		{
+			panel.animationReset(identifier);
+		}
+	}
+
+	/**
+	 * Check whether any tweens are running
+	 *
+	 * @return Whether a tween is running
+	 */
+	public synchronized boolean isRunning()
+	{
+		return !tweens.isEmpty();
+	}
+
+	/**
+	 * Set whether the panel's frames are driven by something which calls
+	 * RenderPanel.tick, such as an ActiveRenderLoop, rather than the shared timer
+	 *
+	 * @param externallyClocked Whether tweens are advanced by RenderPanel.tick
+	 */
+	public void setExternallyClocked(boolean externallyClocked)
+	{
+		synchronized (this)
+		{
+			this.externallyClocked = externallyClocked;
+		}
+		if (externallyClocked)
+		{
+			synchronized (Animator.class)
+			{
+				timedAnimators.remove(this);
+			}
+		}
+		else
+		{
+			schedule();
+		}
+	}
+
+	/**
+	 * Advance every running tween and pass the elements they changed to the panel
+	 *
+	 * @param deltaNanos Time since the previous frame, in nanoseconds
+	 */
+	void advance(long deltaNanos)
+	{
+		HashSet<String> changed = new HashSet<String>();
+		ArrayList<Runnable> finished = new ArrayList<Runnable>();
+		synchronized (this)
+		{
+			if (tweens.isEmpty())
+			{
+				return;
+			}
+			for (int i = 0; i < tweens.size(); i++)
+			{
+				Tween tween = tweens.get(i);
+				int property = tween.getProperty().ordinal();
+				double[] elementValues = values.get(tween.getIdentifier());
+				double current = elementValues != null && !Double.isNaN(elementValues[property])
+						? elementValues[property] : panel.getLayoutValue(tween.getIdentifier(), tween.getProperty());
+				tween.advance(deltaNanos, current);
+				if (tween.hasBegun())
+				{
+					if (elementValues == null)
+					{
+						elementValues = new double[Tween.Property.values().length];
+						Arrays.fill(elementValues, Double.NaN);
+						values.put(tween.getIdentifier(), elementValues);
+					}
+					elementValues[property] = tween.getValue();
+					changed.add(tween.getIdentifier());
+				}
+				if (tween.isFinished())
+				{
+					tweens.remove(i--);
+					if (tween.getOnFinished() != null)
+					{
+						finished.add(tween.getOnFinished());
+					}
+				}
+			}
+		}
+
+		if (!changed.isEmpty())
+		{
+			panel.animatedPropertiesChanged(changed);
+		}
+		for (int i = 0; i < finished.size(); i++)
+		{
+			finished.get(i).run();
+		}
+	}
+
+	/**
+	 * Get the animated values of an element
+	 *
+	 * @param identifier Identifier of the element
+	 * @return A copy of the value of each Tween.Property by ordinal, NaN where a property isn't animated, or null if the element isn't animated
+	 */
+	synchronized double[] getValues(String identifier)
+	{
+		double[] elementValues = values.get(identifier);
+		return elementValues != null ? elementValues.clone() : null;
+	}
+
+	/**
+	 * Get the identifiers of every element with animated values
+	 *
+	 * @return A copy of the identifiers
+	 */
+	synchronized Set<String> getAnimatedIdentifiers()
+	{
+		return new HashSet<String>(values.keySet());
+	}
+
+	/**
+	 * Check whether any element has animated values
+	 *
+	 * @return Whether any element is animated
+	 */
+	synchronized boolean hasAnimatedValues()
+	{
+		return !values.isEmpty();
+	}
+
+	/**
+	 * Make sure the shared timer is advancing this Animator if it has tweens to run.
+	 * Must not be called while holding this Animator's monitor.
+	 */
+	private void schedule()
+	{
+		synchronized (Animator.class)
+		{
+			synchronized (this)
+			{
+				if (externallyClocked || tweens.isEmpty())
+				{
+					return;
+				}
+			}
+			if (!timedAnimators.contains(this))
+			{
+				lastFrameNanos = System.nanoTime();
+				timedAnimators.add(this);
+			}
+			if (sharedTimer == null)
+			{
+				sharedTimer = new Timer(FRAME_MILLIS, new ActionListener()
+				{
+					@Override
+					public void actionPerformed(ActionEvent e)
+					{
+						advanceTimedAnimators();
+					}
+				});
+				sharedTimer.setCoalesce(true);
+			}
+			if (!sharedTimer.isRunning())
+			{
+				sharedTimer.start();
+			}
+		}
+	}
+
+	/**
+	 * Advance every Animator on the shared timer, stopping the timer once none have tweens left
+	 */
+	private static void advanceTimedAnimators()
+	{
+		Animator[] animators;
+		synchronized (Animator.class)
+		{
+			animators = timedAnimators.toArray(new Animator[timedAnimators.size()]);
+		}
+
+		long now = System.nanoTime();
+		for (int i = 0; i < animators.length; i++)
+		{
+			Animator animator = animators[i];
+			animator.advance(now - animator.lastFrameNanos);
+			animator.lastFrameNanos = now;
+		}
+
+		synchronized (Animator.class)
+		{
+			for (int i = timedAnimators.size() - 1; i >= 0; i--)
+			{
+				if (!timedAnimators.get(i).isRunning())
+				{
+					timedAnimators.remove(i);
+				}
+			}
+			if (timedAnimators.isEmpty())
+			{
+				sharedTimer.stop();
+			}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package com.theopeneffect.flexml;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Renders many layouts, or one layout at many sizes, headlessly on a pool of
+ * worker threads, such as for generating thumbnails and report snapshots on a
+ * server.
+ *
+ * Each worker keeps the image it last rendered a PNG into and reuses it for the
+ * next PNG of the same size, so a batch of same-sized thumbnails allocates one
+ * raster per worker rather than one per image. Jobs for different LayoutRenderers
+ * run in parallel, while jobs for the same LayoutRenderer take turns. Each job
+ * first waits for the layout's FlexibleImages to finish loading, up to the image
+ * timeout, after which anything still loading is drawn as a placeholder.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+public class BatchRenderer
+{
+	// Threads running the render jobs
+	private final ExecutorService workers;
+
+	// Image each worker renders PNGs into, replaced when a job needs a different size
+	private final ThreadLocal<BufferedImage> buffers = new ThreadLocal<BufferedImage>();
+
+	// Longest time each job waits for its images to load, in milliseconds
+	private volatile long imageTimeoutMillis = 10000;
+
+	/**
+	 * Create a BatchRenderer with the provided number of worker threads
+	 *
+	 * @param threads Number of images to render at once
+	 */
+	public BatchRenderer(int threads)
+	{
+		if (threads <= 0)
+		{
+			throw new IllegalArgumentException("Thread count must be positive");
+		}
+		workers = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable runnable)
+			{
+				Thread thread = new Thread(runnable, "FlexML batch renderer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Create a BatchRenderer with a worker thread for each processor
+	 */
+	public BatchRenderer()
+	{
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Set the longest time each job waits for images loaded from URLs before
+	 * rendering, after which images still loading are drawn as placeholders
+	 *
+	 * @param imageTimeoutMillis Timeout in milliseconds, or 0 not to wait
+	 */
+	public void setImageTimeout(long imageTimeoutMillis)
+	{
+		this.imageTimeoutMillis = imageTimeoutMillis;
+	}
+
+	/**
+	 * Render a layout into a new image in the background
+	 *
+	 * @param renderer The layout and renderables to render
+	 * @param width Width of the image in pixels
+	 * @param height Height of the image in pixels
+	 * @return The image, once rendered
+	 */
+	public Future<BufferedImage> render(final LayoutRenderer renderer, final int width, final int height)
+	{
+		return workers.submit(new Callable<BufferedImage>()
+		{
+			@Override
+			public BufferedImage call() throws Exception
+			{
+				renderer.awaitImages(imageTimeoutMillis);
+				return renderer.render(width, height);
+			}
+		});
+	}
+
+	/**
+	 * Render a layout as a PNG in the background
+	 *
+	 * @param renderer The layout and renderables to render
+	 * @param width Width of the image in pixels
+	 * @param height Height of the image in pixels
+	 * @return The encoded PNG, once rendered
+	 */
+	public Future<byte[]> renderPNG(final LayoutRenderer renderer, final int width, final int height)
+	{
+		return workers.submit(new Callable<byte[]>()
+		{
+			@Override
+			public byte[] call() throws Exception
+			{
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				LayoutRenderer.writePNG(renderToBuffer(renderer, width, height), bytes);
+				return bytes.toByteArray();
+			}
+		});
+	}
+
+	/**
+	 * Render a layout as a PNG written to a stream in the background
+	 *
+	 * @param renderer The layout and renderables to render
+	 * @param width Width of the image in pixels
+	 * @param height Height of the image in pixels
+	 * @param outputStream Stream to write to, which is left open
+	 * @return Completes once the PNG has been written
+	 */
+	public Future<Void> writePNG(final LayoutRenderer renderer, final int width, final int height, final OutputStream outputStream)
+	{
+		return workers.submit(new Callable<Void>()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				LayoutRenderer.writePNG(renderToBuffer(renderer, width, height), outputStream);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Stop accepting jobs, letting jobs already submitted finish
+	 */
+	public void shutdown()
+	{
+		workers.shutdown();
+	}
+
+	/**
+	 * Render a layout into the calling worker's reusable image
+	 *
+	 * @param renderer The layout and renderables to render
+	 * @param width Width of the image in pixels
+	 * @param height Height of the image in pixels
+	 * @return The worker's image, valid until its next job
+	 * @throws InterruptedException If the worker is interrupted while waiting for images
+	 */
+	private BufferedImage renderToBuffer(LayoutRenderer renderer, int width, int height) throws InterruptedException
+	{
+		renderer.awaitImages(imageTimeoutMillis);
+		BufferedImage buffer = buffers.get();
+		if (buffer == null || buffer.getWidth() != width || buffer.getHeight() != height)
+		{
+			buffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			buffers.set(buffer);
+		}
+		renderer.render(buffer);
+		return buffer;
+	}
+}
@@ -0,0 +1,318 @@
+package com.theopeneffect.flexml;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * Reads and writes the precompiled binary layout format, which stores a layout
+ * as a table of identifiers followed by fixed-size property records:
+ *
+ * <pre>
+ * int    magic ('FXLB')
+ * int    version
+ * int    element count
+ * for each element: unsigned short byte length, UTF-8 identifier
+ * zero padding to a multiple of 4 bytes
+ * for each element: float posX, float posY, float width, float height, int zScore, int flags,
+ *                   float minWidth, float maxWidth, float minHeight, float maxHeight,
+ *                   int horizontal anchor element, int vertical anchor element
+ * </pre>
+ *
+ * The flags hold whether the element is enterable, which of its values are in
+ * pixels, and the kind of each anchor. Anchor elements are record numbers, or -1
+ * for the panel. Version 1 layouts, whose records end after the flags and have no
+ * constraints, can still be opened.
+ *
+ * A compiled layout is memory-mapped, so opening one only reads the identifier
+ * table. Properties are read straight from the mapped records when accessed.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+class CompiledLayout implements ElementStore
+{
+	// Identifies a compiled layout file
+	static final int MAGIC = 0x46584C42;
+
+	// Current version of the format
+	static final int VERSION = 2;
+
+	// Size of each property record in bytes, in this version and in version 1
+	private static final int RECORD_SIZE = 48;
+	private static final int VERSION_1_RECORD_SIZE = 24;
+
+	// Flag bits, followed by the LayoutConstraints pixel units and the ordinal + 1 of each anchor
+	private static final int FLAG_ENTERABLE = 1;
+	private static final int PIXEL_UNITS_SHIFT = 1;
+	private static final int HORIZONTAL_ANCHOR_SHIFT = 5;
+	private static final int VERTICAL_ANCHOR_SHIFT = 8;
+	private static final int ANCHOR_MASK = 7;
+
+	private static final LayoutConstraints.Anchor[] ANCHORS = LayoutConstraints.Anchor.values();
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	// The mapped file
+	private final ByteBuffer buffer;
+
+	// Identifier of each record, and the record number of each identifier
+	private final String[] identifiers;
+	private final HashMap<String, Integer> recordIndex;
+
+	// Offset of the first record in the buffer, and the size of each record
+	private final int recordsOffset;
+	private final int recordSize;
+
+	/**
+	 * Map a compiled layout file and read its identifier table
+	 *
+	 * @param file The compiled layout
+	 * @throws IOException If the file can't be read or isn't a compiled layout
+	 */
+	CompiledLayout(File file) throws IOException
+	{
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try
+		{
+			if (channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException(file + " is too large to be a compiled layout");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			// The mapping stays valid after the channel is closed
+			channel.close();
+		}
+
+		if (buffer.remaining() < 12 || buffer.getInt(0) != MAGIC)
+		{
+			throw new IOException(file + " is not a compiled layout");
+		}
+		if (buffer.getInt(4) == VERSION)
+		{
+			recordSize = RECORD_SIZE;
+		}
+		else if (buffer.getInt(4) == 1)
+		{
+			recordSize = VERSION_1_RECORD_SIZE;
+		}
+		else
+		{
+			throw new IOException(file + " is compiled layout version " + buffer.getInt(4) + ", expected " + VERSION);
+		}
+
+		// Every element takes at least its identifier's length and its record, so a larger count can't fit
+		int count = buffer.getInt(8);
+		int limit = buffer.limit();
+		if (count < 0 || count > (limit - 12) / (2 + recordSize))
+		{
+			throw new IOException(file + " is truncated or corrupt: it can't hold " + count + " elements");
+		}
+		identifiers = new String[count];
+		recordIndex = new HashMap<String, Integer>(count * 2);
+		int position = 12;
+		byte[] identifierBytes = new byte[256];
+		ByteBuffer identifierTable = buffer.duplicate();
+		for (int i = 0; i < count; i++)
+		{
+			if (position + 2 > limit)
+			{
+				throw new IOException(file + " is truncated");
+			}
+			int length = buffer.getShort(position) & 0xFFFF;
+			position += 2;
+			if (length > limit - position)
+			{
+				throw new IOException(file + " is truncated");
+			}
+			if (length > identifierBytes.length)
+			{
+				identifierBytes = new byte[length];
+			}
+			identifierTable.position(position);
+			identifierTable.get(identifierBytes, 0, length);
+			identifiers[i] = new String(identifierBytes, 0, length, UTF_8);
+			recordIndex.put(identifiers[i], i);
+			position += length;
+		}
+		recordsOffset = (position + 3) & ~3;
+		if (recordsOffset + (long)count * recordSize > limit)
+		{
+			throw new IOException(file + " is truncated");
+		}
+	}
+
+	@Override
+	public int size()
+	{
+		return identifiers.length;
+	}
+
+	@Override
+	public int indexOf(String identifier)
+	{
+		Integer record = recordIndex.get(identifier);
+		return record != null ? record : -1;
+	}
+
+	@Override
+	public String getIdentifier(int index)
+	{
+		return identifiers[index];
+	}
+
+	@Override
+	public double getPosX(int index)
+	{
+		return buffer.getFloat(recordsOffset + index * recordSize);
+	}
+
+	@Override
+	public double getPosY(int index)
+	{
+		return buffer.getFloat(recordsOffset + index * recordSize + 4);
+	}
+
+	@Override
+	public double getWidth(int index)
+	{
+		return buffer.getFloat(recordsOffset + index * recordSize + 8);
+	}
+
+	@Override
+	public double getHeight(int index)
+	{
+		return buffer.getFloat(recordsOffset + index * recordSize + 12);
+	}
+
+	@Override
+	public int getZScore(int index)
+	{
+		return buffer.getInt(recordsOffset + index * recordSize + 16);
+	}
+
+	@Override
+	public boolean getEnterable(int index)
+	{
+		return (buffer.getInt(recordsOffset + index * recordSize + 20) & FLAG_ENTERABLE) != 0;
+	}
+
+	@Override
+	public LayoutConstraints getConstraints(int index)
+	{
+		if (recordSize == VERSION_1_RECORD_SIZE)
+		{
+			return null;
+		}
+		int record = recordsOffset + index * recordSize;
+		int flags = buffer.getInt(record + 20);
+		if ((flags & ~FLAG_ENTERABLE) == 0 && buffer.getFloat(record + 24) == 0 && buffer.getFloat(record + 28) == Float.POSITIVE_INFINITY &&
+		    buffer.getFloat(record + 32) == 0 && buffer.getFloat(record + 36) == Float.POSITIVE_INFINITY)
+		{
+			return null;
+		}
+		int horizontalAnchor = (flags >>> HORIZONTAL_ANCHOR_SHIFT) & ANCHOR_MASK;
+		int verticalAnchor = (flags >>> VERTICAL_ANCHOR_SHIFT) & ANCHOR_MASK;
+		return new LayoutConstraints((flags >>> PIXEL_UNITS_SHIFT) & 0xF,
+		                             buffer.getFloat(record + 24), buffer.getFloat(record + 28),
+		                             buffer.getFloat(record + 32), buffer.getFloat(record + 36),
+		                             horizontalAnchor != 0 ? ANCHORS[horizontalAnchor - 1] : null, anchorIdentifier(buffer.getInt(record + 40)),
+		                             verticalAnchor != 0 ? ANCHORS[verticalAnchor - 1] : null, anchorIdentifier(buffer.getInt(record + 44)));
+	}
+
+	/**
+	 * Get the identifier of an anchor's element
+	 *
+	 * @param record Record number of the element, or -1 for the panel
+	 * @return The element's identifier, or null for the panel
+	 */
+	private String anchorIdentifier(int record)
+	{
+		return record >= 0 && record < identifiers.length ? identifiers[record] : null;
+	}
+
+	/**
+	 * Write elements in the compiled layout format. Positions, sizes and size limits
+	 * are stored with float precision, and anchors to identifiers which aren't among
+	 * the elements are stored as anchors to the panel.
+	 *
+	 * @param elements Elements to write
+	 * @param outputStream Stream to write to
+	 * @throws IOException If the stream can't be written
+	 */
+	static void write(ElementStore elements, OutputStream outputStream) throws IOException
+	{
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+		output.writeInt(MAGIC);
+		output.writeInt(VERSION);
+		output.writeInt(elements.size());
+
+		// Identifier table, in the same order as the records
+		int position = 12;
+		for (int i = 0; i < elements.size(); i++)
+		{
+			byte[] identifierBytes = elements.getIdentifier(i).getBytes(UTF_8);
+			if (identifierBytes.length > 0xFFFF)
+			{
+				throw new IOException("Identifier is too long to compile: " + elements.getIdentifier(i));
+			}
+			output.writeShort(identifierBytes.length);
+			output.write(identifierBytes);
+			position += 2 + identifierBytes.length;
+		}
+		while ((position & 3) != 0)
+		{
+			output.writeByte(0);
+			position++;
+		}
+
+		for (int i = 0; i < elements.size(); i++)
+		{
+			output.writeFloat((float)elements.getPosX(i));
+			output.writeFloat((float)elements.getPosY(i));
+			output.writeFloat((float)elements.getWidth(i));
+			output.writeFloat((float)elements.getHeight(i));
+			output.writeInt(elements.getZScore(i));
+			int flags = elements.getEnterable(i) ? FLAG_ENTERABLE : 0;
+			LayoutConstraints constraints = elements.getConstraints(i);
+			if (constraints == null)
+			{
+				output.writeInt(flags);
+				output.writeFloat(0);
+				output.writeFloat(Float.POSITIVE_INFINITY);
+				output.writeFloat(0);
+				output.writeFloat(Float.POSITIVE_INFINITY);
+				output.writeInt(-1);
+				output.writeInt(-1);
+				continue;
+			}
+			flags |= constraints.getPixelUnits() << PIXEL_UNITS_SHIFT;
+			if (constraints.getHorizontalAnchor() != null)
+			{
+				flags |= (constraints.getHorizontalAnchor().ordinal() + 1) << HORIZONTAL_ANCHOR_SHIFT;
+			}
+			if (constraints.getVerticalAnchor() != null)
+			{
+				flags |= (constraints.getVerticalAnchor().ordinal() + 1) << VERTICAL_ANCHOR_SHIFT;
+			}
+			output.writeInt(flags);
+			output.writeFloat((float)constraints.getMinWidth());
+			output.writeFloat((float)constraints.getMaxWidth());
+			output.writeFloat((float)constraints.getMinHeight());
+			output.writeFloat((float)constraints.getMaxHeight());
+			output.writeInt(constraints.getHorizontalAnchorID() != null ? elements.indexOf(constraints.getHorizontalAnchorID()) : -1);
+			output.writeInt(constraints.getVerticalAnchorID() != null ? elements.indexOf(constraints.getVerticalAnchorID()) : -1);
+		}
+		output.flush();
+	}
+}
@@ -0,0 +1,39 @@
+package com.theopeneffect.flexml;
+
+import java.awt.image.BufferedImage;
+import java.net.URL;
+
+/**
+ * A FlexibleImage which may be painted off the painting thread when parallel
+ * rendering is enabled. FlexibleImage itself draws only from its shared scaled
+ * image cache, so it is safe to paint concurrently; subclasses of this class must
+ * keep paint and afterPaint thread-safe too.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public class ConcurrentFlexibleImage extends FlexibleImage implements ConcurrentRenderable
+{
+	/**
+	 * Construct a ConcurrentFlexibleImage displaying the provided image
+	 * 
+	 * @param image Image to display
+	 * @param identifier Identifier used for GUI positioning
+	 */
+	public ConcurrentFlexibleImage(BufferedImage image, String identifier)
+	{
+		super(image, identifier);
+	}
+	
+	/**
+	 * Construct a ConcurrentFlexibleImage which loads its image from the provided
+	 * URL in the background, drawing a placeholder until the image is available
+	 * 
+	 * @param imageFile URL for image to display
+	 * @param identifier Identifier used for GUI positioning
+	 */
+	public ConcurrentFlexibleImage(URL imageFile, String identifier)
+	{
+		super(imageFile, identifier);
+	}
+}
@@ -0,0 +1,18 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Marks a Renderable whose paint method may be called from a thread other than
+ * the one painting the RenderPanel, at the same time as other Renderables are
+ * painted. A Renderable is never painted by two threads at once.
+ *
+ * When parallel rendering is enabled on a RenderPanel, each ConcurrentRenderable
+ * in the area being painted draws into its own offscreen tile on a shared pool of
+ * threads, and the tiles are drawn over the panel in zScore order. Expensive
+ * renderables, such as charts and large images, benefit most.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+public interface ConcurrentRenderable extends Renderable
+{
+}
@@ -0,0 +1,72 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Shapes the progress of a Tween over time.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public interface Easing
+{
+	/**
+	 * Constant speed
+	 */
+	public static final Easing LINEAR = new Easing()
+	{
+		@Override
+		public double ease(double progress)
+		{
+			return progress;
+		}
+	};
+	
+	/**
+	 * Start slowly and accelerate
+	 */
+	public static final Easing EASE_IN = new Easing()
+	{
+		@Override
+		public double ease(double progress)
+		{
+			return progress * progress * progress;
+		}
+	};
+	
+	/**
+	 * Start quickly and decelerate
+	 */
+	public static final Easing EASE_OUT = new Easing()
+	{
+		@Override
+		public double ease(double progress)
+		{
+			double remaining = 1 - progress;
+			return 1 - remaining * remaining * remaining;
+		}
+	};
+	
+	/**
+	 * Accelerate through the first half and decelerate through the second
+	 */
+	public static final Easing EASE_IN_OUT = new Easing()
+	{
+		@Override
+		public double ease(double progress)
+		{
+			if (progress < 0.5)
+			{
+				return 4 * progress * progress * progress;
+			}
+			double remaining = 2 - 2 * progress;
+			return 1 - remaining * remaining * remaining / 2;
+		}
+	};
+	
+	/**
+	 * Map linear progress to eased progress
+	 * 
+	 * @param progress Fraction of the tween's duration elapsed, from 0 to 1
+	 * @return Fraction of the change to apply, 0 at the start and 1 at the end
+	 */
+	public double ease(double progress);
+}
@@ -0,0 +1,91 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Storage for the elements of a layout, addressed by a dense element index from 0
+ * to size() - 1. Lets hot paths read an element's properties as primitives once
+ * they have looked up its index, rather than hashing its identifier each time.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+interface ElementStore
+{
+	/**
+	 * Get the number of elements
+	 *
+	 * @return The number of elements
+	 */
+	int size();
+
+	/**
+	 * Find the index of the element with the provided identifier
+	 *
+	 * @param identifier The identifier to look up
+	 * @return The element's index, or -1 if there is no such element
+	 */
+	int indexOf(String identifier);
+
+	/**
+	 * Get the identifier of an element
+	 *
+	 * @param index Index of the element
+	 * @return The element's identifier
+	 */
+	String getIdentifier(int index);
+
+	/**
+	 * Get the X position of an element
+	 *
+	 * @param index Index of the element
+	 * @return The element's X position as a fraction of the panel width, or in pixels if its constraints say so
+	 */
+	double getPosX(int index);
+
+	/**
+	 * Get the Y position of an element
+	 *
+	 * @param index Index of the element
+	 * @return The element's Y position as a fraction of the panel height, or in pixels if its constraints say so
+	 */
+	double getPosY(int index);
+
+	/**
+	 * Get the width of an element
+	 *
+	 * @param index Index of the element
+	 * @return The element's width as a fraction of the panel width, or in pixels if its constraints say so
+	 */
+	double getWidth(int index);
+
+	/**
+	 * Get the height of an element
+	 *
+	 * @param index Index of the element
+	 * @return The element's height as a fraction of the panel height, or in pixels if its constraints say so
+	 */
+	double getHeight(int index);
+
+	/**
+	 * Get the zScore of an element
+	 *
+	 * @param index Index of the element
+	 * @return The element's zScore
+	 */
+	int getZScore(int index);
+
+	/**
+	 * Get whether an element is enterable
+	 *
+	 * @param index Index of the element
+	 * @return Whether the element is enterable
+	 */
+	boolean getEnterable(int index);
+
+	/**
+	 * Get the units, size limits and anchors of an element
+	 *
+	 * @param index Index of the element
+	 * @return The element's units, size limits and anchors, or null if it is placed by fractions of the panel's size alone
+	 */
+	LayoutConstraints getConstraints(int index);
+}
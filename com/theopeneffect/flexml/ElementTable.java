@@ -0,0 +1,161 @@
+package com.theopeneffect.flexml;
+
+import java.util.HashMap;
+
+/**
+ * An ElementStore holding each property in its own primitive array, so the
+ * elements of a large layout take a few contiguous arrays rather than one object
+ * per element.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+class ElementTable implements ElementStore
+{
+	// Index of each identifier
+	private final HashMap<String, Integer> indices = new HashMap<String, Integer>();
+
+	// Parallel arrays of element properties, with room to grow
+	private String[] identifiers = new String[16];
+	private double[] posX = new double[16];
+	private double[] posY = new double[16];
+	private double[] width = new double[16];
+	private double[] height = new double[16];
+	private int[] zScores = new int[16];
+	private boolean[] enterable = new boolean[16];
+	private LayoutConstraints[] constraints = new LayoutConstraints[16];
+
+	// Number of elements
+	private int size = 0;
+
+	/**
+	 * Add an element, replacing the properties of any element with the same identifier
+	 *
+	 * @param identifier The element's identifier
+	 * @param posX X position as a fraction of the panel width, or in pixels
+	 * @param posY Y position as a fraction of the panel height, or in pixels
+	 * @param width Width as a fraction of the panel width, or in pixels
+	 * @param height Height as a fraction of the panel height, or in pixels
+	 * @param zScore Layer to render at
+	 * @param enterable Whether the element is enterable
+	 * @param constraints Units, size limits and anchors, or null for none
+	 */
+	void put(String identifier, double posX, double posY, double width, double height, int zScore, boolean enterable, LayoutConstraints constraints)
+	{
+		Integer existing = indices.get(identifier);
+		int index;
+		if (existing != null)
+		{
+			index = existing;
+		}
+		else
+		{
+			if (size == identifiers.length)
+			{
+				grow();
+			}
+			index = size++;
+			identifiers[index] = identifier;
+			indices.put(identifier, index);
+		}
+		this.posX[index] = posX;
+		this.posY[index] = posY;
+		this.width[index] = width;
+		this.height[index] = height;
+		this.zScores[index] = zScore;
+		this.enterable[index] = enterable;
+		this.constraints[index] = constraints;
+	}
+
+	/**
+	 * Double the capacity of every array
+	 */
+	private void grow()
+	{
+		int capacity = identifiers.length * 2;
+		String[] grownIdentifiers = new String[capacity];
+		System.arraycopy(identifiers, 0, grownIdentifiers, 0, size);
+		identifiers = grownIdentifiers;
+		posX = grow(posX, capacity);
+		posY = grow(posY, capacity);
+		width = grow(width, capacity);
+		height = grow(height, capacity);
+		int[] grownZScores = new int[capacity];
+		System.arraycopy(zScores, 0, grownZScores, 0, size);
+		zScores = grownZScores;
+		boolean[] grownEnterable = new boolean[capacity];
+		System.arraycopy(enterable, 0, grownEnterable, 0, size);
+		enterable = grownEnterable;
+		LayoutConstraints[] grownConstraints = new LayoutConstraints[capacity];
+		System.arraycopy(constraints, 0, grownConstraints, 0, size);
+		constraints = grownConstraints;
+	}
+
+	private double[] grow(double[] values, int capacity)
+	{
+		double[] grown = new double[capacity];
+		System.arraycopy(values, 0, grown, 0, size);
+		return grown;
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	@Override
+	public int indexOf(String identifier)
+	{
+		Integer index = indices.get(identifier);
+		return index != null ? index : -1;
+	}
+
+	@Override
+	public String getIdentifier(int index)
+	{
+		return identifiers[index];
+	}
+
+	@Override
+	public double getPosX(int index)
+	{
+		return posX[index];
+	}
+
+	@Override
+	public double getPosY(int index)
+	{
+		return posY[index];
+	}
+
+	@Override
+	public double getWidth(int index)
+	{
+		return width[index];
+	}
+
+	@Override
+	public double getHeight(int index)
+	{
+		return height[index];
+	}
+
+	@Override
+	public int getZScore(int index)
+	{
+		return zScores[index];
+	}
+
+	@Override
+	public boolean getEnterable(int index)
+	{
+		return enterable[index];
+	}
+
+	@Override
+	public LayoutConstraints getConstraints(int index)
+	{
+		return constraints[index];
+	}
+}
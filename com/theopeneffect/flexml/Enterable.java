@@ -0,0 +1,17 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Implemented by Renderables which can be activated from the keyboard. When the
+ * element of a focused Enterable is enterable in the layout, pressing ENTER
+ * activates it once the key press itself has been passed on.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public interface Enterable
+{
+	/**
+	 * Called by the RenderPanel when ENTER is pressed while this is focused
+	 */
+	public void activate();
+}
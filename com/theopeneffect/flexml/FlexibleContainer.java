@@ -0,0 +1,548 @@
+package com.theopeneffect.flexml;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.event.KeyEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * A Renderable holding its own LayoutDescription and child renderables, which
+ * are laid out within whatever box the container is given by its parent. Screens
+ * can be composed from reusable panels this way, each with a layout of its own,
+ * and containers can be nested.
+ *
+ * The children's resolved bounds are kept for the box size they were resolved at,
+ * and only resolved again when the box is resized or the children or layout
+ * change. With caching enabled, the children are also drawn into an image kept
+ * between frames, and only the areas of children which report a change through
+ * Invalidatable are redrawn into it; the rest of each frame is a single image
+ * copy. Only enable caching when every child which can change implements
+ * Invalidatable.
+ *
+ * Mouse and keyboard events are passed on to the child under the mouse and the
+ * child last clicked, with coordinates relative to the child.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+public class FlexibleContainer implements Renderable, Invalidatable, InvalidationListener, Selectable, Scrollable, Animated
+{
+	// Transforms the cached image can be drawn back through pixel for pixel
+	private static final int SCALE_AND_TRANSLATION = AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE | AffineTransform.TYPE_GENERAL_SCALE;
+
+	private final String identifier;
+
+	private volatile boolean isVisible = true;
+
+	// Lays out and paints the children
+	private final LayoutRenderer children;
+
+	// Notified when the container needs to be redrawn
+	private volatile InvalidationListener invalidationListener;
+
+	// Size of the box the container was last painted in
+	private volatile int boxWidth = 0;
+	private volatile int boxHeight = 0;
+
+	// Child under the mouse and child last clicked, if any
+	private volatile Renderable hovered = null;
+	private volatile Renderable selected = null;
+
+	// Whether to keep the children drawn in an image between frames
+	private volatile boolean caching = false;
+
+	// Guards the cached image
+	private final Object cacheLock = new Object();
+
+	// Image of the children, the RenderList and device scale it was drawn for, and the area needing redrawing
+	private BufferedImage cacheImage = null;
+	private RenderList cacheRenderList = null;
+	private double cacheScaleX = 0;
+	private double cacheScaleY = 0;
+	private Rectangle cacheDirty = null;
+
+	/**
+	 * Construct a FlexibleContainer laying out its children with the provided layout
+	 *
+	 * @param layoutDescription Layout of the children, relative to the container's box
+	 * @param identifier Identifier used for GUI positioning
+	 */
+	public FlexibleContainer(LayoutDescription layoutDescription, String identifier)
+	{
+		this.children = new LayoutRenderer(layoutDescription);
+		this.identifier = identifier;
+	}
+
+	/**
+	 * Add a child Renderable
+	 *
+	 * @param child Renderable to add
+	 */
+	public void add(Renderable child)
+	{
+		if (child == null)
+		{
+			return;
+		}
+		children.add(child);
+		if (child instanceof Invalidatable)
+		{
+			((Invalidatable)child).setInvalidationListener(this);
+		}
+		invalidateAll();
+	}
+
+	/**
+	 * Remove a child Renderable
+	 *
+	 * @param child Renderable to remove
+	 * @return Whether the Renderable was a child
+	 */
+	public boolean remove(Renderable child)
+	{
+		if (!children.remove(child))
+		{
+			return false;
+		}
+		if (child instanceof Invalidatable)
+		{
+			((Invalidatable)child).setInvalidationListener(null);
+		}
+		if (hovered == child)
+		{
+			hovered = null;
+		}
+		if (selected == child)
+		{
+			select(null);
+		}
+		invalidateAll();
+		return true;
+	}
+
+	/**
+	 * Replace a child Renderable with another in the same position
+	 *
+	 * @param original Renderable to remove
+	 * @param replacement Renderable to add in its place
+	 * @return Whether the original Renderable was a child
+	 */
+	public boolean replace(Renderable original, Renderable replacement)
+	{
+		if (replacement == null)
+		{
+			return remove(original);
+		}
+		if (!children.replace(original, replacement))
+		{
+			return false;
+		}
+		if (original instanceof Invalidatable)
+		{
+			((Invalidatable)original).setInvalidationListener(null);
+		}
+		if (replacement instanceof Invalidatable)
+		{
+			((Invalidatable)replacement).setInvalidationListener(this);
+		}
+		if (hovered == original)
+		{
+			hovered = null;
+		}
+		if (selected == original)
+		{
+			select(replacement);
+		}
+		invalidateAll();
+		return true;
+	}
+
+	public LayoutDescription getLayout()
+	{
+		return children.getLayout();
+	}
+
+	/**
+	 * Get the LayoutRenderer which lays out and paints the children
+	 *
+	 * @return The children's LayoutRenderer
+	 */
+	LayoutRenderer getChildren()
+	{
+		return children;
+	}
+
+	/**
+	 * Lay the children out with a different layout
+	 *
+	 * @param layoutDescription Layout of the children, relative to the container's box
+	 */
+	public void setLayout(LayoutDescription layoutDescription)
+	{
+		children.setLayout(layoutDescription);
+		invalidateAll();
+	}
+
+	/**
+	 * Set the rendering quality of the children
+	 *
+	 * @param quality One of LayoutRenderer.OPTION_QUALITY_LOW, OPTION_QUALITY_MED or OPTION_QUALITY_HIGH
+	 */
+	public void setQuality(int quality)
+	{
+		children.setQuality(quality);
+		invalidateAll();
+	}
+
+	/**
+	 * Enable or disable keeping the children drawn in an image between frames, so
+	 * that only children which report a change are redrawn
+	 *
+	 * @param caching Whether to cache the children's image
+	 */
+	public void setCaching(boolean caching)
+	{
+		this.caching = caching;
+		synchronized (cacheLock)
+		{
+			cacheImage = null;
+			cacheRenderList = null;
+		}
+		invalidate();
+	}
+
+	@Override
+	public void paint(Graphics2D g, int startX, int startY, int width, int height)
+	{
+		if (!isVisible || width <= 0 || height <= 0)
+		{
+			return;
+		}
+		boxWidth = width;
+		boxHeight = height;
+
+		// Only a scale and translation can be matched by an image at device resolution
+		AffineTransform transform = g.getTransform();
+		if (caching && (transform.getType() & ~SCALE_AND_TRANSLATION) == 0 && transform.getScaleX() > 0 && transform.getScaleY() > 0)
+		{
+			paintCached(g, startX, startY, width, height, transform.getScaleX(), transform.getScaleY());
+			return;
+		}
+
+		// Bounds include their right and bottom edges
+		Graphics2D childGraphics = (Graphics2D)g.create();
+		try
+		{
+			childGraphics.translate(startX, startY);
+			childGraphics.clipRect(0, 0, width + 1, height + 1);
+			children.paint(childGraphics, width, height);
+		}
+		finally
+		{
+			childGraphics.dispose();
+		}
+	}
+
+	/**
+	 * Bring the cached image of the children up to date and draw it
+	 *
+	 * @param g Graphics2D to draw with
+	 * @param startX X coordinate of the container's box
+	 * @param startY Y coordinate of the container's box
+	 * @param width Width of the box
+	 * @param height Height of the box
+	 * @param scaleX Device pixels per pixel horizontally
+	 * @param scaleY Device pixels per pixel vertically
+	 */
+	private void paintCached(Graphics2D g, int startX, int startY, int width, int height, double scaleX, double scaleY)
+	{
+		synchronized (cacheLock)
+		{
+			// Bounds include their right and bottom edges
+			int pixelWidth = (int)Math.ceil((width + 1) * scaleX);
+			int pixelHeight = (int)Math.ceil((height + 1) * scaleY);
+			RenderList renderList = children.getRenderList();
+			if (cacheImage == null || cacheImage.getWidth() != pixelWidth || cacheImage.getHeight() != pixelHeight ||
+			    cacheRenderList != renderList || cacheScaleX != scaleX || cacheScaleY != scaleY)
+			{
+				if (cacheImage == null || cacheImage.getWidth() != pixelWidth || cacheImage.getHeight() != pixelHeight)
+				{
+					cacheImage = new BufferedImage(pixelWidth, pixelHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+				}
+				cacheRenderList = renderList;
+				cacheScaleX = scaleX;
+				cacheScaleY = scaleY;
+				cacheDirty = new Rectangle(0, 0, width + 1, height + 1);
+			}
+
+			if (cacheDirty != null)
+			{
+				Graphics2D cacheGraphics = cacheImage.createGraphics();
+				try
+				{
+					cacheGraphics.setRenderingHints(g.getRenderingHints());
+					cacheGraphics.scale(scaleX, scaleY);
+					cacheGraphics.clip(cacheDirty);
+					cacheGraphics.setComposite(AlphaComposite.Clear);
+					cacheGraphics.fill(cacheDirty);
+					cacheGraphics.setComposite(AlphaComposite.SrcOver);
+					children.paint(cacheGraphics, width, height);
+				}
+				finally
+				{
+					cacheGraphics.dispose();
+				}
+				cacheDirty = null;
+			}
+
+			AffineTransform placement = new AffineTransform(1 / scaleX, 0, 0, 1 / scaleY, startX, startY);
+			g.drawImage(cacheImage, placement, null);
+		}
+	}
+
+	/**
+	 * Called by a child when it needs to be redrawn, marking its area of the cached
+	 * image dirty and asking the container's own listener to redraw the container
+	 *
+	 * @param child The child which changed
+	 */
+	@Override
+	public void invalidated(Renderable child)
+	{
+		if (caching)
+		{
+			RenderList renderList = children.getRenderList();
+			int entry = renderList.indexOf(child);
+			if (entry < 0)
+			{
+				return;
+			}
+			HitTestGrid bounds = children.getHitTestGrid(renderList, boxWidth, boxHeight);
+
+			// Widen by a pixel so edges at fractional device scales are cleared too
+			Rectangle area = new Rectangle(bounds.getX(entry) - 1, bounds.getY(entry) - 1, bounds.getWidth(entry) + 3, bounds.getHeight(entry) + 3);
+			synchronized (cacheLock)
+			{
+				cacheDirty = cacheDirty == null ? area : cacheDirty.union(area);
+			}
+		}
+		invalidate();
+	}
+
+	/**
+	 * Mark the whole cached image dirty and ask for the container to be redrawn
+	 */
+	private void invalidateAll()
+	{
+		synchronized (cacheLock)
+		{
+			cacheRenderList = null;
+		}
+		invalidate();
+	}
+
+	/**
+	 * Request that the area this container occupies be redrawn
+	 */
+	protected void invalidate()
+	{
+		InvalidationListener listener = invalidationListener;
+		if (listener != null)
+		{
+			listener.invalidated(this);
+		}
+	}
+
+	@Override
+	public void setInvalidationListener(InvalidationListener listener)
+	{
+		this.invalidationListener = listener;
+	}
+
+	/**
+	 * Find the front-most child at a point within the container
+	 *
+	 * @param x X coordinate relative to the container
+	 * @param y Y coordinate relative to the container
+	 * @param renderList The children's current RenderList
+	 * @return Index of the child's entry in the RenderList, or -1 if there is none
+	 */
+	private int findEntryAt(int x, int y, RenderList renderList)
+	{
+		return children.getHitTestGrid(renderList, boxWidth, boxHeight).findEntryAt(x, y);
+	}
+
+	@Override
+	public void mouseOver(int x, int y)
+	{
+		RenderList renderList = children.getRenderList();
+		int entry = findEntryAt(x, y, renderList);
+		Renderable previous = hovered;
+		Renderable current = entry >= 0 ? renderList.getEntries()[entry].getRenderable() : null;
+		if (previous != null && previous != current)
+		{
+			previous.mouseAbsent();
+		}
+		hovered = current;
+		if (current != null)
+		{
+			HitTestGrid bounds = children.getHitTestGrid(renderList, boxWidth, boxHeight);
+			current.mouseOver(x - bounds.getX(entry), y - bounds.getY(entry));
+		}
+	}
+
+	@Override
+	public void mouseAbsent()
+	{
+		Renderable previous = hovered;
+		if (previous != null)
+		{
+			hovered = null;
+			previous.mouseAbsent();
+		}
+	}
+
+	@Override
+	public void mouseClick(int x, int y)
+	{
+		RenderList renderList = children.getRenderList();
+		int entry = findEntryAt(x, y, renderList);
+		if (entry >= 0)
+		{
+			Renderable clicked = renderList.getEntries()[entry].getRenderable();
+			HitTestGrid bounds = children.getHitTestGrid(renderList, boxWidth, boxHeight);
+			clicked.mouseClick(x - bounds.getX(entry), y - bounds.getY(entry));
+			select(clicked);
+		}
+	}
+
+	@Override
+	public void mouseWheelMoved(int x, int y, int wheelRotation)
+	{
+		RenderList renderList = children.getRenderList();
+		int entry = findEntryAt(x, y, renderList);
+		if (entry >= 0)
+		{
+			Renderable scrolled = renderList.getEntries()[entry].getRenderable();
+			if (scrolled instanceof Scrollable)
+			{
+				HitTestGrid bounds = children.getHitTestGrid(renderList, boxWidth, boxHeight);
+				((Scrollable)scrolled).mouseWheelMoved(x - bounds.getX(entry), y - bounds.getY(entry), wheelRotation);
+			}
+		}
+	}
+
+	/**
+	 * Change the child receiving keyboard input, notifying the old and new children which are Selectable
+	 *
+	 * @param child The child to select, or null to select none
+	 */
+	private synchronized void select(Renderable child)
+	{
+		Renderable previous = selected;
+		if (previous != child)
+		{
+			selected = child;
+			if (previous instanceof Selectable)
+			{
+				((Selectable)previous).setSelected(false);
+			}
+			if (child instanceof Selectable)
+			{
+				((Selectable)child).setSelected(true);
+			}
+		}
+	}
+
+	/**
+	 * Called when the container stops being selected, which deselects its selected child
+	 */
+	@Override
+	public void setSelected(boolean selected)
+	{
+		if (!selected)
+		{
+			select(null);
+		}
+	}
+
+	@Override
+	public void keyTyped(KeyEvent keyEvent)
+	{
+		Renderable current = selected;
+		if (current != null)
+		{
+			current.keyTyped(keyEvent);
+		}
+	}
+
+	@Override
+	public void keyPressed(KeyEvent keyEvent)
+	{
+		Renderable current = selected;
+		if (current != null)
+		{
+			current.keyPressed(keyEvent);
+		}
+	}
+
+	@Override
+	public void keyReleased(KeyEvent keyEvent)
+	{
+		Renderable current = selected;
+		if (current != null)
+		{
+			current.keyReleased(keyEvent);
+		}
+	}
+
+	/**
+	 * Advance every Animated child
+	 */
+	@Override
+	public void tick(long deltaNanos)
+	{
+		Animated[] animated = children.getRenderList().getAnimated();
+		for (int i = 0; i < animated.length; i++)
+		{
+			animated[i].tick(deltaNanos);
+		}
+	}
+
+	@Override
+	public void offScreen()
+	{
+		Renderable[] snapshot = children.getRenderList().getRenderables();
+		for (int i = 0; i < snapshot.length; i++)
+		{
+			if (snapshot[i] != null)
+			{
+				snapshot[i].offScreen();
+			}
+		}
+	}
+
+	@Override
+	public String getIdentifier()
+	{
+		return identifier;
+	}
+
+	@Override
+	public boolean getVisible()
+	{
+		return isVisible;
+	}
+
+	@Override
+	public void setVisible(boolean visibility)
+	{
+		if (isVisible != visibility)
+		{
+			isVisible = visibility;
+			invalidate();
+		}
+	}
+}
@@ -1,46 +1,134 @@
 package com.theopeneffect.flexml;
 
+import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.event.KeyEvent;
+import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.net.URL;
-
-import javax.imageio.ImageIO;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A class to render an image at a provided location and provided dimensions.
  * 
  * Extended to add additional functionality for buttons and game tiles.
+ * Use ConcurrentFlexibleImage for images which may be painted in parallel.
  * 
  * @author Maxwell Sanchez
  *
  */
-public class FlexibleImage implements Renderable 
+public class FlexibleImage implements Renderable, Invalidatable
 {
-	private BufferedImage internalImage;
+	// Color drawn in place of an image which is still loading
+	private static final Color PLACEHOLDER_COLOR = new Color(128, 128, 128, 64);
+	
+	private volatile BufferedImage internalImage;
+	
+	// Whether the image is still being loaded in the background
+	private volatile boolean isLoading = false;
+	
+	// Released once an image requested from a URL has arrived or failed to load
+	private final CountDownLatch loadFinished;
 	
 	private String identifier;
 	
 	private boolean isVisible = true;
 	
+	// Notified when the image needs to be redrawn
+	private InvalidationListener invalidationListener;
+	
 	public FlexibleImage(BufferedImage image, String identifier)
 	{
 		internalImage = image;
 		this.identifier = identifier;
+		this.loadFinished = new CountDownLatch(0);
+		if (image != null)
+		{
+			ScaledImageCache.retain(image);
+		}
 	}
 	
+	/**
+	 * Display a different image. Scaled copies of the old image are discarded
+	 * unless another FlexibleImage still displays it.
+	 * 
+	 * @param newImage The image to display
+	 */
 	public void setImage(BufferedImage newImage)
 	{
+		BufferedImage oldImage = this.internalImage;
 		this.internalImage = newImage;
+		if (oldImage != newImage)
+		{
+			if (newImage != null)
+			{
+				ScaledImageCache.retain(newImage);
+			}
+			if (oldImage != null)
+			{
+				ScaledImageCache.release(oldImage);
+			}
+		}
+		invalidate();
 	}
 	
+	/**
+	 * Construct a FlexibleImage which loads its image from the provided URL in the
+	 * background, drawing a placeholder until the image is available. Images are
+	 * shared with every other FlexibleImage loaded from the same URL, and an image
+	 * which has already been loaded is displayed straight away.
+	 * 
+	 * @param imageFile URL for image to display
+	 * @param identifier Identifier used for GUI positioning
+	 */
 	public FlexibleImage(URL imageFile, String identifier) 
 	{
-		try
+		this.identifier = identifier;
+		BufferedImage loaded = ImageAssetLoader.getLoadedImage(imageFile);
+		if (loaded != null)
+		{
+			internalImage = loaded;
+			ScaledImageCache.retain(loaded);
+			this.loadFinished = new CountDownLatch(0);
+			return;
+		}
+		this.loadFinished = new CountDownLatch(1);
+		this.isLoading = true;
+		ImageAssetLoader.load(imageFile, new ImageLoadListener()
 		{
-			internalImage = ImageIO.read(imageFile);
-			this.identifier = identifier;
-		} catch (Exception e) { e.printStackTrace(); }
+			@Override
+			public void imageLoaded(URL imageURL, BufferedImage image)
+			{
+				isLoading = false;
+				setImage(image);
+				loadFinished.countDown();
+			}
+			
+			@Override
+			public void imageLoadFailed(URL imageURL, Exception cause)
+			{
+				isLoading = false;
+				invalidate();
+				loadFinished.countDown();
+				cause.printStackTrace();
+			}
+		});
+	}
+	
+	/**
+	 * Wait for an image requested from a URL to arrive, such as before rendering
+	 * headlessly. Images are delivered on the event dispatch thread, so this must
+	 * not be called on it.
+	 * 
+	 * @param timeout Longest time to wait
+	 * @param unit Unit of the timeout
+	 * @return Whether the image has arrived or failed to load, rather than the wait timing out
+	 * @throws InterruptedException If the thread is interrupted while waiting
+	 */
+	public boolean awaitLoaded(long timeout, TimeUnit unit) throws InterruptedException
+	{
+		return loadFinished.await(timeout, unit);
 	}
 
 	@Override
@@ -48,17 +136,88 @@ public class FlexibleImage implements Renderable
 	{
 		if (isVisible)
 		{
-			g.drawImage(internalImage, startX, startY, width, height, null);
+			BufferedImage image = internalImage;
+			if (image != null && width > 0 && height > 0)
+			{
+				drawScaled(g, image, startX, startY, width, height);
+			}
+			else if (isLoading)
+			{
+				paintPlaceholder(g, startX, startY, width, height);
+			}
 			afterPaint(g, startX, startY, width, height);
 		}
 	}
 	
+	/**
+	 * Draw an image into a box, using a copy already scaled to the box's size in
+	 * device pixels rather than resampling every frame. Under a scaling transform,
+	 * such as on a HiDPI screen, the copy is scaled to the device size and drawn
+	 * without the transform, so it is resampled once rather than twice. Transforms
+	 * which rotate, shear or flip draw the image directly.
+	 * 
+	 * @param g Graphics2D to draw with
+	 * @param image The image to draw
+	 * @param startX X coordinate of top-left corner from which to draw.
+	 * @param startY Y coordinate of top-left corner from which to draw.
+	 * @param width The width to draw within
+	 * @param height The height to draw within
+	 */
+	private static void drawScaled(Graphics2D g, BufferedImage image, int startX, int startY, int width, int height)
+	{
+		AffineTransform transform = g.getTransform();
+		int type = transform.getType();
+		if ((type & ~AffineTransform.TYPE_TRANSLATION) == 0)
+		{
+			BufferedImage scaledImage = ScaledImageCache.getScaledImage(image, width, height, g);
+			if (scaledImage != null)
+			{
+				g.drawImage(scaledImage, startX, startY, null);
+				return;
+			}
+		}
+		else if ((type & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_MASK_SCALE)) == 0 &&
+		         transform.getScaleX() > 0 && transform.getScaleY() > 0)
+		{
+			// The box's edges in device pixels, rounded as the transform would round them
+			int deviceX = (int) Math.round(startX * transform.getScaleX() + transform.getTranslateX());
+			int deviceY = (int) Math.round(startY * transform.getScaleY() + transform.getTranslateY());
+			int deviceWidth = (int) Math.round((startX + width) * transform.getScaleX() + transform.getTranslateX()) - deviceX;
+			int deviceHeight = (int) Math.round((startY + height) * transform.getScaleY() + transform.getTranslateY()) - deviceY;
+			BufferedImage scaledImage = deviceWidth > 0 && deviceHeight > 0
+					? ScaledImageCache.getScaledImage(image, deviceWidth, deviceHeight, g) : null;
+			if (scaledImage != null)
+			{
+				g.setTransform(new AffineTransform());
+				g.drawImage(scaledImage, deviceX, deviceY, null);
+				g.setTransform(transform);
+				return;
+			}
+		}
+		g.drawImage(image, startX, startY, width, height, null);
+	}
+	
 	@Override
 	public boolean getVisible() 
 	{
 		return isVisible;
 	}
 	
+	/**
+	 * Draw a stand-in for the image while it is still loading
+	 * 
+	 * @param g Graphics2D to draw with
+	 * @param startX X coordinate of top-left corner from which to draw.
+	 * @param startY Y coordinate of top-left corner from which to draw.
+	 * @param width The width to draw within
+	 * @param height The height to draw within
+	 */
+	protected void paintPlaceholder(Graphics2D g, int startX, int startY, int width, int height)
+	{
+		g.setColor(PLACEHOLDER_COLOR);
+		g.fillRect(startX, startY, width, height);
+	}
+	
 	public void afterPaint(Graphics2D g, int startX, int startY, int width, int height)
 	{
 		// Do Nothing
@@ -67,7 +226,29 @@ public class FlexibleImage implements Renderable
 	@Override
 	public void setVisible(boolean visibility) 
 	{
-		isVisible = visibility;
+		if (isVisible != visibility)
+		{
+			isVisible = visibility;
+			invalidate();
+		}
+	}
+	
+	@Override
+	public void setInvalidationListener(InvalidationListener listener)
+	{
+		this.invalidationListener = listener;
+	}
+	
+	/**
+	 * Request that the area this image occupies be redrawn
+	 */
+	protected void invalidate()
+	{
+		InvalidationListener listener = invalidationListener;
+		if (listener != null)
+		{
+			listener.invalidated(this);
+		}
 	}
 
 	@Override
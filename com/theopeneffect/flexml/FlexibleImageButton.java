@@ -1,20 +1,38 @@
 package com.theopeneffect.flexml;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
 import java.awt.image.BufferedImage;
 import java.net.URL;
 
 /**
- * A FlexibleImage with a button mouseover shimmer animation
+ * A FlexibleImage with a button mouseover shimmer animation. The shimmer is
+ * advanced by the RenderPanel's clock, such as an ActiveRenderLoop.
+ * 
+ * When its element is enterable, pressing ENTER while the button is focused
+ * clicks it, so subclasses handling mouseClick are also activated by keyboard.
  * 
  * @author Maxwell Sanchez
  *
  */
-public class FlexibleImageButton extends FlexibleImage 
+public class FlexibleImageButton extends FlexibleImage implements Animated, Enterable
 {
-	// State to determine whether a shimmer animation should be rendered
-	private double mouseoverState = -1;
+	// Time the shimmer takes to cross the button
+	private static final long SHIMMER_NANOS = 600000000L;
+	
+	// Color of the shimmer band
+	private static final Color SHIMMER_COLOR = new Color(255, 255, 255, 72);
+	
+	// State to determine whether a shimmer animation should be rendered:
+	// -1 when idle, otherwise the shimmer's progress across the button from 0 to 1
+	private volatile double mouseoverState = -1;
 	private boolean mouseInside = false;
 	
+	// Corners of the shimmer band, reused each frame
+	private final int[] shimmerX = new int[4];
+	private final int[] shimmerY = new int[4];
+	
 	/**
 	 * Construct a FlexibleImage given the provided image and identifier
 	 * 
@@ -42,7 +60,10 @@ public class FlexibleImageButton extends FlexibleImage
 	{
 		// Set animation state appropriately
 		if (mouseoverState < 0 && !mouseInside)
+		{
 			mouseoverState = 0;
+			invalidate();
+		}
 		mouseInside = true;
 	}
 	
@@ -52,6 +73,18 @@ public class FlexibleImageButton extends FlexibleImage
 		mouseInside = false;
 	}
 	
+	/**
+	 * Click the button from the keyboard, playing the shimmer as feedback.
+	 * The click is reported at the button's top-left corner.
+	 */
+	@Override
+	public void activate()
+	{
+		mouseoverState = 0;
+		invalidate();
+		mouseClick(0, 0);
+	}
+	
 	/**
 	 * When the button is no longer on the screen, stop the shimmer animation
 	 * so the animation doesn't continue when the button is displayed again.
@@ -60,5 +93,48 @@ public class FlexibleImageButton extends FlexibleImage
 	{
 		mouseoverState = -1;
 	}
+	
+	/**
+	 * Move the shimmer across the button, ending it once it has crossed
+	 */
+	@Override
+	public void tick(long deltaNanos)
+	{
+		double state = mouseoverState;
+		if (state >= 0)
+		{
+			state += (double) deltaNanos / SHIMMER_NANOS;
+			mouseoverState = state > 1 ? -1 : state;
+			invalidate();
+		}
+	}
+	
+	/**
+	 * Draw the shimmer, a diagonal band of light crossing the button from left to right
+	 */
+	@Override
+	public void afterPaint(Graphics2D g, int startX, int startY, int width, int height)
+	{
+		double state = mouseoverState;
+		if (state >= 0)
+		{
+			int bandWidth = Math.max(width / 4, 1);
+			int left = startX - bandWidth - height + (int) (state * (width + bandWidth + height));
+			shimmerX[0] = left;
+			shimmerY[0] = startY + height;
+			shimmerX[1] = left + bandWidth;
+			shimmerY[1] = startY + height;
+			shimmerX[2] = left + bandWidth + height;
+			shimmerY[2] = startY;
+			shimmerX[3] = left + height;
+			shimmerY[3] = startY;
+			
+			Shape oldClip = g.getClip();
+			g.clipRect(startX, startY, width, height);
+			g.setColor(SHIMMER_COLOR);
+			g.fillPolygon(shimmerX, shimmerY, 4);
+			g.setClip(oldClip);
+		}
+	}
 
 }
@@ -3,16 +3,44 @@ package com.theopeneffect.flexml;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.Toolkit;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.StringSelection;
 import java.awt.event.KeyEvent;
+import java.awt.font.FontRenderContext;
 
-public class FlexibleInputLabel implements Renderable 
+public class FlexibleInputLabel implements Renderable, Invalidatable, Selectable
 {
 	
 	private Font font = new Font("Arial", Font.PLAIN, 1);
+	
+	// Font derived from font at the most recently painted pixel size
+	private Font derivedFont = null;
+	private int derivedFontSize = -1;
+	
+	// Glyphs of the contents in the derived font, and the mode and context they were laid out for
+	private TextRunLayout runs = new TextRunLayout();
+	private boolean runsPassword = false;
+	private FontRenderContext runsFontRenderContext = null;
+	
 	private Color startColor;
 	private Color mouseOverColor;
 	private Color currentColor;
-	private String contents = "";
+	
+	// Translucent copy of the current color drawn behind selected text, changed along with it
+	private Color startHighlight;
+	private Color mouseOverHighlight;
+	private Color currentHighlight;
+	private TextBuffer contents = new TextBuffer();
+	
+	// Caret position, and the other end of the selection (equal to the caret when nothing is selected)
+	private int caret = 0;
+	private int selectionAnchor = 0;
+	
+	// Whether this label is receiving keyboard input, in which case the caret and selection are shown
+	private boolean isSelected = false;
 	
 	private boolean isPassword = false;
 	
@@ -21,6 +49,9 @@ public class FlexibleInputLabel implements Renderable
 	private String identifier;
 	private boolean isVisible = true;
 	
+	// Notified when the label needs to be redrawn
+	private InvalidationListener invalidationListener;
+	
 	public FlexibleInputLabel(String identifier, double scale, Color startColor, Color mouseOverColor)
 	{
 		this.identifier = identifier;
@@ -28,6 +59,20 @@ public class FlexibleInputLabel implements Renderable
 		this.startColor = startColor;
 		this.mouseOverColor = mouseOverColor;
 		this.currentColor = this.startColor;
+		this.startHighlight = highlightOf(startColor);
+		this.mouseOverHighlight = highlightOf(mouseOverColor);
+		this.currentHighlight = this.startHighlight;
+	}
+	
+	/**
+	 * Get the color drawn behind selected text in the provided text color
+	 * 
+	 * @param color Color of the text
+	 * @return The text color, made translucent
+	 */
+	private static Color highlightOf(Color color)
+	{
+		return new Color(color.getRed(), color.getGreen(), color.getBlue(), 96);
 	}
 	
 	public FlexibleInputLabel(String identifier, double scale)
@@ -38,6 +83,7 @@ public class FlexibleInputLabel implements Renderable
 	public void setIsPassword(boolean isPassword)
 	{
 		this.isPassword = isPassword;
+		invalidate();
 	}
 
 	@Override
@@ -45,24 +91,65 @@ public class FlexibleInputLabel implements Renderable
 	{
 		if (isVisible)
 		{
-			font = new Font(font.getFontName(), font.getStyle(), (int) (scale * height));
-			g.setColor(currentColor);
-			g.setFont(font);
-			if (isPassword)
+			// The font is only rebuilt when the size changes, and glyphs only for runs of text which changed
+			int fontSize = (int) (scale * height);
+			if (fontSize != derivedFontSize)
 			{
-				String representation = "";
-				for (int i = 0; i < contents.length(); i++)
-				{
-					representation += "*";
-				}
-				g.drawString(representation, startX, startY + font.getSize());
+				derivedFont = new Font(font.getFontName(), font.getStyle(), fontSize);
+				derivedFontSize = fontSize;
+				runs.invalidate();
 			}
-			else
+			FontRenderContext fontRenderContext = g.getFontRenderContext();
+			if (isPassword != runsPassword || !fontRenderContext.equals(runsFontRenderContext))
+			{
+				runs.invalidate();
+				runsPassword = isPassword;
+				runsFontRenderContext = fontRenderContext;
+			}
+			runs.layout(contents, runsPassword, derivedFont, fontRenderContext);
+			
+			// Keep text scrolled past the width, descenders and the caret within the label's own area,
+			// which is all that is cleared when it is repainted
+			Shape oldClip = g.getClip();
+			g.clipRect(startX, startY, width + 1, height + 1);
+			
+			int selectionStart = getSelectionStart();
+			int selectionEnd = getSelectionEnd();
+			if (isSelected && selectionStart != selectionEnd)
+			{
+				int left = startX + Math.round(runs.getOffset(selectionStart));
+				int right = startX + Math.round(runs.getOffset(selectionEnd));
+				g.setColor(currentHighlight);
+				g.fillRect(left, startY, right - left, fontSize);
+			}
+			
+			g.setColor(currentColor);
+			g.setFont(derivedFont);
+			runs.draw(g, startX, startY + fontSize, g.getClipBounds());
+			
+			if (isSelected && selectionStart == selectionEnd)
 			{
-				g.drawString(contents, startX, startY + font.getSize());
+				int caretX = startX + Math.round(runs.getOffset(caret));
+				g.drawLine(caretX, startY, caretX, startY + fontSize);
 			}
+			g.setClip(oldClip);
 		}
 	}
+	
+	/**
+	 * Bring the glyph runs up to date with the contents, if the label has been painted
+	 * 
+	 * @return Whether the runs are laid out
+	 */
+	private boolean layoutRuns()
+	{
+		if (runsFontRenderContext == null)
+		{
+			return false;
+		}
+		runs.layout(contents, runsPassword, derivedFont, runsFontRenderContext);
+		return true;
+	}
 
 	@Override
 	public String getIdentifier() 
@@ -79,24 +166,75 @@ public class FlexibleInputLabel implements Renderable
 	@Override
 	public void setVisible(boolean visibility)
 	{
-		this.isVisible = visibility;
+		if (this.isVisible != visibility)
+		{
+			this.isVisible = visibility;
+			invalidate();
+		}
+	}
+	
+	@Override
+	public void setInvalidationListener(InvalidationListener listener)
+	{
+		this.invalidationListener = listener;
+	}
+	
+	/**
+	 * Request that the area this label occupies be redrawn
+	 */
+	protected void invalidate()
+	{
+		InvalidationListener listener = invalidationListener;
+		if (listener != null)
+		{
+			listener.invalidated(this);
+		}
 	}
 
 	@Override
 	public void mouseOver(int x, int y) 
 	{
-		currentColor = mouseOverColor;
+		if (currentColor != mouseOverColor)
+		{
+			currentColor = mouseOverColor;
+			currentHighlight = mouseOverHighlight;
+			invalidate();
+		}
 	}
 
 	@Override
 	public void mouseAbsent() 
 	{
-		currentColor = startColor;
+		if (currentColor != startColor)
+		{
+			currentColor = startColor;
+			currentHighlight = startHighlight;
+			invalidate();
+		}
 	}
 
+	/**
+	 * Place the caret at the character boundary nearest the click
+	 */
 	@Override
 	public void mouseClick(int x, int y) 
 	{
+		caret = layoutRuns() ? runs.getIndexAt(x) : contents.length();
+		selectionAnchor = caret;
+		invalidate();
+	}
+	
+	/**
+	 * Show or hide the caret and selection as the label gains or loses keyboard input
+	 */
+	@Override
+	public void setSelected(boolean selected)
+	{
+		if (this.isSelected != selected)
+		{
+			this.isSelected = selected;
+			invalidate();
+		}
 	}
 
 	@Override
@@ -106,12 +244,164 @@ public class FlexibleInputLabel implements Renderable
 	
 	public String getContents()
 	{
-		return this.contents;
+		return this.contents.toString();
 	}
 	
+	/**
+	 * Replace the contents, placing the caret at the end
+	 * 
+	 * @param newContents New contents
+	 */
 	public void setContents(String newContents)
 	{
-		this.contents = newContents;
+		this.contents.setText(newContents);
+		runs.reset(newContents.length());
+		caret = newContents.length();
+		selectionAnchor = caret;
+		invalidate();
+	}
+	
+	/**
+	 * Get the position of the caret
+	 * 
+	 * @return Index of the character following the caret
+	 */
+	public int getCaretPosition()
+	{
+		return caret;
+	}
+	
+	/**
+	 * Move the caret, clearing any selection
+	 * 
+	 * @param position Index of the character the caret should precede
+	 */
+	public void setCaretPosition(int position)
+	{
+		select(position, position);
+	}
+	
+	/**
+	 * Select a range of the contents, leaving the caret at its end
+	 * 
+	 * @param start Index where the selection starts, which may be after end to select backwards
+	 * @param end Index where the selection ends and the caret is placed
+	 */
+	public void select(int start, int end)
+	{
+		if (start < 0 || end < 0 || start > contents.length() || end > contents.length())
+		{
+			throw new IndexOutOfBoundsException("Selection " + start + " to " + end + ", length " + contents.length());
+		}
+		selectionAnchor = start;
+		caret = end;
+		invalidate();
+	}
+	
+	/**
+	 * Get the start of the selection
+	 * 
+	 * @return Index of the first selected character, or the caret position if nothing is selected
+	 */
+	public int getSelectionStart()
+	{
+		return Math.min(caret, selectionAnchor);
+	}
+	
+	/**
+	 * Get the end of the selection
+	 * 
+	 * @return Index following the last selected character, or the caret position if nothing is selected
+	 */
+	public int getSelectionEnd()
+	{
+		return Math.max(caret, selectionAnchor);
+	}
+	
+	/**
+	 * Get the selected part of the contents
+	 * 
+	 * @return The selected text, which is empty if nothing is selected
+	 */
+	public String getSelectedText()
+	{
+		return contents.subSequence(getSelectionStart(), getSelectionEnd()).toString();
+	}
+	
+	/**
+	 * Insert text at the caret, replacing the selection if there is one
+	 * 
+	 * @param text Text to insert
+	 */
+	public void insert(String text)
+	{
+		int start = getSelectionStart();
+		int end = getSelectionEnd();
+		if (start != end)
+		{
+			contents.delete(start, end);
+			runs.deleted(start, end);
+		}
+		if (text.length() > 0)
+		{
+			contents.insert(start, text);
+			runs.inserted(start, text.length());
+		}
+		caret = start + text.length();
+		selectionAnchor = caret;
+		invalidate();
+	}
+	
+	/**
+	 * Remove a range of the contents, leaving the caret where it was
+	 * 
+	 * @param start Index of the first character to remove
+	 * @param end Index following the last character to remove
+	 */
+	private void delete(int start, int end)
+	{
+		contents.delete(start, end);
+		runs.deleted(start, end);
+		caret = start;
+		selectionAnchor = start;
+		invalidate();
+	}
+	
+	/**
+	 * Find the character boundary before an index, keeping surrogate pairs together
+	 */
+	private int previousIndex(int index)
+	{
+		if (index >= 2 && Character.isLowSurrogate(contents.charAt(index - 1)) && Character.isHighSurrogate(contents.charAt(index - 2)))
+		{
+			return index - 2;
+		}
+		return Math.max(index - 1, 0);
+	}
+	
+	/**
+	 * Find the character boundary after an index, keeping surrogate pairs together
+	 */
+	private int nextIndex(int index)
+	{
+		if (index + 2 <= contents.length() && Character.isHighSurrogate(contents.charAt(index)) && Character.isLowSurrogate(contents.charAt(index + 1)))
+		{
+			return index + 2;
+		}
+		return Math.min(index + 1, contents.length());
+	}
+	
+	/**
+	 * Move the caret, extending the selection to it or clearing the selection
+	 */
+	private void moveCaret(int position, boolean extendSelection)
+	{
+		caret = position;
+		if (!extendSelection)
+		{
+			selectionAnchor = position;
+		}
+		invalidate();
 	}
 
 	public boolean isCharacter(KeyEvent keyEvent)
@@ -129,24 +419,117 @@ public class FlexibleInputLabel implements Renderable
 	public void keyTyped(KeyEvent keyEvent) 
 	{
 		if (isCharacter(keyEvent))
-			contents += keyEvent.getKeyChar();
+		{
+			if (caret == selectionAnchor)
+			{
+				// Typing without a selection touches only the run around the caret
+				contents.insert(caret, keyEvent.getKeyChar());
+				runs.inserted(caret, 1);
+				caret++;
+				selectionAnchor = caret;
+				invalidate();
+			}
+			else
+			{
+				insert(String.valueOf(keyEvent.getKeyChar()));
+			}
+		}
 	}
 	
+	/**
+	 * Edit the contents and move the caret in response to editing keys
+	 */
 	@Override
 	public void keyPressed(KeyEvent keyEvent) 
 	{
+		int keyCode = keyEvent.getKeyCode();
+		boolean shift = keyEvent.isShiftDown();
+		boolean shortcut = keyEvent.isControlDown() || keyEvent.isMetaDown();
+		int selectionStart = getSelectionStart();
+		int selectionEnd = getSelectionEnd();
+		
+		if (keyCode == KeyEvent.VK_BACK_SPACE)
+		{
+			if (selectionStart != selectionEnd)
+			{
+				delete(selectionStart, selectionEnd);
+			}
+			else if (caret > 0)
+			{
+				delete(previousIndex(caret), caret);
+			}
+		}
+		else if (keyCode == KeyEvent.VK_DELETE)
+		{
+			if (selectionStart != selectionEnd)
+			{
+				delete(selectionStart, selectionEnd);
+			}
+			else if (caret < contents.length())
+			{
+				delete(caret, nextIndex(caret));
+			}
+		}
+		else if (keyCode == KeyEvent.VK_LEFT)
+		{
+			moveCaret(selectionStart != selectionEnd && !shift ? selectionStart : previousIndex(caret), shift);
+		}
+		else if (keyCode == KeyEvent.VK_RIGHT)
+		{
+			moveCaret(selectionStart != selectionEnd && !shift ? selectionEnd : nextIndex(caret), shift);
+		}
+		else if (keyCode == KeyEvent.VK_HOME)
+		{
+			moveCaret(0, shift);
+		}
+		else if (keyCode == KeyEvent.VK_END)
+		{
+			moveCaret(contents.length(), shift);
+		}
+		else if (shortcut && keyCode == KeyEvent.VK_A)
+		{
+			select(0, contents.length());
+		}
+		else if (shortcut && (keyCode == KeyEvent.VK_C || keyCode == KeyEvent.VK_X))
+		{
+			// Passwords are never copied out of the label
+			if (!isPassword && selectionStart != selectionEnd)
+			{
+				try
+				{
+					Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
+					clipboard.setContents(new StringSelection(getSelectedText()), null);
+					if (keyCode == KeyEvent.VK_X)
+					{
+						delete(selectionStart, selectionEnd);
+					}
+				} catch (Exception e) { e.printStackTrace(); }
+			}
+		}
+		else if (shortcut && keyCode == KeyEvent.VK_V)
+		{
+			try
+			{
+				Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
+				String pasted = (String) clipboard.getData(DataFlavor.stringFlavor);
+				
+				// Labels hold a single line, so line breaks and other control characters are dropped
+				StringBuilder text = new StringBuilder(pasted.length());
+				for (int i = 0; i < pasted.length(); i++)
+				{
+					if (!Character.isISOControl(pasted.charAt(i)))
+					{
+						text.append(pasted.charAt(i));
+					}
+				}
+				insert(text.toString());
+			} catch (Exception e) { e.printStackTrace(); }
+		}
 	}
 
 	@Override
 	public void keyReleased(KeyEvent keyEvent)
 	{
-		if (keyEvent.getKeyCode() == KeyEvent.VK_DELETE || keyEvent.getKeyCode() == KeyEvent.VK_BACK_SPACE)
-		{
-			if (contents.length() > 0)
-			{
-				contents = contents.substring(0, contents.length() - 1);
-			}
-		}
 	}
 
 }
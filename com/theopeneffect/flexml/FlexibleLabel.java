@@ -28,5 +28,17 @@ public class FlexibleLabel extends FlexibleInputLabel
 	{
 		// Do Nothing!
 	}
+	
+	@Override
+	public void mouseClick(int x, int y)
+	{
+		// Do Nothing!
+	}
+	
+	@Override
+	public void setSelected(boolean selected)
+	{
+		// Labels aren't edited, so never show a caret
+	}
 
 }
@@ -0,0 +1,447 @@
+package com.theopeneffect.flexml;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.event.KeyEvent;
+
+/**
+ * A scrolling list of rows supplied by a ListDataSource. Rows can be arranged in
+ * several columns to form a grid, filling each line of the grid from left to right.
+ *
+ * Only the rows visible within the list's box are requested from the data source
+ * and drawn, all by the same RowRenderer, so painting and mouse handling take the
+ * same time whether the data source has ten rows or ten million.
+ *
+ * The list scrolls with the mouse wheel, the arrow, page and home/end keys while it
+ * is selected, or through scrollToRow and scrollBy.
+ *
+ * @author Maxwell Sanchez
+ *
+ * @param <T> Type of each row
+ */
+public class FlexibleList<T> implements Renderable, Invalidatable, Scrollable
+{
+	// Color of the scroll position indicator
+	private static final Color SCROLL_INDICATOR_COLOR = new Color(255, 255, 255, 96);
+
+	// Width of the scroll position indicator in pixels
+	private static final int SCROLL_INDICATOR_WIDTH = 4;
+
+	// Lines of the grid scrolled by each notch of the mouse wheel
+	private static final int LINES_PER_WHEEL_NOTCH = 3;
+
+	private ListDataSource<? extends T> dataSource;
+	private RowRenderer<? super T> rowRenderer;
+
+	// Height of each line of the grid in pixels, and the number of rows on each line
+	private int rowHeight;
+	private int columns;
+
+	// Distance scrolled from the top of the first line, in pixels
+	private long scrollOffset = 0;
+
+	// Index of the selected row and the row under the mouse, or -1 if there is none
+	private int selectedRow = -1;
+	private int mouseOverRow = -1;
+
+	// Size of the box the list was most recently painted in
+	private int viewWidth = 0;
+	private int viewHeight = 0;
+
+	private String identifier;
+	private boolean isVisible = true;
+
+	// Notified when a row is selected
+	private RowSelectionListener selectionListener;
+
+	// Notified when the list needs to be redrawn
+	private InvalidationListener invalidationListener;
+
+	/**
+	 * Create a FlexibleList arranged in columns
+	 *
+	 * @param identifier Identifier used for GUI positioning
+	 * @param dataSource Source of the rows
+	 * @param rowRenderer Draws each visible row
+	 * @param rowHeight Height of each line of the list in pixels
+	 * @param columns Number of rows side by side on each line
+	 */
+	public FlexibleList(String identifier, ListDataSource<? extends T> dataSource, RowRenderer<? super T> rowRenderer, int rowHeight, int columns)
+	{
+		if (rowHeight <= 0 || columns <= 0)
+		{
+			throw new IllegalArgumentException("Row height and columns must be positive");
+		}
+		this.identifier = identifier;
+		this.dataSource = dataSource;
+		this.rowRenderer = rowRenderer;
+		this.rowHeight = rowHeight;
+		this.columns = columns;
+	}
+
+	/**
+	 * Create a FlexibleList with one row on each line
+	 *
+	 * @param identifier Identifier used for GUI positioning
+	 * @param dataSource Source of the rows
+	 * @param rowRenderer Draws each visible row
+	 * @param rowHeight Height of each row in pixels
+	 */
+	public FlexibleList(String identifier, ListDataSource<? extends T> dataSource, RowRenderer<? super T> rowRenderer, int rowHeight)
+	{
+		this(identifier, dataSource, rowRenderer, rowHeight, 1);
+	}
+
+	/**
+	 * Call after the data source's rows have changed, to redraw the list and keep
+	 * the scroll position and selection within the new row count
+	 */
+	public void dataChanged()
+	{
+		if (selectedRow >= dataSource.getRowCount())
+		{
+			selectedRow = -1;
+		}
+		mouseOverRow = -1;
+		setScrollOffset(scrollOffset);
+		invalidate();
+	}
+
+	public void setDataSource(ListDataSource<? extends T> dataSource)
+	{
+		this.dataSource = dataSource;
+		selectedRow = -1;
+		scrollOffset = 0;
+		dataChanged();
+	}
+
+	public void setSelectionListener(RowSelectionListener selectionListener)
+	{
+		this.selectionListener = selectionListener;
+	}
+
+	/**
+	 * Get the index of the selected row
+	 *
+	 * @return Index of the selected row, or -1 if no row is selected
+	 */
+	public int getSelectedRow()
+	{
+		return selectedRow;
+	}
+
+	/**
+	 * Select a row, scrolling it into view and notifying the selection listener
+	 *
+	 * @param index Index of the row to select, or -1 to clear the selection
+	 */
+	public void setSelectedRow(int index)
+	{
+		if (index < -1 || index >= dataSource.getRowCount())
+		{
+			throw new IndexOutOfBoundsException("Row " + index + ", row count " + dataSource.getRowCount());
+		}
+		selectedRow = index;
+		if (index >= 0)
+		{
+			scrollToRow(index);
+			RowSelectionListener listener = selectionListener;
+			if (listener != null)
+			{
+				listener.rowSelected(this, index);
+			}
+		}
+		invalidate();
+	}
+
+	/**
+	 * Scroll by the least amount which makes a row entirely visible
+	 *
+	 * @param index Index of the row
+	 */
+	public void scrollToRow(int index)
+	{
+		long top = (long) (index / columns) * rowHeight;
+		if (top < scrollOffset)
+		{
+			setScrollOffset(top);
+		}
+		else if (top + rowHeight > scrollOffset + viewHeight)
+		{
+			setScrollOffset(top + rowHeight - viewHeight);
+		}
+	}
+
+	/**
+	 * Scroll the list
+	 *
+	 * @param pixels Distance to scroll, positive to move further down the list
+	 */
+	public void scrollBy(long pixels)
+	{
+		setScrollOffset(scrollOffset + pixels);
+	}
+
+	/**
+	 * Get the distance scrolled from the top of the list
+	 *
+	 * @return Distance in pixels
+	 */
+	public long getScrollOffset()
+	{
+		return scrollOffset;
+	}
+
+	/**
+	 * Scroll to a distance from the top of the list, limited to the list's extent
+	 *
+	 * @param offset Distance in pixels
+	 */
+	public void setScrollOffset(long offset)
+	{
+		long maximum = Math.max(0, getContentHeight() - viewHeight);
+		offset = Math.max(0, Math.min(offset, maximum));
+		if (offset != scrollOffset)
+		{
+			scrollOffset = offset;
+			mouseOverRow = -1;
+			invalidate();
+		}
+	}
+
+	/**
+	 * Find the row at a position within the list
+	 *
+	 * @param x X coordinate relative to the list
+	 * @param y Y coordinate relative to the list
+	 * @return Index of the row, or -1 if there is no row at that position
+	 */
+	public int getRowAt(int x, int y)
+	{
+		if (x < 0 || y < 0 || x >= viewWidth || y >= viewHeight)
+		{
+			return -1;
+		}
+		long line = (scrollOffset + y) / rowHeight;
+		long index = line * columns + (long) x * columns / viewWidth;
+		return index < dataSource.getRowCount() ? (int) index : -1;
+	}
+
+	/**
+	 * Get the height of every line of the list together
+	 *
+	 * @return Height in pixels
+	 */
+	private long getContentHeight()
+	{
+		long lines = (dataSource.getRowCount() + (long) columns - 1) / columns;
+		return lines * rowHeight;
+	}
+
+	@Override
+	public void paint(Graphics2D g, int startX, int startY, int width, int height)
+	{
+		viewWidth = width;
+		viewHeight = height;
+		if (!isVisible || width <= 0 || height <= 0)
+		{
+			return;
+		}
+
+		// Keep the scroll position valid if the list has shrunk
+		long contentHeight = getContentHeight();
+		if (scrollOffset > Math.max(0, contentHeight - height))
+		{
+			scrollOffset = Math.max(0, contentHeight - height);
+		}
+
+		Shape oldClip = g.getClip();
+		g.clipRect(startX, startY, width, height);
+		Rectangle clip = g.getClipBounds();
+		if (clip != null && !clip.isEmpty())
+		{
+			// Only the lines intersecting the clip are drawn
+			long firstLine = (scrollOffset + clip.y - startY) / rowHeight;
+			long lastLine = (scrollOffset + clip.y + clip.height - 1 - startY) / rowHeight;
+			int rowCount = dataSource.getRowCount();
+			for (long line = firstLine; line <= lastLine; line++)
+			{
+				int rowY = (int) (startY + line * rowHeight - scrollOffset);
+				for (int column = 0; column < columns; column++)
+				{
+					long index = line * columns + column;
+					if (index >= rowCount)
+					{
+						break;
+					}
+					int rowX = startX + column * width / columns;
+					int rowWidth = startX + (column + 1) * width / columns - rowX;
+					rowRenderer.paintRow(g, dataSource.getRow((int) index), (int) index, rowX, rowY, rowWidth, rowHeight,
+					                     index == selectedRow, index == mouseOverRow);
+				}
+			}
+
+			// Show how far through the list the visible lines are
+			if (contentHeight > height)
+			{
+				int indicatorHeight = (int) Math.max(SCROLL_INDICATOR_WIDTH * 2, (long) height * height / contentHeight);
+				int indicatorY = startY + (int) ((height - indicatorHeight) * scrollOffset / (contentHeight - height));
+				g.setColor(SCROLL_INDICATOR_COLOR);
+				g.fillRect(startX + width - SCROLL_INDICATOR_WIDTH, indicatorY, SCROLL_INDICATOR_WIDTH, indicatorHeight);
+			}
+		}
+		g.setClip(oldClip);
+	}
+
+	@Override
+	public String getIdentifier()
+	{
+		return identifier;
+	}
+
+	@Override
+	public boolean getVisible()
+	{
+		return isVisible;
+	}
+
+	@Override
+	public void setVisible(boolean visibility)
+	{
+		if (this.isVisible != visibility)
+		{
+			this.isVisible = visibility;
+			invalidate();
+		}
+	}
+
+	@Override
+	public void setInvalidationListener(InvalidationListener listener)
+	{
+		this.invalidationListener = listener;
+	}
+
+	/**
+	 * Request that the area this list occupies be redrawn
+	 */
+	protected void invalidate()
+	{
+		InvalidationListener listener = invalidationListener;
+		if (listener != null)
+		{
+			listener.invalidated(this);
+		}
+	}
+
+	@Override
+	public void mouseOver(int x, int y)
+	{
+		int row = getRowAt(x, y);
+		if (row != mouseOverRow)
+		{
+			mouseOverRow = row;
+			invalidate();
+		}
+	}
+
+	@Override
+	public void mouseAbsent()
+	{
+		if (mouseOverRow != -1)
+		{
+			mouseOverRow = -1;
+			invalidate();
+		}
+	}
+
+	@Override
+	public void mouseClick(int x, int y)
+	{
+		int row = getRowAt(x, y);
+		if (row >= 0)
+		{
+			setSelectedRow(row);
+		}
+	}
+
+	@Override
+	public void mouseWheelMoved(int x, int y, int wheelRotation)
+	{
+		scrollBy((long) wheelRotation * LINES_PER_WHEEL_NOTCH * rowHeight);
+		mouseOver(x, y);
+	}
+
+	@Override
+	public void offScreen()
+	{
+		// Do Nothing
+	}
+
+	@Override
+	public void keyTyped(KeyEvent keyEvent)
+	{
+		// Do Nothing
+	}
+
+	/**
+	 * Move the selection with the arrow, page and home/end keys
+	 */
+	@Override
+	public void keyPressed(KeyEvent keyEvent)
+	{
+		int rowCount = dataSource.getRowCount();
+		if (rowCount == 0)
+		{
+			return;
+		}
+		int pageRows = Math.max(1, viewHeight / rowHeight) * columns;
+		int current = selectedRow;
+		long target;
+		int keyCode = keyEvent.getKeyCode();
+		if (keyCode == KeyEvent.VK_DOWN)
+		{
+			target = current < 0 ? 0 : (long) current + columns;
+		}
+		else if (keyCode == KeyEvent.VK_UP)
+		{
+			target = current < 0 ? 0 : (long) current - columns;
+		}
+		else if (keyCode == KeyEvent.VK_RIGHT && columns > 1)
+		{
+			target = (long) current + 1;
+		}
+		else if (keyCode == KeyEvent.VK_LEFT && columns > 1)
+		{
+			target = (long) current - 1;
+		}
+		else if (keyCode == KeyEvent.VK_PAGE_DOWN)
+		{
+			target = (long) Math.max(current, 0) + pageRows;
+		}
+		else if (keyCode == KeyEvent.VK_PAGE_UP)
+		{
+			target = (long) Math.max(current, 0) - pageRows;
+		}
+		else if (keyCode == KeyEvent.VK_HOME)
+		{
+			target = 0;
+		}
+		else if (keyCode == KeyEvent.VK_END)
+		{
+			target = rowCount - 1;
+		}
+		else
+		{
+			return;
+		}
+		setSelectedRow((int) Math.max(0, Math.min(target, rowCount - 1)));
+	}
+
+	@Override
+	public void keyReleased(KeyEvent keyEvent)
+	{
+		// Do Nothing
+	}
+}
@@ -0,0 +1,551 @@
+package com.theopeneffect.flexml;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.event.KeyEvent;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.LineMetrics;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.text.AttributedString;
+import java.util.ArrayList;
+
+/**
+ * A block of text which wraps to fit the width it is given and is clipped to its
+ * height. Lines are broken at word boundaries, and line breaks in the text start
+ * new paragraphs.
+ *
+ * Line breaks are measured once for each combination of width, font size and text,
+ * and each paragraph is only measured again when it changes. Appended text is split
+ * into paragraphs as it arrives, and the lines of the paragraphs before it are
+ * kept as they are, so appending to a long text only costs as much as the last
+ * paragraph and the new ones. Only the lines intersecting the area being repainted
+ * are drawn.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+public class FlexibleTextArea implements Renderable, Invalidatable
+{
+	private Font font = new Font("Arial", Font.PLAIN, 1);
+
+	private Color color;
+
+	// Font size as a fraction of the height allotted to the text area
+	private double scale;
+
+	// The text as given, and the same text divided into paragraphs
+	private final StringBuilder text = new StringBuilder();
+	private volatile Paragraphs paragraphs;
+
+	private String identifier;
+	private boolean isVisible = true;
+
+	// Lines measured for the most recent width, font size and text
+	private LineBreaks lineBreaks = null;
+
+	// Notified when the text area needs to be redrawn
+	private InvalidationListener invalidationListener;
+
+	/**
+	 * Create a FlexibleTextArea
+	 *
+	 * @param identifier Identifier used for GUI positioning
+	 * @param scale Font size as a fraction of the height allotted to the text area
+	 * @param text Text to display
+	 * @param color Color to draw the text in
+	 */
+	public FlexibleTextArea(String identifier, double scale, String text, Color color)
+	{
+		this.identifier = identifier;
+		this.scale = scale;
+		this.color = color;
+		this.text.append(text);
+		this.paragraphs = Paragraphs.of(text);
+	}
+
+	/**
+	 * Create a FlexibleTextArea drawing white text
+	 *
+	 * @param identifier Identifier used for GUI positioning
+	 * @param scale Font size as a fraction of the height allotted to the text area
+	 * @param text Text to display
+	 */
+	public FlexibleTextArea(String identifier, double scale, String text)
+	{
+		this(identifier, scale, text, Color.WHITE);
+	}
+
+	/**
+	 * Get the text being displayed
+	 *
+	 * @return The text, with its line breaks as they were given
+	 */
+	public synchronized String getText()
+	{
+		return text.toString();
+	}
+
+	/**
+	 * Replace the text. Paragraphs which are unchanged keep their measured line breaks.
+	 *
+	 * @param text New text
+	 */
+	public void setText(String text)
+	{
+		synchronized (this)
+		{
+			this.text.setLength(0);
+			this.text.append(text);
+			paragraphs = Paragraphs.of(text);
+		}
+		invalidate();
+	}
+
+	/**
+	 * Add text to the end of the existing text. Only the added text and the
+	 * paragraph it continues are examined.
+	 *
+	 * @param moreText Text to add
+	 */
+	public void append(String moreText)
+	{
+		synchronized (this)
+		{
+			text.append(moreText);
+			paragraphs = paragraphs.append(moreText);
+		}
+		invalidate();
+	}
+
+	/**
+	 * Set the color the text is drawn in
+	 *
+	 * @param color New text color
+	 */
+	public void setColor(Color color)
+	{
+		if (!color.equals(this.color))
+		{
+			this.color = color;
+			invalidate();
+		}
+	}
+
+	@Override
+	public void paint(Graphics2D g, int startX, int startY, int width, int height)
+	{
+		if (isVisible && width > 0 && height > 0)
+		{
+			int fontSize = (int) (scale * height);
+			LineBreaks lines = getLineBreaks(width, fontSize, paragraphs, g.getFontRenderContext());
+
+			// Only draw lines which fall within both the text area and the area being repainted
+			Shape oldClip = g.getClip();
+			g.clipRect(startX, startY, width, height);
+			Rectangle clip = g.getClipBounds();
+			if (clip != null && !clip.isEmpty())
+			{
+				g.setColor(color);
+				int line = lines.findLineAt(clip.y - startY);
+				float clipBottom = clip.y + clip.height - startY;
+				for (; line < lines.getLineCount() && lines.getTop(line) < clipBottom; line++)
+				{
+					TextLayout layout = lines.getLine(line);
+					if (layout != null)
+					{
+						float x = layout.isLeftToRight() ? startX : startX + width - layout.getVisibleAdvance();
+						layout.draw(g, x, startY + lines.getBaseline(line));
+					}
+				}
+			}
+			g.setClip(oldClip);
+		}
+	}
+
+	/**
+	 * Get the lines for the provided width, font size and text, measuring them again
+	 * if any of those or the rendering context have changed
+	 *
+	 * @param width Width to wrap within
+	 * @param fontSize Font size in pixels
+	 * @param text The text's paragraphs
+	 * @param fontRenderContext Rendering context the lines will be drawn with
+	 * @return The measured lines
+	 */
+	private LineBreaks getLineBreaks(int width, int fontSize, Paragraphs text, FontRenderContext fontRenderContext)
+	{
+		LineBreaks current = lineBreaks;
+		if (current == null || !current.matches(width, fontSize, text, fontRenderContext))
+		{
+			current = new LineBreaks(width, fontSize, text, fontRenderContext, font, current);
+			lineBreaks = current;
+		}
+		return current;
+	}
+
+	@Override
+	public String getIdentifier()
+	{
+		return identifier;
+	}
+
+	@Override
+	public boolean getVisible()
+	{
+		return isVisible;
+	}
+
+	@Override
+	public void setVisible(boolean visibility)
+	{
+		if (this.isVisible != visibility)
+		{
+			this.isVisible = visibility;
+			invalidate();
+		}
+	}
+
+	@Override
+	public void setInvalidationListener(InvalidationListener listener)
+	{
+		this.invalidationListener = listener;
+	}
+
+	/**
+	 * Request that the area this text area occupies be redrawn
+	 */
+	protected void invalidate()
+	{
+		InvalidationListener listener = invalidationListener;
+		if (listener != null)
+		{
+			listener.invalidated(this);
+		}
+	}
+
+	@Override
+	public void mouseOver(int x, int y)
+	{
+		// Do Nothing
+	}
+
+	@Override
+	public void mouseAbsent()
+	{
+		// Do Nothing
+	}
+
+	@Override
+	public void mouseClick(int x, int y)
+	{
+		// Do Nothing
+	}
+
+	@Override
+	public void offScreen()
+	{
+		// Do Nothing
+	}
+
+	@Override
+	public void keyTyped(KeyEvent keyEvent)
+	{
+		// Do Nothing
+	}
+
+	@Override
+	public void keyPressed(KeyEvent keyEvent)
+	{
+		// Do Nothing
+	}
+
+	@Override
+	public void keyReleased(KeyEvent keyEvent)
+	{
+		// Do Nothing
+	}
+
+	/**
+	 * A text divided into paragraphs at its line breaks. Immutable as far as its
+	 * readers can tell: appending returns a new version which writes its new
+	 * paragraphs after the ones the older version counts, in an array the two share,
+	 * so the text before the last paragraph is never split or copied again.
+	 */
+	private static class Paragraphs
+	{
+		// Shared by versions appended from one another, which share their complete paragraphs
+		private final Object lineage;
+
+		// Paragraphs ended by a line break, of which this version has the first completeCount
+		private final String[] complete;
+		private final int completeCount;
+
+		// The paragraph after the last line break
+		private final String last;
+
+		// Whether the text ends with \r, so a \n appended next belongs to the same line break
+		private final boolean endsWithReturn;
+
+		private Paragraphs(Object lineage, String[] complete, int completeCount, String last, boolean endsWithReturn)
+		{
+			this.lineage = lineage;
+			this.complete = complete;
+			this.completeCount = completeCount;
+			this.last = last;
+			this.endsWithReturn = endsWithReturn;
+		}
+
+		/**
+		 * Divide a text into paragraphs at each \r\n, \r or \n
+		 */
+		static Paragraphs of(String text)
+		{
+			return new Paragraphs(new Object(), new String[8], 0, "", false).append(text);
+		}
+
+		/**
+		 * Get the paragraphs of this text followed by more text
+		 */
+		Paragraphs append(String moreText)
+		{
+			int length = moreText.length();
+			int start = endsWithReturn && length > 0 && moreText.charAt(0) == '\n' ? 1 : 0;
+			if (start == length)
+			{
+				return length == 0 ? this : new Paragraphs(lineage, complete, completeCount, last, false);
+			}
+
+			String[] array = complete;
+			int count = completeCount;
+			String current = last;
+			for (int i = start; i < length; i++)
+			{
+				char character = moreText.charAt(i);
+				if (character == '\r' || character == '\n')
+				{
+					if (count == array.length)
+					{
+						String[] grown = new String[array.length * 2];
+						System.arraycopy(array, 0, grown, 0, count);
+						array = grown;
+					}
+					array[count++] = current.concat(moreText.substring(start, i));
+					current = "";
+					if (character == '\r' && i + 1 < length && moreText.charAt(i + 1) == '\n')
+					{
+						i++;
+					}
+					start = i + 1;
+				}
+			}
+			current = current.concat(moreText.substring(start));
+			return new Paragraphs(lineage, array, count, current, moreText.charAt(length - 1) == '\r');
+		}
+
+		int size()
+		{
+			return completeCount + 1;
+		}
+
+		String get(int paragraph)
+		{
+			return paragraph < completeCount ? complete[paragraph] : last;
+		}
+
+		/**
+		 * Count the leading paragraphs which are certainly the same as another version's,
+		 * without comparing them
+		 */
+		int getSharedCount(Paragraphs other)
+		{
+			return lineage == other.lineage ? Math.min(completeCount, other.completeCount) : 0;
+		}
+	}
+
+	/**
+	 * Lines of text wrapped to a width in one font size. Immutable once measured,
+	 * so painting can use it while a newer one is being measured.
+	 */
+	private static class LineBreaks
+	{
+		// What the lines were measured for
+		private final int width;
+		private final int fontSize;
+		private final Paragraphs paragraphs;
+		private final FontRenderContext fontRenderContext;
+
+		// The lines each paragraph was broken into, and the index of each paragraph's first line
+		private final TextLayout[][] paragraphLines;
+		private final int[] firstLines;
+
+		// Every line in order (null for an empty paragraph), with its top and baseline relative to the text area
+		private final TextLayout[] lines;
+		private final float[] tops;
+		private final float[] baselines;
+
+		/**
+		 * Measure the line breaks of a text, reusing the lines of paragraphs which are
+		 * unchanged from a previous measurement with the same width and font size
+		 */
+		LineBreaks(int width, int fontSize, Paragraphs paragraphs, FontRenderContext fontRenderContext, Font baseFont, LineBreaks previous)
+		{
+			this.width = width;
+			this.fontSize = fontSize;
+			this.paragraphs = paragraphs;
+			this.fontRenderContext = fontRenderContext;
+
+			boolean reuse = previous != null && previous.width == width && previous.fontSize == fontSize
+					&& previous.fontRenderContext.equals(fontRenderContext);
+			Font font = new Font(baseFont.getFontName(), baseFont.getStyle(), fontSize);
+
+			// Paragraphs known to be unchanged keep their lines and positions without being compared
+			int count = paragraphs.size();
+			int shared = reuse ? paragraphs.getSharedCount(previous.paragraphs) : 0;
+			paragraphLines = new TextLayout[count][];
+			firstLines = new int[count + 1];
+			System.arraycopy(previous != null ? previous.paragraphLines : paragraphLines, 0, paragraphLines, 0, shared);
+			System.arraycopy(previous != null ? previous.firstLines : firstLines, 0, firstLines, 0, shared + 1);
+			int lineCount = firstLines[shared];
+			for (int i = shared; i < count; i++)
+			{
+				firstLines[i] = lineCount;
+				String paragraph = paragraphs.get(i);
+				if (reuse && i < previous.paragraphs.size() && paragraph.equals(previous.paragraphs.get(i)))
+				{
+					paragraphLines[i] = previous.paragraphLines[i];
+				}
+				else
+				{
+					paragraphLines[i] = breakParagraph(paragraph, font, width, fontRenderContext);
+				}
+				lineCount += Math.max(paragraphLines[i].length, 1);
+			}
+			firstLines[count] = lineCount;
+
+			// Empty paragraphs take the height of a line of the font
+			float emptyAscent = 0;
+			float emptyHeight = 0;
+			if (fontSize > 0)
+			{
+				LineMetrics metrics = font.getLineMetrics(" ", fontRenderContext);
+				emptyAscent = metrics.getAscent();
+				emptyHeight = metrics.getAscent() + metrics.getDescent() + metrics.getLeading();
+			}
+
+			lines = new TextLayout[lineCount];
+			tops = new float[lineCount];
+			baselines = new float[lineCount];
+			float y = 0;
+			int line = firstLines[shared];
+			if (line > 0)
+			{
+				System.arraycopy(previous.lines, 0, lines, 0, line);
+				System.arraycopy(previous.tops, 0, tops, 0, line);
+				System.arraycopy(previous.baselines, 0, baselines, 0, line);
+				y = previous.tops[line];
+			}
+			for (int i = shared; i < count; i++)
+			{
+				if (paragraphLines[i].length == 0)
+				{
+					tops[line] = y;
+					baselines[line] = y + emptyAscent;
+					y += emptyHeight;
+					line++;
+				}
+				for (int j = 0; j < paragraphLines[i].length; j++)
+				{
+					TextLayout layout = paragraphLines[i][j];
+					lines[line] = layout;
+					tops[line] = y;
+					baselines[line] = y + layout.getAscent();
+					y += layout.getAscent() + layout.getDescent() + layout.getLeading();
+					line++;
+				}
+			}
+		}
+
+		/**
+		 * Break a paragraph into lines no wider than the provided width, breaking within
+		 * a word only when the word alone is wider
+		 */
+		private static TextLayout[] breakParagraph(String paragraph, Font font, int width, FontRenderContext fontRenderContext)
+		{
+			if (paragraph.length() == 0 || font.getSize() <= 0)
+			{
+				return new TextLayout[0];
+			}
+			AttributedString attributed = new AttributedString(paragraph);
+			attributed.addAttribute(TextAttribute.FONT, font);
+			LineBreakMeasurer measurer = new LineBreakMeasurer(attributed.getIterator(), fontRenderContext);
+			ArrayList<TextLayout> lines = new ArrayList<TextLayout>();
+			while (measurer.getPosition() < paragraph.length())
+			{
+				lines.add(measurer.nextLayout(width));
+			}
+			return lines.toArray(new TextLayout[lines.size()]);
+		}
+
+		/**
+		 * Check whether these lines were measured for the provided width, font size, text and context
+		 */
+		boolean matches(int width, int fontSize, Paragraphs paragraphs, FontRenderContext fontRenderContext)
+		{
+			return this.width == width && this.fontSize == fontSize && this.paragraphs == paragraphs
+					&& this.fontRenderContext.equals(fontRenderContext);
+		}
+
+		int getLineCount()
+		{
+			return lines.length;
+		}
+
+		TextLayout getLine(int line)
+		{
+			return lines[line];
+		}
+
+		float getTop(int line)
+		{
+			return tops[line];
+		}
+
+		float getBaseline(int line)
+		{
+			return baselines[line];
+		}
+
+		/**
+		 * Find the line containing a vertical position
+		 *
+		 * @param y Position relative to the top of the text area
+		 * @return Index of the last line starting at or above the position, or 0 if there is none
+		 */
+		int findLineAt(float y)
+		{
+			// The last line whose top is at or above y
+			int low = 0;
+			int high = lines.length - 1;
+			int found = 0;
+			while (low <= high)
+			{
+				int middle = (low + high) >>> 1;
+				if (tops[middle] <= y)
+				{
+					found = middle;
+					low = middle + 1;
+				}
+				else
+				{
+					high = middle - 1;
+				}
+			}
+			return found;
+		}
+	}
+}
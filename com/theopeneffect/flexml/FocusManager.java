@@ -0,0 +1,306 @@
+package com.theopeneffect.flexml;
+
+import java.awt.event.KeyEvent;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+/**
+ * Tracks which Renderable of a RenderPanel has keyboard focus, moves focus with
+ * TAB and shift-TAB, and passes key events on to the focused Renderable only.
+ *
+ * Renderables which are Selectable, or whose layout element is enterable, can be
+ * reached with TAB. They are visited front layer first, and within a layer from
+ * top to bottom and left to right, by their position in the layout. The order is
+ * built once per set of renderables, layout and panel size, so moving focus is a
+ * single lookup rather than a search of the panel. Pressing ENTER on a Renderable
+ * which is Enterable and whose element is enterable activates it.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+public class FocusManager
+{
+	// Panel whose renderables are focused
+	private final RenderPanel panel;
+
+	// The focused Renderable, if it exists
+	private volatile Renderable focused = null;
+
+	// Tab order for the panel's current render list and size, null until first needed
+	private volatile TabOrder tabOrder = null;
+
+	/**
+	 * Create a FocusManager for the provided panel
+	 *
+	 * @param panel Panel whose renderables are focused
+	 */
+	FocusManager(RenderPanel panel)
+	{
+		this.panel = panel;
+	}
+
+	/**
+	 * Get the Renderable with keyboard focus
+	 *
+	 * @return The focused Renderable, or null if nothing is focused
+	 */
+	public Renderable getFocused()
+	{
+		return focused;
+	}
+
+	/**
+	 * Give keyboard focus to a Renderable, notifying the old and new focus which are Selectable
+	 *
+	 * @param renderable The Renderable to focus, or null to focus nothing
+	 */
+	public synchronized void focus(Renderable renderable)
+	{
+		Renderable previous = focused;
+		if (previous != renderable)
+		{
+			focused = renderable;
+			if (previous instanceof Selectable)
+			{
+				((Selectable)previous).setSelected(false);
+			}
+			if (renderable instanceof Selectable)
+			{
+				((Selectable)renderable).setSelected(true);
+			}
+		}
+	}
+
+	/**
+	 * Move focus to the next visible Renderable in the tab order, wrapping around
+	 * after the last. If the focused Renderable isn't in the tab order, the first
+	 * is focused.
+	 *
+	 * @return The newly focused Renderable, or null if nothing can be focused
+	 */
+	public Renderable focusNext()
+	{
+		return step(1);
+	}
+
+	/**
+	 * Move focus to the previous visible Renderable in the tab order, wrapping around
+	 * before the first. If the focused Renderable isn't in the tab order, the last
+	 * is focused.
+	 *
+	 * @return The newly focused Renderable, or null if nothing can be focused
+	 */
+	public Renderable focusPrevious()
+	{
+		return step(-1);
+	}
+
+	/**
+	 * Move focus through the tab order, skipping Renderables which aren't visible
+	 *
+	 * @param direction 1 to move forwards, -1 to move backwards
+	 * @return The newly focused Renderable, or null if nothing can be focused
+	 */
+	private synchronized Renderable step(int direction)
+	{
+		TabOrder order = getTabOrder(panel.getRenderList());
+		int count = order.renderables.length;
+		if (count == 0)
+		{
+			return null;
+		}
+		Integer position = focused != null ? order.positions.get(focused) : null;
+		int current = position != null ? position.intValue() : (direction > 0 ? -1 : count);
+		for (int i = 1; i <= count; i++)
+		{
+			Renderable candidate = order.renderables[((current + i * direction) % count + count) % count];
+			if (candidate.getVisible())
+			{
+				focus(candidate);
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the tab order for the provided RenderList at the panel's current size,
+	 * rebuilding it if the list or the panel size has changed
+	 *
+	 * @param renderList The RenderList to order
+	 * @return A TabOrder matching the RenderList and current size
+	 */
+	private TabOrder getTabOrder(RenderList renderList)
+	{
+		int width = panel.getWidth();
+		int height = panel.getHeight();
+		TabOrder current = tabOrder;
+		if (current == null || current.renderList != renderList || current.panelWidth != width || current.panelHeight != height)
+		{
+			current = new TabOrder(renderList, width, height);
+			tabOrder = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Move focus on TAB and shift-TAB, pass every other key press to the focused
+	 * Renderable, and activate it on ENTER if it is Enterable
+	 *
+	 * @param keyEvent The key press
+	 */
+	void keyPressed(KeyEvent keyEvent)
+	{
+		if (keyEvent.getKeyCode() == KeyEvent.VK_TAB)
+		{
+			if (keyEvent.isShiftDown())
+			{
+				focusPrevious();
+			}
+			else
+			{
+				focusNext();
+			}
+			keyEvent.consume();
+			return;
+		}
+
+		Renderable current = focused;
+		if (current == null)
+		{
+			return;
+		}
+		current.keyPressed(keyEvent);
+		if (keyEvent.getKeyCode() == KeyEvent.VK_ENTER && current instanceof Enterable)
+		{
+			activate((Enterable)current);
+		}
+	}
+
+	/**
+	 * Pass a key release to the focused Renderable, except for the TAB used to move focus
+	 *
+	 * @param keyEvent The key release
+	 */
+	void keyReleased(KeyEvent keyEvent)
+	{
+		Renderable current = focused;
+		if (current != null && keyEvent.getKeyCode() != KeyEvent.VK_TAB)
+		{
+			current.keyReleased(keyEvent);
+		}
+	}
+
+	/**
+	 * Pass a typed character to the focused Renderable, except for the TAB used to move focus
+	 *
+	 * @param keyEvent The typed character
+	 */
+	void keyTyped(KeyEvent keyEvent)
+	{
+		Renderable current = focused;
+		if (current != null && keyEvent.getKeyChar() != '\t')
+		{
+			current.keyTyped(keyEvent);
+		}
+	}
+
+	/**
+	 * Activate an Enterable if its element is enterable. Renderables which aren't
+	 * drawn, including those whose identifier isn't in the layout, are ignored.
+	 *
+	 * @param enterable The Enterable to activate
+	 */
+	private void activate(Enterable enterable)
+	{
+		RenderList renderList = panel.getRenderList();
+		int entry = renderList.indexOf((Renderable)enterable);
+		if (entry < 0)
+		{
+			return;
+		}
+		int element = renderList.getEntries()[entry].getElementIndex();
+		if (renderList.getLayoutDescription().getEnterable(element))
+		{
+			enterable.activate();
+		}
+	}
+
+	/**
+	 * The focusable Renderables of one RenderList at one panel size, in the order
+	 * TAB visits them, with the position of each in that order
+	 */
+	private static class TabOrder
+	{
+		// The RenderList and size this order was built for
+		private final RenderList renderList;
+		private final int panelWidth;
+		private final int panelHeight;
+
+		// Focusable Renderables in the order TAB visits them
+		private final Renderable[] renderables;
+
+		// Position of each focusable Renderable in the order
+		private final IdentityHashMap<Renderable, Integer> positions;
+
+		/**
+		 * Order the focusable Renderables of a RenderList by layer, then by the top
+		 * and left of their elements at the provided panel size
+		 */
+		TabOrder(RenderList renderList, int panelWidth, int panelHeight)
+		{
+			this.renderList = renderList;
+			this.panelWidth = panelWidth;
+			this.panelHeight = panelHeight;
+
+			final RenderEntry[] entries = renderList.getEntries();
+			LayoutDescription layout = renderList.getLayoutDescription();
+			final int[] bounds = layout.resolveBounds(panelWidth, panelHeight);
+			Integer[] focusable = new Integer[entries.length];
+			int count = 0;
+			for (int i = 0; i < entries.length; i++)
+			{
+				if (entries[i].getRenderable() instanceof Selectable || layout.getEnterable(entries[i].getElementIndex()))
+				{
+					focusable[count++] = Integer.valueOf(i);
+				}
+			}
+
+			// Front layer first, then top to bottom, then left to right; Arrays.sort is stable, so ties keep z order
+			Arrays.sort(focusable, 0, count, new Comparator<Integer>()
+			{
+				@Override
+				public int compare(Integer first, Integer second)
+				{
+					RenderEntry firstEntry = entries[first.intValue()];
+					RenderEntry secondEntry = entries[second.intValue()];
+					if (firstEntry.getZScore() != secondEntry.getZScore())
+					{
+						return firstEntry.getZScore() > secondEntry.getZScore() ? -1 : 1;
+					}
+					int firstElement = firstEntry.getElementIndex() * 4;
+					int secondElement = secondEntry.getElementIndex() * 4;
+					if (bounds[firstElement + 1] != bounds[secondElement + 1])
+					{
+						return bounds[firstElement + 1] < bounds[secondElement + 1] ? -1 : 1;
+					}
+					if (bounds[firstElement] != bounds[secondElement])
+					{
+						return bounds[firstElement] < bounds[secondElement] ? -1 : 1;
+					}
+					return 0;
+				}
+			});
+
+			renderables = new Renderable[count];
+			positions = new IdentityHashMap<Renderable, Integer>(count * 2);
+			for (int i = 0; i < count; i++)
+			{
+				Renderable renderable = entries[focusable[i].intValue()].getRenderable();
+				renderables[i] = renderable;
+				positions.put(renderable, Integer.valueOf(i));
+			}
+		}
+	}
+}
@@ -10,28 +10,37 @@ package com.theopeneffect.flexml;
 public class GraphicProperties 
 {
 	// Layer to reder at (higher zScore = closer to front of display)
-	private int zScore;
+	private final int zScore;
 	
 	// Positioning and size variables
-	private double posX;
-	private double posY;
-	private double width;
-	private double height;
-	private boolean enterable;
+	private final double posX;
+	private final double posY;
+	private final double width;
+	private final double height;
+	private final boolean enterable;
+	
+	// Opacity from 0 (invisible) to 1 (opaque)
+	private final double opacity;
+	
+	// Units, size limits and anchors, or null if placed by fractions of the panel's size alone
+	private final LayoutConstraints constraints;
 	
 	/**
-	 * Construct a GraphicProperties object with the provided position and size information.
+	 * Construct a GraphicProperties object with the provided position, size and constraint information.
 	 * 
-	 * All positioning and size are represented as doubles from 0.0 to 1.0, which correspond
-	 * to percentages relative to the size of the RenderPanel.
+	 * Positions and sizes are fractions of the size of the RenderPanel, or numbers of
+	 * pixels where the constraints say so.
 	 * 
 	 * @param posX X position of the object
 	 * @param posY Y position of the object
 	 * @param width Width of the object
 	 * @param height Height of the object
 	 * @param zScore Layer to render at
+	 * @param enterable Whether the object is enterable
+	 * @param opacity Opacity of the object, from 0 (invisible) to 1 (opaque)
+	 * @param constraints Units, size limits and anchors of the object, or null for none
 	 */
-	public GraphicProperties(double posX, double posY, double width, double height, int zScore, boolean enterable)
+	public GraphicProperties(double posX, double posY, double width, double height, int zScore, boolean enterable, double opacity, LayoutConstraints constraints)
 	{
 		this.posX = posX;
 		this.posY = posY;
@@ -39,6 +48,45 @@ public class GraphicProperties
 		this.height = height;
 		this.zScore = zScore;
 		this.enterable = enterable;
+		this.opacity = opacity;
+		this.constraints = constraints;
+	}
+	
+	/**
+	 * Construct a GraphicProperties object with the provided position and size information.
+	 * 
+	 * All positioning and size are represented as doubles from 0.0 to 1.0, which correspond
+	 * to percentages relative to the size of the RenderPanel.
+	 * 
+	 * @param posX X position of the object
+	 * @param posY Y position of the object
+	 * @param width Width of the object
+	 * @param height Height of the object
+	 * @param zScore Layer to render at
+	 * @param enterable Whether the object is enterable
+	 * @param opacity Opacity of the object, from 0 (invisible) to 1 (opaque)
+	 */
+	public GraphicProperties(double posX, double posY, double width, double height, int zScore, boolean enterable, double opacity)
+	{
+		this(posX, posY, width, height, zScore, enterable, opacity, null);
+	}
+	
+	/**
+	 * Construct an opaque GraphicProperties object with the provided position and size information.
+	 * 
+	 * All positioning and size are represented as doubles from 0.0 to 1.0, which correspond
+	 * to percentages relative to the size of the RenderPanel.
+	 * 
+	 * @param posX X position of the object
+	 * @param posY Y position of the object
+	 * @param width Width of the object
+	 * @param height Height of the object
+	 * @param zScore Layer to render at
+	 * @param enterable Whether the object is enterable
+	 */
+	public GraphicProperties(double posX, double posY, double width, double height, int zScore, boolean enterable)
+	{
+		this(posX, posY, width, height, zScore, enterable, 1.0);
 	}
 	
 	/**
@@ -100,4 +148,53 @@ public class GraphicProperties
 	{
 		return enterable;
 	}
+	
+	/**
+	 * Get the object's opacity
+	 * 
+	 * @return The object's opacity, from 0 (invisible) to 1 (opaque)
+	 */
+	public double getOpacity()
+	{
+		return opacity;
+	}
+	
+	/**
+	 * Get the object's units, size limits and anchors
+	 * 
+	 * @return The object's constraints, or null if it is placed by fractions of the panel's size alone
+	 */
+	public LayoutConstraints getConstraints()
+	{
+		return constraints;
+	}
+	
+	@Override
+	public boolean equals(Object other)
+	{
+		if (!(other instanceof GraphicProperties))
+		{
+			return false;
+		}
+		GraphicProperties properties = (GraphicProperties)other;
+		return posX == properties.posX && posY == properties.posY &&
+		       width == properties.width && height == properties.height &&
+		       zScore == properties.zScore && enterable == properties.enterable &&
+		       opacity == properties.opacity &&
+		       (constraints == null ? properties.constraints == null : constraints.equals(properties.constraints));
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		long bits = Double.doubleToLongBits(posX);
+		bits = bits * 31 + Double.doubleToLongBits(posY);
+		bits = bits * 31 + Double.doubleToLongBits(width);
+		bits = bits * 31 + Double.doubleToLongBits(height);
+		bits = bits * 31 + zScore;
+		bits = bits * 31 + (enterable ? 1 : 0);
+		bits = bits * 31 + Double.doubleToLongBits(opacity);
+		bits = bits * 31 + (constraints != null ? constraints.hashCode() : 0);
+		return (int)(bits ^ (bits >>> 32));
+	}
 }
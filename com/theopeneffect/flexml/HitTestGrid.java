@@ -0,0 +1,340 @@
+package com.theopeneffect.flexml;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the pixel bounds of every entry in a RenderList, used to
+ * find the front-most entry under a point without scanning every renderable.
+ *
+ * A grid is only valid for the RenderList and RenderPanel size it was built
+ * for, and should be rebuilt when either changes.
+ *
+ * Grids are read by several threads once published, so setBounds and setOpacity
+ * may only be used on a grid which no other thread can see yet: one being built,
+ * or a copy which replaces the published grid once it has been changed.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+class HitTestGrid
+{
+	// Smallest cell edge in pixels, so tiny panels with many entries don't produce huge grids
+	private static final int MIN_CELL_SIZE = 32;
+
+	// The RenderList and panel size this grid was built for
+	private final RenderList renderList;
+	private final int panelWidth;
+	private final int panelHeight;
+
+	// Resolved pixel bounds of each entry, indexed like RenderList.getEntries()
+	private final int[] entryX;
+	private final int[] entryY;
+	private final int[] entryWidth;
+	private final int[] entryHeight;
+
+	// Grid geometry
+	private final int cellSize;
+	private final int columns;
+	private final int rows;
+
+	// Entries overlapping cell c are cellEntries[cellStart[c]] to cellEntries[cellStart[c + 1] - 1], front-most first
+	private final int[] cellStart;
+	private final int[] cellEntries;
+
+	// Entries moved by setBounds since the grid was built, which are tested individually
+	// rather than through the cells they were indexed in; null until an entry is moved
+	private boolean[] moved = null;
+	private int[] movedEntries = null;
+	private int movedCount = 0;
+
+	// Opacity of each entry, null while every entry is opaque
+	private float[] entryOpacity = null;
+
+	/**
+	 * Build a HitTestGrid for the provided RenderList drawn at the provided size
+	 *
+	 * @param renderList The RenderList to index
+	 * @param panelWidth Width of the RenderPanel in pixels
+	 * @param panelHeight Height of the RenderPanel in pixels
+	 */
+	HitTestGrid(RenderList renderList, int panelWidth, int panelHeight)
+	{
+		this.renderList = renderList;
+		this.panelWidth = panelWidth;
+		this.panelHeight = panelHeight;
+
+		RenderEntry[] entries = renderList.getEntries();
+		int[] layoutBounds = renderList.getLayoutDescription().resolveBounds(panelWidth, panelHeight);
+		int count = entries.length;
+		entryX = new int[count];
+		entryY = new int[count];
+		entryWidth = new int[count];
+		entryHeight = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			int element = entries[i].getElementIndex() * 4;
+			entryX[i] = layoutBounds[element];
+			entryY[i] = layoutBounds[element + 1];
+			entryWidth[i] = layoutBounds[element + 2];
+			entryHeight[i] = layoutBounds[element + 3];
+		}
+
+		// Aim for roughly one entry per cell
+		long area = (long)Math.max(panelWidth, 1) * Math.max(panelHeight, 1);
+		cellSize = Math.max(MIN_CELL_SIZE, (int)Math.sqrt(area / Math.max(count, 1)));
+		columns = Math.max(panelWidth, 0) / cellSize + 1;
+		rows = Math.max(panelHeight, 0) / cellSize + 1;
+
+		// Count the entries overlapping each cell, then lay the cells out back to back
+		cellStart = new int[columns * rows + 1];
+		for (int i = 0; i < count; i++)
+		{
+			int firstColumn = column(entryX[i]);
+			int lastColumn = column(entryX[i] + entryWidth[i]);
+			int firstRow = row(entryY[i]);
+			int lastRow = row(entryY[i] + entryHeight[i]);
+			for (int r = firstRow; r <= lastRow; r++)
+			{
+				for (int c = firstColumn; c <= lastColumn; c++)
+				{
+					cellStart[r * columns + c + 1]++;
+				}
+			}
+		}
+		for (int c = 0; c < columns * rows; c++)
+		{
+			cellStart[c + 1] += cellStart[c];
+		}
+
+		// Fill front-to-back so the first match found in a cell is the one drawn on top
+		cellEntries = new int[cellStart[columns * rows]];
+		int[] fill = new int[columns * rows];
+		System.arraycopy(cellStart, 0, fill, 0, fill.length);
+		for (int i = count - 1; i >= 0; i--)
+		{
+			int firstColumn = column(entryX[i]);
+			int lastColumn = column(entryX[i] + entryWidth[i]);
+			int firstRow = row(entryY[i]);
+			int lastRow = row(entryY[i] + entryHeight[i]);
+			for (int r = firstRow; r <= lastRow; r++)
+			{
+				for (int c = firstColumn; c <= lastColumn; c++)
+				{
+					cellEntries[fill[r * columns + c]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copy a grid, so entries can be moved in the copy while the original is still
+	 * being read. The cells, which moving entries never changes, are shared.
+	 *
+	 * @param other The grid to copy
+	 */
+	HitTestGrid(HitTestGrid other)
+	{
+		renderList = other.renderList;
+		panelWidth = other.panelWidth;
+		panelHeight = other.panelHeight;
+		entryX = other.entryX.clone();
+		entryY = other.entryY.clone();
+		entryWidth = other.entryWidth.clone();
+		entryHeight = other.entryHeight.clone();
+		cellSize = other.cellSize;
+		columns = other.columns;
+		rows = other.rows;
+		cellStart = other.cellStart;
+		cellEntries = other.cellEntries;
+		if (other.moved != null)
+		{
+			moved = other.moved.clone();
+			movedEntries = other.movedEntries.clone();
+			movedCount = other.movedCount;
+		}
+		if (other.entryOpacity != null)
+		{
+			entryOpacity = other.entryOpacity.clone();
+		}
+	}
+
+	/**
+	 * Check whether this grid was built for the provided RenderList and size
+	 *
+	 * @param renderList The current RenderList
+	 * @param panelWidth The current panel width
+	 * @param panelHeight The current panel height
+	 * @return Whether the grid can be used as-is
+	 */
+	boolean matches(RenderList renderList, int panelWidth, int panelHeight)
+	{
+		return this.renderList == renderList && this.panelWidth == panelWidth && this.panelHeight == panelHeight;
+	}
+
+	/**
+	 * Find the front-most entry whose bounds contain the provided point. Bounds
+	 * include their right and bottom edges.
+	 *
+	 * @param x X coordinate within the RenderPanel
+	 * @param y Y coordinate within the RenderPanel
+	 * @return Index of the entry in RenderList.getEntries(), or -1 if there is none
+	 */
+	int findEntryAt(int x, int y)
+	{
+		int found = -1;
+		int cell = row(y) * columns + column(x);
+		for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++)
+		{
+			int entry = cellEntries[i];
+			if ((moved == null || !moved[entry]) && contains(entry, x, y))
+			{
+				found = entry;
+				break;
+			}
+		}
+
+		// A moved entry in front of the match from the cells takes precedence
+		for (int i = 0; i < movedCount; i++)
+		{
+			int entry = movedEntries[i];
+			if (entry > found && contains(entry, x, y))
+			{
+				found = entry;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Move or resize an entry, such as while it is animated. The entry is tested
+	 * individually by findEntryAt from then on, so moving a few entries each frame
+	 * doesn't require rebuilding the grid.
+	 *
+	 * @param entry Index of the entry in RenderList.getEntries()
+	 * @param x X position in pixels
+	 * @param y Y position in pixels
+	 * @param width Width in pixels
+	 * @param height Height in pixels
+	 */
+	void setBounds(int entry, int x, int y, int width, int height)
+	{
+		entryX[entry] = x;
+		entryY[entry] = y;
+		entryWidth[entry] = width;
+		entryHeight[entry] = height;
+		if (moved == null)
+		{
+			moved = new boolean[entryX.length];
+			movedEntries = new int[4];
+		}
+		if (!moved[entry])
+		{
+			moved[entry] = true;
+			if (movedCount == movedEntries.length)
+			{
+				movedEntries = Arrays.copyOf(movedEntries, movedCount * 2);
+			}
+			movedEntries[movedCount++] = entry;
+		}
+	}
+
+	/**
+	 * Get the opacity an entry is drawn with
+	 *
+	 * @param entry Index of the entry in RenderList.getEntries()
+	 * @return Opacity from 0 (invisible) to 1 (opaque)
+	 */
+	float getOpacity(int entry)
+	{
+		return entryOpacity != null ? entryOpacity[entry] : 1f;
+	}
+
+	/**
+	 * Set the opacity an entry is drawn with
+	 *
+	 * @param entry Index of the entry in RenderList.getEntries()
+	 * @param opacity Opacity from 0 (invisible) to 1 (opaque)
+	 */
+	void setOpacity(int entry, float opacity)
+	{
+		if (entryOpacity == null)
+		{
+			if (opacity >= 1f)
+			{
+				return;
+			}
+			entryOpacity = new float[entryX.length];
+			Arrays.fill(entryOpacity, 1f);
+		}
+		entryOpacity[entry] = Math.max(0f, Math.min(opacity, 1f));
+	}
+
+	/**
+	 * Get the resolved X position of an entry
+	 *
+	 * @param entry Index of the entry in RenderList.getEntries()
+	 * @return X position in pixels
+	 */
+	int getX(int entry)
+	{
+		return entryX[entry];
+	}
+
+	/**
+	 * Get the resolved Y position of an entry
+	 *
+	 * @param entry Index of the entry in RenderList.getEntries()
+	 * @return Y position in pixels
+	 */
+	int getY(int entry)
+	{
+		return entryY[entry];
+	}
+
+	/**
+	 * Get the resolved width of an entry
+	 *
+	 * @param entry Index of the entry in RenderList.getEntries()
+	 * @return Width in pixels
+	 */
+	int getWidth(int entry)
+	{
+		return entryWidth[entry];
+	}
+
+	/**
+	 * Get the resolved height of an entry
+	 *
+	 * @param entry Index of the entry in RenderList.getEntries()
+	 * @return Height in pixels
+	 */
+	int getHeight(int entry)
+	{
+		return entryHeight[entry];
+	}
+
+	/**
+	 * Check whether an entry's bounds, including their right and bottom edges, contain a point
+	 */
+	private boolean contains(int entry, int x, int y)
+	{
+		return x >= entryX[entry] && x <= entryX[entry] + entryWidth[entry] &&
+		       y >= entryY[entry] && y <= entryY[entry] + entryHeight[entry];
+	}
+
+	/**
+	 * Map an X coordinate to a grid column, clamping to the grid
+	 */
+	private int column(int x)
+	{
+		return x <= 0 ? 0 : Math.min(x / cellSize, columns - 1);
+	}
+
+	/**
+	 * Map a Y coordinate to a grid row, clamping to the grid
+	 */
+	private int row(int y)
+	{
+		return y <= 0 ? 0 : Math.min(y / cellSize, rows - 1);
+	}
+}
@@ -0,0 +1,235 @@
+package com.theopeneffect.flexml;
+
+import java.awt.EventQueue;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Loads images on background threads and shares the decoded result between
+ * everything which requests the same URL.
+ *
+ * Concurrent requests for a URL which is still being decoded wait on the same
+ * decode rather than starting another. Decoded images are kept in a
+ * memory-bounded cache, evicting the least recently requested images first.
+ * Results are always delivered on the event dispatch thread, so listeners can
+ * update Swing components and RenderPanels directly.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+public class ImageAssetLoader
+{
+	// Default capacity of 128MB of decoded pixels
+	private static final long DEFAULT_CAPACITY_BYTES = 128L * 1024 * 1024;
+
+	// Decoded images keyed by URL, in order from least to most recently requested
+	private static final LinkedHashMap<String, BufferedImage> loadedImages = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true);
+
+	// Listeners waiting on each URL which is currently being decoded
+	private static final HashMap<String, ArrayList<ImageLoadListener>> pendingLoads = new HashMap<String, ArrayList<ImageLoadListener>>();
+
+	// Maximum and current size of all cached images, in bytes
+	private static long capacityBytes = DEFAULT_CAPACITY_BYTES;
+	private static long cachedBytes = 0;
+
+	// Background threads decoding images, created on first use
+	private static ExecutorService decoder;
+
+	private ImageAssetLoader()
+	{
+		// Only static access
+	}
+
+	/**
+	 * Request the image at the provided URL. The listener is called on the event
+	 * dispatch thread, after this method returns even if the image has already
+	 * been loaded.
+	 *
+	 * @param imageURL Location of the image to load
+	 * @param listener Listener to receive the image
+	 */
+	public static void load(final URL imageURL, final ImageLoadListener listener)
+	{
+		// URL.equals can resolve host names, so images are keyed by their textual form
+		final String key = imageURL.toExternalForm();
+		BufferedImage loaded;
+		synchronized (ImageAssetLoader.class)
+		{
+			loaded = loadedImages.get(key);
+			if (loaded == null)
+			{
+				ArrayList<ImageLoadListener> waiting = pendingLoads.get(key);
+				if (waiting != null)
+				{
+					// Already being decoded for someone else
+					waiting.add(listener);
+					return;
+				}
+				waiting = new ArrayList<ImageLoadListener>();
+				waiting.add(listener);
+				pendingLoads.put(key, waiting);
+				getDecoder().execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						decode(imageURL, key);
+					}
+				});
+				return;
+			}
+		}
+		final BufferedImage image = loaded;
+		EventQueue.invokeLater(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				listener.imageLoaded(imageURL, image);
+			}
+		});
+	}
+
+	/**
+	 * Get the image at the provided URL if it has already been loaded
+	 *
+	 * @param imageURL Location of the image
+	 * @return The decoded image, or null if it isn't loaded
+	 */
+	public static synchronized BufferedImage getLoadedImage(URL imageURL)
+	{
+		return loadedImages.get(imageURL.toExternalForm());
+	}
+
+	/**
+	 * Set the maximum memory the cache may use for decoded images
+	 *
+	 * @param bytes The capacity in bytes
+	 */
+	public static synchronized void setCapacity(long bytes)
+	{
+		capacityBytes = bytes;
+		trim();
+	}
+
+	/**
+	 * Remove every decoded image from the cache. Images already handed out are
+	 * unaffected.
+	 */
+	public static synchronized void clear()
+	{
+		loadedImages.clear();
+		cachedBytes = 0;
+	}
+
+	/**
+	 * Decode an image and deliver it to everyone waiting on it
+	 *
+	 * @param imageURL Location of the image
+	 * @param key Cache key for the image
+	 */
+	private static void decode(final URL imageURL, String key)
+	{
+		BufferedImage image = null;
+		Exception failure = null;
+		try
+		{
+			image = ImageIO.read(imageURL);
+			if (image == null)
+			{
+				failure = new IOException("No image reader could decode " + key);
+			}
+		} catch (Exception e) { failure = e; }
+
+		final ArrayList<ImageLoadListener> waiting;
+		synchronized (ImageAssetLoader.class)
+		{
+			waiting = pendingLoads.remove(key);
+			if (image != null)
+			{
+				loadedImages.put(key, image);
+				cachedBytes += getSizeInBytes(image);
+				trim();
+			}
+		}
+
+		final BufferedImage decoded = image;
+		final Exception cause = failure;
+		EventQueue.invokeLater(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for (int i = 0; i < waiting.size(); i++)
+				{
+					if (decoded != null)
+					{
+						waiting.get(i).imageLoaded(imageURL, decoded);
+					}
+					else
+					{
+						waiting.get(i).imageLoadFailed(imageURL, cause);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Evict the least recently requested images until the cache fits its capacity
+	 */
+	private static void trim()
+	{
+		Iterator<BufferedImage> iterator = loadedImages.values().iterator();
+		while (cachedBytes > capacityBytes && iterator.hasNext())
+		{
+			cachedBytes -= getSizeInBytes(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Estimate the memory used by a decoded image
+	 *
+	 * @param image The image
+	 * @return Approximate size of the image's pixels in bytes
+	 */
+	private static long getSizeInBytes(BufferedImage image)
+	{
+		return (long)image.getWidth() * image.getHeight() * 4;
+	}
+
+	/**
+	 * Get the executor which decodes images, creating it if needed
+	 *
+	 * @return The decoding executor
+	 */
+	private static ExecutorService getDecoder()
+	{
+		if (decoder == null)
+		{
+			int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+			decoder = Executors.newFixedThreadPool(threads, new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable runnable)
+				{
+					Thread thread = new Thread(runnable, "FlexML image loader");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return decoder;
+	}
+}
@@ -0,0 +1,32 @@
+package com.theopeneffect.flexml;
+
+import java.awt.image.BufferedImage;
+import java.net.URL;
+
+/**
+ * Receives the result of an image requested from the ImageAssetLoader.
+ * 
+ * Methods are called on the event dispatch thread, after the request has
+ * returned, whether or not the image was already loaded.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public interface ImageLoadListener
+{
+	/**
+	 * Called once the requested image has been decoded
+	 * 
+	 * @param imageURL The URL which was requested
+	 * @param image The decoded image, shared with every other requester of the same URL
+	 */
+	public void imageLoaded(URL imageURL, BufferedImage image);
+	
+	/**
+	 * Called if the requested image could not be read or decoded
+	 * 
+	 * @param imageURL The URL which was requested
+	 * @param cause The reason the image could not be loaded
+	 */
+	public void imageLoadFailed(URL imageURL, Exception cause);
+}
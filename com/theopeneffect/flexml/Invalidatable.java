@@ -0,0 +1,23 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Optional addition to the Renderable contract for graphic objects which can
+ * report their own changes, allowing a RenderPanel to redraw only the area they
+ * occupy rather than everything it displays.
+ * 
+ * Implementations should call the listener whenever anything they draw changes,
+ * and should not draw outside the bounds they are given in paint.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public interface Invalidatable
+{
+	/**
+	 * Set the listener to notify when this object needs to be redrawn. A RenderPanel
+	 * sets itself as the listener when the object is added to it.
+	 * 
+	 * @param listener Listener to notify, or null to stop notifying
+	 */
+	public void setInvalidationListener(InvalidationListener listener);
+}
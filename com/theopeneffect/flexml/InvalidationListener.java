@@ -0,0 +1,18 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Receives notice that a Renderable's appearance has changed and the area it
+ * occupies needs to be drawn again.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public interface InvalidationListener
+{
+	/**
+	 * Called by a Renderable when it needs to be redrawn. May be called from any thread.
+	 * 
+	 * @param renderable The Renderable which changed
+	 */
+	public void invalidated(Renderable renderable);
+}
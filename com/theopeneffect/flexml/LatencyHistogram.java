@@ -0,0 +1,113 @@
+package com.theopeneffect.flexml;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size histogram of durations, bucketed by powers of two nanoseconds, so
+ * recording a sample never allocates.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public class LatencyHistogram
+{
+	// Bucket b counts samples from 2^(b-1) up to 2^b - 1 nanoseconds, with bucket 0 counting zero
+	private final long[] buckets = new long[64];
+	
+	private long count = 0;
+	private long totalNanos = 0;
+	private long maxNanos = 0;
+	
+	/**
+	 * Record one duration
+	 * 
+	 * @param nanos The duration in nanoseconds
+	 */
+	public synchronized void record(long nanos)
+	{
+		if (nanos < 0)
+		{
+			nanos = 0;
+		}
+		buckets[64 - Long.numberOfLeadingZeros(nanos)]++;
+		count++;
+		totalNanos += nanos;
+		if (nanos > maxNanos)
+		{
+			maxNanos = nanos;
+		}
+	}
+	
+	/**
+	 * Get the number of durations recorded
+	 * 
+	 * @return The sample count
+	 */
+	public synchronized long getCount()
+	{
+		return count;
+	}
+	
+	/**
+	 * Get the mean of all durations recorded
+	 * 
+	 * @return The mean in nanoseconds, or 0 if nothing was recorded
+	 */
+	public synchronized long getMeanNanos()
+	{
+		return count > 0 ? totalNanos / count : 0;
+	}
+	
+	/**
+	 * Get the longest duration recorded
+	 * 
+	 * @return The maximum in nanoseconds
+	 */
+	public synchronized long getMaxNanos()
+	{
+		return maxNanos;
+	}
+	
+	/**
+	 * Get the total of all durations recorded
+	 * 
+	 * @return The total in nanoseconds
+	 */
+	public synchronized long getTotalNanos()
+	{
+		return totalNanos;
+	}
+	
+	/**
+	 * Estimate a percentile of the recorded durations. The result is the upper bound
+	 * of the bucket the percentile falls in, so is accurate to within a factor of two.
+	 * 
+	 * @param percentile The percentile, from 0 to 100
+	 * @return The estimated duration in nanoseconds, or 0 if nothing was recorded
+	 */
+	public synchronized long getPercentileNanos(double percentile)
+	{
+		long target = (long)Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for (int b = 0; b < buckets.length; b++)
+		{
+			seen += buckets[b];
+			if (seen >= target && seen > 0)
+			{
+				return b == 0 ? 0 : Math.min((1L << b) - 1, maxNanos);
+			}
+		}
+		return maxNanos;
+	}
+	
+	/**
+	 * Discard everything recorded
+	 */
+	public synchronized void reset()
+	{
+		Arrays.fill(buckets, 0);
+		count = 0;
+		totalNanos = 0;
+		maxNanos = 0;
+	}
+}
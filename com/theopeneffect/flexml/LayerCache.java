@@ -0,0 +1,235 @@
+package com.theopeneffect.flexml;
+
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * Offscreen images holding the rendered contents of each zScore layer of a
+ * RenderList, along with the region of each layer which needs to be redrawn.
+ *
+ * Each layer's image only covers the area its entries occupy, so layers made
+ * of a few small elements stay small. A LayerCache is only valid for the
+ * RenderList and RenderPanel size it was built for.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+class LayerCache
+{
+	// The RenderList and panel size this cache was built for
+	private final RenderList renderList;
+	private final int panelWidth;
+	private final int panelHeight;
+
+	// Entries of layer l are RenderList entries layerStart[l] to layerStart[l + 1] - 1
+	private final int[] layerStart;
+
+	// Layer each entry belongs to
+	private final int[] entryLayer;
+
+	// Area of the panel covered by each layer, null if the layer is entirely off the panel
+	private final Rectangle[] layerBounds;
+
+	// Cached rendering of each layer, created when first needed
+	private final BufferedImage[] layerImages;
+
+	// Area of each layer needing to be redrawn before its image can be used, null if clean
+	private final Rectangle[] dirtyRegions;
+
+	/**
+	 * Build a LayerCache for the provided RenderList, with every layer initially dirty
+	 *
+	 * @param renderList The RenderList to cache
+	 * @param bounds Resolved bounds of the RenderList's entries at the current size
+	 * @param panelWidth Width of the RenderPanel in pixels
+	 * @param panelHeight Height of the RenderPanel in pixels
+	 */
+	LayerCache(RenderList renderList, HitTestGrid bounds, int panelWidth, int panelHeight)
+	{
+		this.renderList = renderList;
+		this.panelWidth = panelWidth;
+		this.panelHeight = panelHeight;
+
+		// Entries are sorted by zScore, so each layer is a contiguous run
+		RenderEntry[] entries = renderList.getEntries();
+		entryLayer = new int[entries.length];
+		int[] starts = new int[entries.length + 1];
+		int layerCount = 0;
+		for (int i = 0; i < entries.length; i++)
+		{
+			if (i == 0 || entries[i].getZScore() != entries[i - 1].getZScore())
+			{
+				starts[layerCount++] = i;
+			}
+			entryLayer[i] = layerCount - 1;
+		}
+		starts[layerCount] = entries.length;
+		layerStart = new int[layerCount + 1];
+		System.arraycopy(starts, 0, layerStart, 0, layerCount + 1);
+
+		Rectangle panel = new Rectangle(0, 0, panelWidth, panelHeight);
+		layerBounds = new Rectangle[layerCount];
+		layerImages = new BufferedImage[layerCount];
+		dirtyRegions = new Rectangle[layerCount];
+		for (int layer = 0; layer < layerCount; layer++)
+		{
+			Rectangle union = null;
+			for (int i = layerStart[layer]; i < layerStart[layer + 1]; i++)
+			{
+				// Bounds include their right and bottom edges
+				Rectangle entryBounds = new Rectangle(bounds.getX(i), bounds.getY(i), bounds.getWidth(i) + 1, bounds.getHeight(i) + 1);
+				union = union == null ? entryBounds : union.union(entryBounds);
+			}
+			union = union.intersection(panel);
+			if (!union.isEmpty())
+			{
+				layerBounds[layer] = union;
+				dirtyRegions[layer] = new Rectangle(union);
+			}
+		}
+	}
+
+	/**
+	 * Check whether this cache was built for the provided RenderList and size
+	 *
+	 * @param renderList The current RenderList
+	 * @param panelWidth The current panel width
+	 * @param panelHeight The current panel height
+	 * @return Whether the cache can be used as-is
+	 */
+	boolean matches(RenderList renderList, int panelWidth, int panelHeight)
+	{
+		return this.renderList == renderList && this.panelWidth == panelWidth && this.panelHeight == panelHeight;
+	}
+
+	/**
+	 * Get the number of distinct zScore layers
+	 *
+	 * @return The number of layers
+	 */
+	int getLayerCount()
+	{
+		return layerBounds.length;
+	}
+
+	/**
+	 * Get the index of the first entry in a layer
+	 *
+	 * @param layer The layer
+	 * @return Index of the layer's first entry in RenderList.getEntries()
+	 */
+	int getLayerStart(int layer)
+	{
+		return layerStart[layer];
+	}
+
+	/**
+	 * Get the index just past the last entry in a layer
+	 *
+	 * @param layer The layer
+	 * @return Index following the layer's last entry in RenderList.getEntries()
+	 */
+	int getLayerEnd(int layer)
+	{
+		return layerStart[layer + 1];
+	}
+
+	/**
+	 * Get the area of the panel a layer covers
+	 *
+	 * @param layer The layer
+	 * @return The layer's bounds, or null if nothing in the layer is on the panel
+	 */
+	Rectangle getLayerBounds(int layer)
+	{
+		return layerBounds[layer];
+	}
+
+	/**
+	 * Get the image caching a layer, creating it if needed. The image is positioned
+	 * at the top-left corner of the layer's bounds.
+	 *
+	 * @param layer The layer
+	 * @param configuration Configuration to create a compatible image for
+	 * @return The layer's image
+	 */
+	BufferedImage getLayerImage(int layer, GraphicsConfiguration configuration)
+	{
+		if (layerImages[layer] == null)
+		{
+			Rectangle area = layerBounds[layer];
+			if (configuration != null)
+			{
+				layerImages[layer] = configuration.createCompatibleImage(area.width, area.height, Transparency.TRANSLUCENT);
+			}
+			else
+			{
+				layerImages[layer] = new BufferedImage(area.width, area.height, BufferedImage.TYPE_INT_ARGB_PRE);
+			}
+		}
+		return layerImages[layer];
+	}
+
+	/**
+	 * Mark part of the layer containing an entry as needing to be redrawn
+	 *
+	 * @param entry Index of the entry in RenderList.getEntries()
+	 * @param region Area of the panel which changed
+	 */
+	synchronized void markDirty(int entry, Rectangle region)
+	{
+		int layer = entryLayer[entry];
+		if (layerBounds[layer] != null)
+		{
+			Rectangle dirty = region.intersection(layerBounds[layer]);
+			if (!dirty.isEmpty())
+			{
+				dirtyRegions[layer] = dirtyRegions[layer] == null ? dirty : dirtyRegions[layer].union(dirty);
+			}
+		}
+	}
+
+	/**
+	 * Check whether the image of the layer containing an entry covers an area, so
+	 * the entry can be moved there without rebuilding the cache
+	 *
+	 * @param entry Index of the entry in RenderList.getEntries()
+	 * @param region Area of the panel the entry will occupy
+	 * @return Whether the part of the area on the panel lies within the layer's image
+	 */
+	boolean covers(int entry, Rectangle region)
+	{
+		Rectangle visible = region.intersection(new Rectangle(0, 0, panelWidth, panelHeight));
+		Rectangle bounds = layerBounds[entryLayer[entry]];
+		return visible.isEmpty() || (bounds != null && bounds.contains(visible));
+	}
+
+	/**
+	 * Mark every layer as needing to be redrawn in full
+	 */
+	synchronized void markAllDirty()
+	{
+		for (int layer = 0; layer < layerBounds.length; layer++)
+		{
+			if (layerBounds[layer] != null)
+			{
+				dirtyRegions[layer] = new Rectangle(layerBounds[layer]);
+			}
+		}
+	}
+
+	/**
+	 * Take the region of a layer which needs to be redrawn, marking the layer clean
+	 *
+	 * @param layer The layer
+	 * @return The dirty region in panel coordinates, or null if the layer is clean
+	 */
+	synchronized Rectangle takeDirtyRegion(int layer)
+	{
+		Rectangle dirty = dirtyRegions[layer];
+		dirtyRegions[layer] = null;
+		return dirty;
+	}
+}
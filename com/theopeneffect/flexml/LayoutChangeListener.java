@@ -0,0 +1,19 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Receives new versions of a layout description which is being watched for changes.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public interface LayoutChangeListener
+{
+	/**
+	 * Called from the watching thread when the layout's file has changed and been
+	 * read again successfully. Not called if nothing in the layout changed.
+	 * 
+	 * @param newLayout The layout as it is now
+	 * @param diff The elements which differ from the previous version
+	 */
+	public void layoutChanged(LayoutDescription newLayout, LayoutDiff diff);
+}
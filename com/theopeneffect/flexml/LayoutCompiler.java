@@ -0,0 +1,71 @@
+package com.theopeneffect.flexml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+
+/**
+ * Command line tool to compile a text layout description into the binary format
+ * opened by LayoutDescription.loadCompiled.
+ * 
+ * Usage: LayoutCompiler &lt;input layout&gt; &lt;output file&gt;
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public class LayoutCompiler
+{
+	/**
+	 * Compile a text layout description. Unlike loading a layout directly, any
+	 * malformed value fails the whole compilation.
+	 * 
+	 * @param layoutFile The text layout description
+	 * @param compiledFile The file to write the compiled layout to
+	 * @throws IOException If either file can't be read or written
+	 * @throws LayoutParseException If the layout description is malformed
+	 */
+	public static void compile(File layoutFile, File compiledFile) throws IOException, LayoutParseException
+	{
+		ElementTable elements = new ElementTable();
+		Reader reader = new InputStreamReader(new FileInputStream(layoutFile));
+		try
+		{
+			new LayoutParser(reader, true).parse(elements);
+		}
+		finally
+		{
+			reader.close();
+		}
+		
+		OutputStream output = new FileOutputStream(compiledFile);
+		try
+		{
+			CompiledLayout.write(elements, output);
+		}
+		finally
+		{
+			output.close();
+		}
+	}
+	
+	public static void main(String[] args)
+	{
+		if (args.length != 2)
+		{
+			System.err.println("Usage: LayoutCompiler <input layout> <output file>");
+			System.exit(2);
+		}
+		try
+		{
+			compile(new File(args[0]), new File(args[1]));
+		} catch (Exception e) 
+		{
+			System.err.println(args[0] + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package com.theopeneffect.flexml;
+
+/**
+ * The units, size limits and anchors of a layout element, for elements which
+ * aren't simply placed by fractions of the RenderPanel's size.
+ *
+ * Each of an element's position and size values is either a fraction of the
+ * panel's size or a number of pixels. Widths and heights are clamped to their
+ * minimum and maximum in pixels, the minimum winning if the two conflict. An
+ * anchored element is positioned relative to an edge of another element, its
+ * position giving the gap between the two: RIGHT_OF and BELOW measure from the
+ * other element's right or bottom edge, and LEFT_OF and ABOVE measure from its
+ * left or top edge back to this element's right or bottom edge. Anchoring to an
+ * identifier which isn't in the layout measures from the panel's edges instead,
+ * so LEFT_OF and ABOVE can pin an element to the right or bottom of the panel.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+public class LayoutConstraints
+{
+	/**
+	 * Ways to position an element relative to another element
+	 */
+	public static enum Anchor
+	{
+		RIGHT_OF, LEFT_OF, BELOW, ABOVE
+	}
+
+	// Bits of the pixel units mask, set for each value given in pixels rather than as a fraction
+	public static final int PIXEL_POS_X = 1;
+	public static final int PIXEL_POS_Y = 2;
+	public static final int PIXEL_WIDTH = 4;
+	public static final int PIXEL_HEIGHT = 8;
+
+	private final int pixelUnits;
+
+	// Size limits in pixels
+	private final double minWidth;
+	private final double maxWidth;
+	private final double minHeight;
+	private final double maxHeight;
+
+	// Anchors and the identifiers of the elements anchored to, null where unanchored
+	private final Anchor horizontalAnchor;
+	private final String horizontalAnchorID;
+	private final Anchor verticalAnchor;
+	private final String verticalAnchorID;
+
+	/**
+	 * Construct LayoutConstraints with the provided units, limits and anchors
+	 *
+	 * @param pixelUnits Mask of the PIXEL_ bits of the values given in pixels
+	 * @param minWidth Minimum width in pixels, or 0 for none
+	 * @param maxWidth Maximum width in pixels, or Double.POSITIVE_INFINITY for none
+	 * @param minHeight Minimum height in pixels, or 0 for none
+	 * @param maxHeight Maximum height in pixels, or Double.POSITIVE_INFINITY for none
+	 * @param horizontalAnchor RIGHT_OF or LEFT_OF, or null to position from the panel's left edge
+	 * @param horizontalAnchorID Identifier of the element anchored to horizontally, or null for the panel
+	 * @param verticalAnchor BELOW or ABOVE, or null to position from the panel's top edge
+	 * @param verticalAnchorID Identifier of the element anchored to vertically, or null for the panel
+	 */
+	public LayoutConstraints(int pixelUnits, double minWidth, double maxWidth, double minHeight, double maxHeight,
+	                         Anchor horizontalAnchor, String horizontalAnchorID, Anchor verticalAnchor, String verticalAnchorID)
+	{
+		if (horizontalAnchor == Anchor.BELOW || horizontalAnchor == Anchor.ABOVE)
+		{
+			throw new IllegalArgumentException("Horizontal anchor must be RIGHT_OF or LEFT_OF");
+		}
+		if (verticalAnchor == Anchor.RIGHT_OF || verticalAnchor == Anchor.LEFT_OF)
+		{
+			throw new IllegalArgumentException("Vertical anchor must be BELOW or ABOVE");
+		}
+		this.pixelUnits = pixelUnits;
+		this.minWidth = minWidth;
+		this.maxWidth = maxWidth;
+		this.minHeight = minHeight;
+		this.maxHeight = maxHeight;
+		this.horizontalAnchor = horizontalAnchor;
+		this.horizontalAnchorID = horizontalAnchor != null ? horizontalAnchorID : null;
+		this.verticalAnchor = verticalAnchor;
+		this.verticalAnchorID = verticalAnchor != null ? verticalAnchorID : null;
+	}
+
+	/**
+	 * Get the mask of values given in pixels
+	 *
+	 * @return The PIXEL_ bits of the values given in pixels
+	 */
+	public int getPixelUnits()
+	{
+		return pixelUnits;
+	}
+
+	/**
+	 * Check whether a value is given in pixels
+	 *
+	 * @param unit One of the PIXEL_ bits
+	 * @return Whether the value is in pixels, rather than a fraction of the panel's size
+	 */
+	public boolean isPixels(int unit)
+	{
+		return (pixelUnits & unit) != 0;
+	}
+
+	/**
+	 * @return Minimum width in pixels
+	 */
+	public double getMinWidth()
+	{
+		return minWidth;
+	}
+
+	/**
+	 * @return Maximum width in pixels, Double.POSITIVE_INFINITY if unlimited
+	 */
+	public double getMaxWidth()
+	{
+		return maxWidth;
+	}
+
+	/**
+	 * @return Minimum height in pixels
+	 */
+	public double getMinHeight()
+	{
+		return minHeight;
+	}
+
+	/**
+	 * @return Maximum height in pixels, Double.POSITIVE_INFINITY if unlimited
+	 */
+	public double getMaxHeight()
+	{
+		return maxHeight;
+	}
+
+	/**
+	 * @return RIGHT_OF, LEFT_OF, or null if the element is positioned from the panel's left edge
+	 */
+	public Anchor getHorizontalAnchor()
+	{
+		return horizontalAnchor;
+	}
+
+	/**
+	 * @return Identifier of the element anchored to horizontally, or null for the panel
+	 */
+	public String getHorizontalAnchorID()
+	{
+		return horizontalAnchorID;
+	}
+
+	/**
+	 * @return BELOW, ABOVE, or null if the element is positioned from the panel's top edge
+	 */
+	public Anchor getVerticalAnchor()
+	{
+		return verticalAnchor;
+	}
+
+	/**
+	 * @return Identifier of the element anchored to vertically, or null for the panel
+	 */
+	public String getVerticalAnchorID()
+	{
+		return verticalAnchorID;
+	}
+
+	@Override
+	public boolean equals(Object other)
+	{
+		if (!(other instanceof LayoutConstraints))
+		{
+			return false;
+		}
+		LayoutConstraints constraints = (LayoutConstraints)other;
+		return pixelUnits == constraints.pixelUnits &&
+		       minWidth == constraints.minWidth && maxWidth == constraints.maxWidth &&
+		       minHeight == constraints.minHeight && maxHeight == constraints.maxHeight &&
+		       horizontalAnchor == constraints.horizontalAnchor && verticalAnchor == constraints.verticalAnchor &&
+		       (horizontalAnchorID == null ? constraints.horizontalAnchorID == null : horizontalAnchorID.equals(constraints.horizontalAnchorID)) &&
+		       (verticalAnchorID == null ? constraints.verticalAnchorID == null : verticalAnchorID.equals(constraints.verticalAnchorID));
+	}
+
+	@Override
+	public int hashCode()
+	{
+		long bits = pixelUnits;
+		bits = bits * 31 + Double.doubleToLongBits(minWidth);
+		bits = bits * 31 + Double.doubleToLongBits(maxWidth);
+		bits = bits * 31 + Double.doubleToLongBits(minHeight);
+		bits = bits * 31 + Double.doubleToLongBits(maxHeight);
+		bits = bits * 31 + (horizontalAnchorID != null ? horizontalAnchorID.hashCode() : 0) + (horizontalAnchor != null ? horizontalAnchor.ordinal() + 1 : 0);
+		bits = bits * 31 + (verticalAnchorID != null ? verticalAnchorID.hashCode() : 0) + (verticalAnchor != null ? verticalAnchor.ordinal() + 1 : 0);
+		return (int)(bits ^ (bits >>> 32));
+	}
+}
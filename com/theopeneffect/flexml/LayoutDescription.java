@@ -1,11 +1,16 @@
 package com.theopeneffect.flexml;
 
+import java.awt.Rectangle;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
-import java.util.Scanner;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Handles storage and retrieval of layout element properties.
@@ -18,135 +23,314 @@ public class LayoutDescription
 	// InputStream to pull placement information from
 	private InputStream layoutDescriptionStream;
 	
-	// HashMap to associate identifiers with GraphicProperties objects
-	private HashMap<String, GraphicProperties> propertyMap;
+	// Properties of every element, stored as primitives indexed by element
+	private ElementStore elements;
+	
+	// GraphicProperties objects created for each element, on first lookup by identifier
+	private GraphicProperties[] propertyCache;
+	
+	// Resolves pixel bounds from the elements' constraints, created on first use
+	private volatile LayoutSolver solver;
+	
+	// File the layout was read from, if any
+	private File sourceFile;
+	
+	// Time taken to parse or open the layout, in nanoseconds
+	private long loadNanos;
 	
 	/**
 	 * Construct a LayoutDescription which describes a layout based on the 
-	 * provided layout description file URL.
+	 * provided layout description stream. Malformed values are reported with
+	 * their line and column and skipped, and every element is still read.
 	 * 
-	 * @param layoutDescriptionURL The location of the file describing this layout
+	 * @param layoutDescriptionStream The stream describing this layout
 	 */
 	public LayoutDescription(InputStream layoutDescriptionStream) 
 	{
+		long loadStart = System.nanoTime();
+		
+		// Keep the stream the description was read from
+		this.layoutDescriptionStream = layoutDescriptionStream;
+		
+		// Create the element table
+		ElementTable elementTable = new ElementTable();
+		
+		// Read in information from the description input stream
+		Reader reader = new InputStreamReader(this.layoutDescriptionStream);
 		try
 		{
-			// Get a FileInputStream from the provided URL
-			this.layoutDescriptionStream = layoutDescriptionStream;
-			
-			// Create the associative map
-			propertyMap = new HashMap<String, GraphicProperties>();
-			
-			// Read in information from the description input stream
-			Scanner scanDescriptionFile = new Scanner(this.layoutDescriptionStream);
-			while (scanDescriptionFile.hasNextLine())
-			{
-				// Default values for display elements
-				String id = "";
-				double posX = 0;
-				double posY = 0;
-				double width = 0;
-				double height = 0;
-				boolean enterable = false;
-				int zScore = 0;
-				
-				// Each line should correspond to a display property
-				String line = scanDescriptionFile.nextLine();
-				System.out.println(line);
-				
-				// Double-hash is a comment
-				if (line.indexOf("##") > -1)
-				{
-					line = line.substring(0,  line.indexOf("##"));
-				}
-				
-				// Lines must contain < and > to be valid descriptors
-				if (line.contains("<") && line.contains(">"))
-				{
-					// Remove the chevrons
-					line = line.substring(line.indexOf("<") + 1, line.indexOf(">"));
-					
-					// Remove all spaces
-					line = line.replaceAll(" ", "");
-					
-					// Position and size values separated by semicolons
-					String[] parts = line.split(";");
-					
-					// Interpret each position or size value
-					for (int i = 0; i < parts.length; i++)
-					{
-						// Split the name from the value
-						String[] sectionsOfPart = parts[i].split(":");
-						
-						// Match any case value name
-						sectionsOfPart[0] = sectionsOfPart[0].toLowerCase();
-						
-						// Associated name and value
-						if (sectionsOfPart.length > 1)
-						{
-							if (sectionsOfPart[0].startsWith("id"))
-							{
-								id = sectionsOfPart[1].replaceAll("\"", "");
-							}
-							else if (sectionsOfPart[0].startsWith("posX".toLowerCase()))
-							{
-								if (isDouble(sectionsOfPart[1].replaceAll("%", "")))
-								{
-									posX = Double.parseDouble(sectionsOfPart[1].replaceAll("%", ""))/100;
-								}
-							}
-							else if (sectionsOfPart[0].startsWith("posY".toLowerCase()))
-							{
-								if (isDouble(sectionsOfPart[1].replaceAll("%", "")))
-								{
-									posY = Double.parseDouble(sectionsOfPart[1].replaceAll("%", ""))/100;
-								}
-							}
-							else if (sectionsOfPart[0].startsWith("width"))
-							{
-								if (isDouble(sectionsOfPart[1].replaceAll("%", "")))
-								{
-									width = Double.parseDouble(sectionsOfPart[1].replaceAll("%", ""))/100;
-								}
-							}
-							else if (sectionsOfPart[0].startsWith("height"))
-							{
-								if (isDouble(sectionsOfPart[1].replaceAll("%", "")))
-								{
-									height = Double.parseDouble(sectionsOfPart[1].replaceAll("%", ""))/100;
-								}
-							}
-							else if (sectionsOfPart[0].startsWith("zScore".toLowerCase()))
-							{
-								if (isInteger(sectionsOfPart[1]))
-								{
-									zScore = Integer.parseInt(sectionsOfPart[1]);
-								}
-							}
-							else if (sectionsOfPart[0].startsWith("enterable".toLowerCase()))
-							{
-								if (isBoolean(sectionsOfPart[1]))
-								{
-									enterable = Boolean.parseBoolean(sectionsOfPart[1]);
-								}
-							}
-						}
-					}
-				}
-				// Add any id which isn't left blank
-				if (!id.equals(""))
-				{
-					propertyMap.put(id, new GraphicProperties(posX, posY, width, height, zScore, enterable));
-				}
-			}
-			// Close the description file resource
-			scanDescriptionFile.close();
+			new LayoutParser(reader, false).parse(elementTable);
 		} catch (Exception e) { e.printStackTrace(); }
+		setElements(elementTable);
+		
+		// Close the description file resource
+		try
+		{
+			reader.close();
+		} catch (IOException e) { e.printStackTrace(); }
+		loadNanos = System.nanoTime() - loadStart;
 	}
 	
 	public LayoutDescription(File file) throws FileNotFoundException
 	{
 		this(new FileInputStream(file));
+		this.sourceFile = file;
+	}
+	
+	/**
+	 * Construct a LayoutDescription holding the provided elements
+	 * 
+	 * @param elements Elements of the layout
+	 * @param loadNanos Time taken to read the elements, in nanoseconds
+	 */
+	LayoutDescription(ElementStore elements, long loadNanos)
+	{
+		this(elements, loadNanos, null);
+	}
+	
+	/**
+	 * Construct a LayoutDescription holding the provided elements, read from a file
+	 * which it can watch
+	 * 
+	 * @param elements Elements of the layout
+	 * @param loadNanos Time taken to read the elements, in nanoseconds
+	 * @param sourceFile File the elements were read from, or null if they weren't read from a file
+	 */
+	LayoutDescription(ElementStore elements, long loadNanos, File sourceFile)
+	{
+		setElements(elements);
+		this.loadNanos = loadNanos;
+		this.sourceFile = sourceFile;
+	}
+	
+	/**
+	 * Use the provided elements as the contents of this layout
+	 * 
+	 * @param elements Elements of the layout
+	 */
+	private void setElements(ElementStore elements)
+	{
+		this.elements = elements;
+		this.propertyCache = new GraphicProperties[elements.size()];
+		this.solver = null;
+	}
+	
+	/**
+	 * Open a layout previously written by writeCompiled or LayoutCompiler. The file is
+	 * memory-mapped and only its identifiers are read up front; each element's
+	 * properties are read from the mapping when they are accessed.
+	 * 
+	 * @param compiledFile The compiled layout file
+	 * @return A LayoutDescription describing the compiled layout
+	 * @throws IOException If the file can't be read or isn't a compiled layout
+	 */
+	public static LayoutDescription loadCompiled(File compiledFile) throws IOException
+	{
+		long loadStart = System.nanoTime();
+		CompiledLayout elements = new CompiledLayout(compiledFile);
+		return new LayoutDescription(elements, System.nanoTime() - loadStart);
+	}
+	
+	/**
+	 * Write this layout in the compiled binary format, which loadCompiled can open
+	 * without parsing any text. Positions and sizes are stored with float precision.
+	 * 
+	 * @param outputStream Stream to write the compiled layout to
+	 * @throws IOException If the stream can't be written
+	 */
+	public void writeCompiled(OutputStream outputStream) throws IOException
+	{
+		CompiledLayout.write(elements, outputStream);
+	}
+	
+	/**
+	 * Watch the file this layout was read from, and each time it is saved, read it
+	 * again and notify the provided listener of the elements which were added, removed
+	 * or moved. A RenderPanel can be used as the listener to apply changes in place.
+	 * 
+	 * @param listener Listener to notify of changes
+	 * @return The running LayoutWatcher, which should be closed when no longer needed
+	 * @throws IOException If the file can't be watched
+	 * @throws IllegalStateException If this layout wasn't read from a File
+	 */
+	public LayoutWatcher watch(LayoutChangeListener listener) throws IOException
+	{
+		if (sourceFile == null)
+		{
+			throw new IllegalStateException("Only layouts read from a File can be watched");
+		}
+		return new LayoutWatcher(sourceFile, this, listener);
+	}
+	
+	/**
+	 * Get the time taken to parse or open this layout
+	 * 
+	 * @return Load time in nanoseconds
+	 */
+	public long getLoadNanos()
+	{
+		return loadNanos;
+	}
+	
+	/**
+	 * Get the identifiers of every element in this layout
+	 * 
+	 * @return A set of identifiers
+	 */
+	public Set<String> getIdentifiers()
+	{
+		HashSet<String> identifiers = new HashSet<String>(elements.size() * 2);
+		for (int i = 0; i < elements.size(); i++)
+		{
+			identifiers.add(elements.getIdentifier(i));
+		}
+		return identifiers;
+	}
+	
+	/**
+	 * Get the number of elements in this layout. Elements are numbered from 0 to
+	 * one less than this count, and their properties can be read by index without
+	 * looking up their identifiers again.
+	 * 
+	 * @return The number of elements
+	 */
+	public int getElementCount()
+	{
+		return elements.size();
+	}
+	
+	/**
+	 * Find the index of the element with the provided identifier
+	 * 
+	 * @param identifier The identifier to look up
+	 * @return The element's index, or -1 if it isn't in this layout
+	 */
+	public int getElementIndex(String identifier)
+	{
+		return elements.indexOf(identifier);
+	}
+	
+	/**
+	 * Get the identifier of an element
+	 * 
+	 * @param index Index of the element
+	 * @return The element's identifier
+	 */
+	public String getIdentifier(int index)
+	{
+		return elements.getIdentifier(index);
+	}
+	
+	/**
+	 * Get the X position of an element
+	 * 
+	 * @param index Index of the element
+	 * @return X position as a fraction of the panel width, or in pixels if the element's constraints say so
+	 */
+	public double getPosX(int index)
+	{
+		return elements.getPosX(index);
+	}
+	
+	/**
+	 * Get the Y position of an element
+	 * 
+	 * @param index Index of the element
+	 * @return Y position as a fraction of the panel height, or in pixels if the element's constraints say so
+	 */
+	public double getPosY(int index)
+	{
+		return elements.getPosY(index);
+	}
+	
+	/**
+	 * Get the width of an element
+	 * 
+	 * @param index Index of the element
+	 * @return Width as a fraction of the panel width, or in pixels if the element's constraints say so
+	 */
+	public double getWidth(int index)
+	{
+		return elements.getWidth(index);
+	}
+	
+	/**
+	 * Get the height of an element
+	 * 
+	 * @param index Index of the element
+	 * @return Height as a fraction of the panel height, or in pixels if the element's constraints say so
+	 */
+	public double getHeight(int index)
+	{
+		return elements.getHeight(index);
+	}
+	
+	/**
+	 * Get the zScore of an element
+	 * 
+	 * @param index Index of the element
+	 * @return The element's zScore
+	 */
+	public int getZScore(int index)
+	{
+		return elements.getZScore(index);
+	}
+	
+	/**
+	 * Get whether an element is enterable
+	 * 
+	 * @param index Index of the element
+	 * @return Whether the element is enterable
+	 */
+	public boolean getEnterable(int index)
+	{
+		return elements.getEnterable(index);
+	}
+	
+	/**
+	 * Get the units, size limits and anchors of an element
+	 * 
+	 * @param index Index of the element
+	 * @return The element's constraints, or null if it is placed by fractions of the panel's size alone
+	 */
+	public LayoutConstraints getConstraints(int index)
+	{
+		return elements.getConstraints(index);
+	}
+	
+	/**
+	 * Get the pixel bounds of an element in a panel of the provided size, with
+	 * every constraint applied. The bounds of the last few panel sizes are cached,
+	 * so the layout is only resolved again when the panel changes size.
+	 * 
+	 * @param index Index of the element
+	 * @param panelWidth Width of the panel in pixels
+	 * @param panelHeight Height of the panel in pixels
+	 * @return The element's bounds
+	 */
+	public Rectangle getBounds(int index, int panelWidth, int panelHeight)
+	{
+		int[] bounds = resolveBounds(panelWidth, panelHeight);
+		return new Rectangle(bounds[index * 4], bounds[index * 4 + 1], bounds[index * 4 + 2], bounds[index * 4 + 3]);
+	}
+	
+	/**
+	 * Get the pixel bounds of every element in a panel of the provided size
+	 * 
+	 * @param panelWidth Width of the panel in pixels
+	 * @param panelHeight Height of the panel in pixels
+	 * @return The x, y, width and height of each element at index * 4, which must not be modified
+	 */
+	int[] resolveBounds(int panelWidth, int panelHeight)
+	{
+		// Racing threads creating a solver each is harmless, as both resolve the same bounds
+		LayoutSolver current = solver;
+		if (current == null)
+		{
+			current = new LayoutSolver(elements);
+			solver = current;
+		}
+		return current.solve(panelWidth, panelHeight);
 	}
 	
 	/**
@@ -177,7 +361,23 @@ public class LayoutDescription
 	 */
 	public GraphicProperties getPropertiesForID(String identifier)
 	{
-		return propertyMap.get(identifier);
+		int index = elements.indexOf(identifier);
+		if (index < 0)
+		{
+			return null;
+		}
+		
+		// GraphicProperties are immutable, so racing threads creating the same one is harmless
+		GraphicProperties properties = propertyCache[index];
+		if (properties == null)
+		{
+			properties = new GraphicProperties(elements.getPosX(index), elements.getPosY(index),
+			                                   elements.getWidth(index), elements.getHeight(index),
+			                                   elements.getZScore(index), elements.getEnterable(index),
+			                                   1.0, elements.getConstraints(index));
+			propertyCache[index] = properties;
+		}
+		return properties;
 	}
 	
 	/**
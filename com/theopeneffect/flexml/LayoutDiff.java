@@ -0,0 +1,182 @@
+package com.theopeneffect.flexml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The differences between two versions of a layout: elements which were added,
+ * removed, or moved (any of their properties changed, or they are anchored,
+ * directly or through other anchored elements, to an element which changed).
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public class LayoutDiff
+{
+	private final Set<String> added;
+	private final Set<String> removed;
+	private final Set<String> moved;
+	
+	/**
+	 * Compute the differences between two layouts
+	 * 
+	 * @param oldLayout The previous layout
+	 * @param newLayout The current layout
+	 */
+	public LayoutDiff(LayoutDescription oldLayout, LayoutDescription newLayout)
+	{
+		HashSet<String> added = new HashSet<String>();
+		HashSet<String> removed = new HashSet<String>();
+		HashSet<String> moved = new HashSet<String>();
+		for (int i = 0; i < newLayout.getElementCount(); i++)
+		{
+			String identifier = newLayout.getIdentifier(i);
+			int oldIndex = oldLayout.getElementIndex(identifier);
+			if (oldIndex < 0)
+			{
+				added.add(identifier);
+			}
+			else if (oldLayout.getPosX(oldIndex) != newLayout.getPosX(i) || oldLayout.getPosY(oldIndex) != newLayout.getPosY(i) ||
+			         oldLayout.getWidth(oldIndex) != newLayout.getWidth(i) || oldLayout.getHeight(oldIndex) != newLayout.getHeight(i) ||
+			         oldLayout.getZScore(oldIndex) != newLayout.getZScore(i) || oldLayout.getEnterable(oldIndex) != newLayout.getEnterable(i) ||
+			         !sameConstraints(oldLayout.getConstraints(oldIndex), newLayout.getConstraints(i)))
+			{
+				moved.add(identifier);
+			}
+		}
+		for (int i = 0; i < oldLayout.getElementCount(); i++)
+		{
+			String identifier = oldLayout.getIdentifier(i);
+			if (newLayout.getElementIndex(identifier) < 0)
+			{
+				removed.add(identifier);
+			}
+		}
+		addAnchoredDependents(newLayout, added, removed, moved);
+		this.added = Collections.unmodifiableSet(added);
+		this.removed = Collections.unmodifiableSet(removed);
+		this.moved = Collections.unmodifiableSet(moved);
+	}
+	
+	/**
+	 * Add to moved every element of the new layout which is anchored, directly or
+	 * through other anchored elements, to an element which was added, removed or moved
+	 */
+	private static void addAnchoredDependents(LayoutDescription newLayout, Set<String> added, Set<String> removed, Set<String> moved)
+	{
+		// Elements anchored to each identifier
+		HashMap<String, ArrayList<String>> dependents = new HashMap<String, ArrayList<String>>();
+		for (int i = 0; i < newLayout.getElementCount(); i++)
+		{
+			LayoutConstraints constraints = newLayout.getConstraints(i);
+			if (constraints != null)
+			{
+				addDependent(dependents, constraints.getHorizontalAnchorID(), newLayout.getIdentifier(i));
+				addDependent(dependents, constraints.getVerticalAnchorID(), newLayout.getIdentifier(i));
+			}
+		}
+		if (dependents.isEmpty())
+		{
+			return;
+		}
+		
+		ArrayList<String> changed = new ArrayList<String>(added);
+		changed.addAll(removed);
+		changed.addAll(moved);
+		while (!changed.isEmpty())
+		{
+			ArrayList<String> anchored = dependents.get(changed.remove(changed.size() - 1));
+			if (anchored != null)
+			{
+				for (int i = 0; i < anchored.size(); i++)
+				{
+					String identifier = anchored.get(i);
+					if (!added.contains(identifier) && moved.add(identifier))
+					{
+						changed.add(identifier);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Record that an element is anchored to another, if it is anchored to anything
+	 */
+	private static void addDependent(HashMap<String, ArrayList<String>> dependents, String anchorID, String identifier)
+	{
+		if (anchorID != null)
+		{
+			ArrayList<String> anchored = dependents.get(anchorID);
+			if (anchored == null)
+			{
+				anchored = new ArrayList<String>(2);
+				dependents.put(anchorID, anchored);
+			}
+			anchored.add(identifier);
+		}
+	}
+	
+	/**
+	 * Compare two elements' constraints, either of which may be null
+	 */
+	private static boolean sameConstraints(LayoutConstraints oldConstraints, LayoutConstraints newConstraints)
+	{
+		return oldConstraints == null ? newConstraints == null : oldConstraints.equals(newConstraints);
+	}
+	
+	/**
+	 * Get the identifiers of elements only in the new layout
+	 * 
+	 * @return Identifiers of added elements
+	 */
+	public Set<String> getAdded()
+	{
+		return added;
+	}
+	
+	/**
+	 * Get the identifiers of elements only in the old layout
+	 * 
+	 * @return Identifiers of removed elements
+	 */
+	public Set<String> getRemoved()
+	{
+		return removed;
+	}
+	
+	/**
+	 * Get the identifiers of elements in both layouts whose properties differ, or
+	 * which are anchored to an element which was added, removed or moved
+	 * 
+	 * @return Identifiers of moved elements
+	 */
+	public Set<String> getMoved()
+	{
+		return moved;
+	}
+	
+	/**
+	 * Check whether an element differs between the two layouts
+	 * 
+	 * @param identifier The element's identifier
+	 * @return Whether the element was added, removed or moved
+	 */
+	public boolean affects(String identifier)
+	{
+		return added.contains(identifier) || removed.contains(identifier) || moved.contains(identifier);
+	}
+	
+	/**
+	 * Check whether the layouts are the same
+	 * 
+	 * @return Whether no elements were added, removed or moved
+	 */
+	public boolean isEmpty()
+	{
+		return added.isEmpty() && removed.isEmpty() && moved.isEmpty();
+	}
+}
@@ -0,0 +1,51 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Thrown when a layout description contains a value which can't be interpreted,
+ * identifying where in the description the problem is.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public class LayoutParseException extends Exception
+{
+	private static final long serialVersionUID = 0xFEED;
+	
+	// Location of the problem, both starting from 1
+	private final int line;
+	private final int column;
+	
+	/**
+	 * Construct a LayoutParseException for a problem at the provided location
+	 * 
+	 * @param message Description of the problem
+	 * @param line Line number of the problem, starting from 1
+	 * @param column Column number of the problem, starting from 1
+	 */
+	public LayoutParseException(String message, int line, int column)
+	{
+		super("Line " + line + ", column " + column + ": " + message);
+		this.line = line;
+		this.column = column;
+	}
+	
+	/**
+	 * Get the line on which the problem occurs
+	 * 
+	 * @return The line number, starting from 1
+	 */
+	public int getLine()
+	{
+		return line;
+	}
+	
+	/**
+	 * Get the column at which the problem occurs
+	 * 
+	 * @return The column number, starting from 1
+	 */
+	public int getColumn()
+	{
+		return column;
+	}
+}
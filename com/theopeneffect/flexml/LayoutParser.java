@@ -0,0 +1,612 @@
+package com.theopeneffect.flexml;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Single-pass reader for the text layout description format, which describes one
+ * element per line in the form:
+ *
+ * <pre>
+ * &lt;id:"name"; posX:10%; posY:20%; width:30%; height:5%; zScore:1; enterable:true&gt;
+ * </pre>
+ *
+ * Positions and sizes are percentages of the panel's size, with or without a
+ * trailing %, or pixels when followed by px. The optional attributes minWidth,
+ * maxWidth, minHeight and maxHeight limit the size in pixels, and rightOf,
+ * leftOf, below and above anchor the element to another element's identifier, as
+ * described by LayoutConstraints:
+ *
+ * <pre>
+ * &lt;id:"sidebar"; posX:0px; posY:0; width:20%; height:100%; minWidth:180px&gt;
+ * &lt;id:"content"; rightOf:"sidebar"; posX:8px; posY:0; width:60%; height:100%&gt;
+ * </pre>
+ *
+ * Everything after ## on a line is a comment, and anything outside the chevrons
+ * is ignored. Attribute names are matched by prefix and without regard to case,
+ * spaces inside the chevrons are ignored, and unknown attributes are skipped.
+ *
+ * Lines are scanned in place from a reusable buffer, so no intermediate strings
+ * are created other than each element's identifier.
+ *
+ * A strict parser stops at the first malformed value. Otherwise, as the original
+ * Scanner-based reader did, each malformed value is reported and skipped, leaving
+ * that attribute at its default while the rest of the element and the lines after
+ * it are still read; an enterable value other than true is read as false.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+class LayoutParser
+{
+	// Powers of ten which can be represented exactly as doubles
+	private static final double[] EXACT_POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	// Most significant digits which always fit exactly in a double's mantissa
+	private static final int MAX_EXACT_DIGITS = 15;
+
+	// Source of the description
+	private final Reader reader;
+
+	// Whether a malformed value stops parsing rather than being skipped
+	private final boolean strict;
+
+	// Block of characters most recently read from the source
+	private final char[] chunk = new char[8192];
+	private int chunkPosition = 0;
+	private int chunkLength = 0;
+
+	// Characters of the current line, and the original column of each after spaces are removed
+	private char[] line = new char[256];
+	private int[] columns = new int[256];
+	private int lineLength = 0;
+	private int lineNumber = 0;
+
+	/**
+	 * Construct a LayoutParser reading from the provided Reader
+	 *
+	 * @param reader Source of the layout description
+	 * @param strict Whether a malformed value stops parsing, rather than being reported and skipped
+	 */
+	LayoutParser(Reader reader, boolean strict)
+	{
+		this.reader = reader;
+		this.strict = strict;
+	}
+
+	/**
+	 * Read every element from the description, adding each one with an identifier to
+	 * the provided table. Later elements replace earlier ones with the same identifier.
+	 *
+	 * @param elements Table to add elements to
+	 * @throws IOException If the description can't be read
+	 * @throws LayoutParseException If the parser is strict and a value in the description is malformed
+	 */
+	void parse(ElementTable elements) throws IOException, LayoutParseException
+	{
+		while (readLine())
+		{
+			parseLine(elements);
+		}
+	}
+
+	/**
+	 * Read the next line into the line buffer, without its terminator
+	 *
+	 * @return Whether a line was read
+	 * @throws IOException If the description can't be read
+	 */
+	private boolean readLine() throws IOException
+	{
+		lineLength = 0;
+		boolean readAnything = false;
+		while (true)
+		{
+			if (chunkPosition == chunkLength)
+			{
+				chunkLength = reader.read(chunk, 0, chunk.length);
+				chunkPosition = 0;
+				if (chunkLength <= 0)
+				{
+					chunkLength = 0;
+					if (readAnything)
+					{
+						lineNumber++;
+					}
+					return readAnything;
+				}
+			}
+			readAnything = true;
+			char character = chunk[chunkPosition++];
+			if (character == '\n' || character == '\u2028' || character == '\u2029' || character == '\u0085')
+			{
+				lineNumber++;
+				return true;
+			}
+			if (character == '\r')
+			{
+				// Treat \r\n as a single terminator, reading ahead if the \n is in the next chunk
+				if (chunkPosition == chunkLength)
+				{
+					chunkLength = Math.max(reader.read(chunk, 0, chunk.length), 0);
+					chunkPosition = 0;
+				}
+				if (chunkPosition < chunkLength && chunk[chunkPosition] == '\n')
+				{
+					chunkPosition++;
+				}
+				lineNumber++;
+				return true;
+			}
+			if (lineLength == line.length)
+			{
+				char[] grownLine = new char[line.length * 2];
+				System.arraycopy(line, 0, grownLine, 0, lineLength);
+				line = grownLine;
+				columns = new int[grownLine.length];
+			}
+			line[lineLength++] = character;
+		}
+	}
+
+	/**
+	 * Interpret the element described on the current line, if there is one
+	 *
+	 * @param elements Table to add the element to
+	 * @throws LayoutParseException If a value on the line is malformed
+	 */
+	private void parseLine(ElementTable elements) throws LayoutParseException
+	{
+		// Double-hash is a comment
+		int end = lineLength;
+		for (int i = 0; i + 1 < end; i++)
+		{
+			if (line[i] == '#' && line[i + 1] == '#')
+			{
+				end = i;
+				break;
+			}
+		}
+
+		// Lines must contain < and > to be valid descriptors
+		int open = indexOf('<', 0, end);
+		int close = indexOf('>', 0, end);
+		if (open < 0 || close < 0)
+		{
+			return;
+		}
+		if (close < open)
+		{
+			recover(new LayoutParseException("'>' before '<'", lineNumber, close + 1));
+			return;
+		}
+
+		// Remove all spaces, remembering where each remaining character came from
+		int length = 0;
+		for (int i = open + 1; i < close; i++)
+		{
+			if (line[i] != ' ')
+			{
+				line[length] = line[i];
+				columns[length] = i + 1;
+				length++;
+			}
+		}
+
+		// Default values for display elements
+		String id = "";
+		double posX = 0;
+		double posY = 0;
+		double width = 0;
+		double height = 0;
+		boolean enterable = false;
+		int zScore = 0;
+		int pixelUnits = 0;
+		double minWidth = 0;
+		double maxWidth = Double.POSITIVE_INFINITY;
+		double minHeight = 0;
+		double maxHeight = Double.POSITIVE_INFINITY;
+		LayoutConstraints.Anchor horizontalAnchor = null;
+		String horizontalAnchorID = null;
+		LayoutConstraints.Anchor verticalAnchor = null;
+		String verticalAnchorID = null;
+
+		// Position and size values separated by semicolons, names separated from values by colons
+		int partStart = 0;
+		while (partStart <= length)
+		{
+			int partEnd = indexOf(';', partStart, length);
+			if (partEnd < 0)
+			{
+				partEnd = length;
+			}
+			int nameEnd = indexOf(':', partStart, partEnd);
+			if (nameEnd >= 0)
+			{
+				// Anything after a second colon is ignored
+				int valueStart = nameEnd + 1;
+				int valueEnd = indexOf(':', valueStart, partEnd);
+				if (valueEnd < 0)
+				{
+					valueEnd = partEnd;
+				}
+				if (valueStart < valueEnd)
+				{
+					try
+					{
+						if (nameStartsWith(partStart, nameEnd, "id"))
+						{
+							id = parseIdentifier(valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "posx"))
+						{
+							posX = parseLength(valueStart, valueEnd);
+							pixelUnits = withUnit(pixelUnits, LayoutConstraints.PIXEL_POS_X, valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "posy"))
+						{
+							posY = parseLength(valueStart, valueEnd);
+							pixelUnits = withUnit(pixelUnits, LayoutConstraints.PIXEL_POS_Y, valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "width"))
+						{
+							width = parseLength(valueStart, valueEnd);
+							pixelUnits = withUnit(pixelUnits, LayoutConstraints.PIXEL_WIDTH, valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "height"))
+						{
+							height = parseLength(valueStart, valueEnd);
+							pixelUnits = withUnit(pixelUnits, LayoutConstraints.PIXEL_HEIGHT, valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "minwidth"))
+						{
+							minWidth = parsePixels(valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "maxwidth"))
+						{
+							maxWidth = parsePixels(valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "minheight"))
+						{
+							minHeight = parsePixels(valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "maxheight"))
+						{
+							maxHeight = parsePixels(valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "rightof"))
+						{
+							horizontalAnchor = LayoutConstraints.Anchor.RIGHT_OF;
+							horizontalAnchorID = parseIdentifier(valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "leftof"))
+						{
+							horizontalAnchor = LayoutConstraints.Anchor.LEFT_OF;
+							horizontalAnchorID = parseIdentifier(valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "below"))
+						{
+							verticalAnchor = LayoutConstraints.Anchor.BELOW;
+							verticalAnchorID = parseIdentifier(valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "above"))
+						{
+							verticalAnchor = LayoutConstraints.Anchor.ABOVE;
+							verticalAnchorID = parseIdentifier(valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "zscore"))
+						{
+							zScore = parseInteger(valueStart, valueEnd);
+						}
+						else if (nameStartsWith(partStart, nameEnd, "enterable"))
+						{
+							enterable = parseBoolean(valueStart, valueEnd);
+						}
+					} catch (LayoutParseException e)
+					{
+						recover(e);
+						if (nameStartsWith(partStart, nameEnd, "enterable"))
+						{
+							enterable = false;
+						}
+					}
+				}
+			}
+			partStart = partEnd + 1;
+		}
+
+		// Add any id which isn't left blank
+		if (id.length() > 0)
+		{
+			// Elements placed by fractions of the panel alone need no constraints
+			LayoutConstraints constraints = null;
+			if (pixelUnits != 0 || minWidth != 0 || maxWidth != Double.POSITIVE_INFINITY || minHeight != 0 ||
+			    maxHeight != Double.POSITIVE_INFINITY || horizontalAnchor != null || verticalAnchor != null)
+			{
+				constraints = new LayoutConstraints(pixelUnits, minWidth, maxWidth, minHeight, maxHeight,
+				                                    horizontalAnchor, horizontalAnchorID, verticalAnchor, verticalAnchorID);
+			}
+			elements.put(id, posX, posY, width, height, zScore, enterable, constraints);
+		}
+	}
+
+	/**
+	 * Find a character within part of the line buffer
+	 *
+	 * @return Index of the first occurrence, or -1 if there is none
+	 */
+	private int indexOf(char character, int start, int end)
+	{
+		for (int i = start; i < end; i++)
+		{
+			if (line[i] == character)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Check whether an attribute name starts with the provided lower case prefix, ignoring case
+	 */
+	private boolean nameStartsWith(int start, int end, String prefix)
+	{
+		if (end - start < prefix.length())
+		{
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++)
+		{
+			if (Character.toLowerCase(line[start + i]) != prefix.charAt(i))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Read an identifier, dropping any quotation marks
+	 */
+	private String parseIdentifier(int start, int end)
+	{
+		int length = 0;
+		char[] identifier = new char[end - start];
+		for (int i = start; i < end; i++)
+		{
+			if (line[i] != '"')
+			{
+				identifier[length++] = line[i];
+			}
+		}
+		return new String(identifier, 0, length);
+	}
+
+	/**
+	 * Check whether a value ends with px, ignoring case
+	 */
+	private boolean isPixels(int start, int end)
+	{
+		return end - start > 2 && Character.toLowerCase(line[end - 2]) == 'p' && Character.toLowerCase(line[end - 1]) == 'x';
+	}
+
+	/**
+	 * Set or clear a value's bit in a mask of pixel units, according to whether the value ends with px
+	 */
+	private int withUnit(int pixelUnits, int unit, int start, int end)
+	{
+		return isPixels(start, end) ? pixelUnits | unit : pixelUnits & ~unit;
+	}
+
+	/**
+	 * Read a position or size: a number of pixels if it ends with px, otherwise a percentage as a fraction
+	 */
+	private double parseLength(int start, int end) throws LayoutParseException
+	{
+		if (isPixels(start, end))
+		{
+			return parseDouble(start, end - 2);
+		}
+		return parsePercentage(start, end);
+	}
+
+	/**
+	 * Read a number of pixels, with or without a trailing px
+	 */
+	private double parsePixels(int start, int end) throws LayoutParseException
+	{
+		if (isPixels(start, end))
+		{
+			end -= 2;
+		}
+		return parseDouble(start, end);
+	}
+
+	/**
+	 * Read a percentage, with or without a trailing %, as a fraction
+	 */
+	private double parsePercentage(int start, int end) throws LayoutParseException
+	{
+		if (line[end - 1] == '%')
+		{
+			end--;
+		}
+		return parseDouble(start, end) / 100;
+	}
+
+	/**
+	 * Read a decimal number. Numbers with up to 15 significant digits and a small
+	 * exponent are converted directly, which rounds exactly as Double.parseDouble
+	 * does; anything else is handed to Double.parseDouble.
+	 */
+	private double parseDouble(int start, int end) throws LayoutParseException
+	{
+		int position = start;
+		boolean negative = false;
+		if (position < end && (line[position] == '-' || line[position] == '+'))
+		{
+			negative = line[position] == '-';
+			position++;
+		}
+
+		long mantissa = 0;
+		int significantDigits = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean seenPoint = false;
+		while (position < end)
+		{
+			char character = line[position];
+			if (character >= '0' && character <= '9')
+			{
+				digits++;
+				if (mantissa != 0 || character != '0')
+				{
+					significantDigits++;
+					if (significantDigits > MAX_EXACT_DIGITS)
+					{
+						return parseDoubleSlowly(start, end);
+					}
+				}
+				mantissa = mantissa * 10 + (character - '0');
+				if (seenPoint)
+				{
+					exponent--;
+				}
+			}
+			else if (character == '.' && !seenPoint)
+			{
+				seenPoint = true;
+			}
+			else
+			{
+				break;
+			}
+			position++;
+		}
+		if (digits == 0)
+		{
+			return parseDoubleSlowly(start, end);
+		}
+
+		if (position < end && (line[position] == 'e' || line[position] == 'E'))
+		{
+			position++;
+			boolean negativeExponent = false;
+			if (position < end && (line[position] == '-' || line[position] == '+'))
+			{
+				negativeExponent = line[position] == '-';
+				position++;
+			}
+			int exponentStart = position;
+			int explicitExponent = 0;
+			while (position < end && line[position] >= '0' && line[position] <= '9' && explicitExponent < 1000)
+			{
+				explicitExponent = explicitExponent * 10 + (line[position] - '0');
+				position++;
+			}
+			if (position == exponentStart)
+			{
+				return parseDoubleSlowly(start, end);
+			}
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+		if (position != end || exponent > 22 || exponent < -22)
+		{
+			return parseDoubleSlowly(start, end);
+		}
+
+		double value = exponent >= 0 ? mantissa * EXACT_POWERS_OF_TEN[exponent] : mantissa / EXACT_POWERS_OF_TEN[-exponent];
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Read a number in any form Double.parseDouble accepts
+	 */
+	private double parseDoubleSlowly(int start, int end) throws LayoutParseException
+	{
+		try
+		{
+			return Double.parseDouble(new String(line, start, end - start));
+		} catch (NumberFormatException e) { throw malformed("number", start, end); }
+	}
+
+	/**
+	 * Read a decimal integer with an optional sign
+	 */
+	private int parseInteger(int start, int end) throws LayoutParseException
+	{
+		int position = start;
+		boolean negative = false;
+		if (line[position] == '-' || line[position] == '+')
+		{
+			negative = line[position] == '-';
+			position++;
+		}
+		if (position == end)
+		{
+			throw malformed("integer", start, end);
+		}
+
+		// Accumulate negatively so Integer.MIN_VALUE can be represented
+		long value = 0;
+		for (; position < end; position++)
+		{
+			char character = line[position];
+			if (character < '0' || character > '9')
+			{
+				throw malformed("integer", start, end);
+			}
+			value = value * 10 - (character - '0');
+			if (value < Integer.MIN_VALUE)
+			{
+				throw malformed("integer", start, end);
+			}
+		}
+		if (!negative && value == Integer.MIN_VALUE)
+		{
+			throw malformed("integer", start, end);
+		}
+		return (int)(negative ? value : -value);
+	}
+
+	/**
+	 * Read true or false, ignoring case
+	 */
+	private boolean parseBoolean(int start, int end) throws LayoutParseException
+	{
+		if (nameStartsWith(start, end, "true") && end - start == 4)
+		{
+			return true;
+		}
+		if (nameStartsWith(start, end, "false") && end - start == 5)
+		{
+			return false;
+		}
+		throw malformed("boolean", start, end);
+	}
+
+	/**
+	 * Rethrow a problem if this parser is strict, otherwise report it and carry on
+	 */
+	private void recover(LayoutParseException problem) throws LayoutParseException
+	{
+		if (strict)
+		{
+			throw problem;
+		}
+		System.err.println(problem.getMessage());
+	}
+
+	/**
+	 * Create an exception for a value which couldn't be interpreted
+	 */
+	private LayoutParseException malformed(String expected, int start, int end)
+	{
+		return new LayoutParseException("Expected " + expected + " but found \"" + new String(line, start, end - start) + "\"", lineNumber, columns[start]);
+	}
+}
@@ -0,0 +1,543 @@
+package com.theopeneffect.flexml;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.RenderedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * Draws a set of renderables laid out by a LayoutDescription into any Graphics2D
+ * at any size. This is the painting core of a RenderPanel, and needs no AWT
+ * component or window, so it can render layouts headlessly into a BufferedImage
+ * or a PNG, such as for thumbnails and reports generated on a server.
+ * 
+ * Renderables can be added, removed and replaced from any thread. A LayoutRenderer
+ * draws one image at a time; use one per layout, or a BatchRenderer, to render
+ * several in parallel. FlexibleImages loaded from URLs draw a placeholder until
+ * their image arrives, so call awaitImages before rendering them headlessly.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public class LayoutRenderer
+{
+	// Possible options for rendering quality
+	public static final int OPTION_QUALITY_LOW = 1;
+	public static final int OPTION_QUALITY_MED = 2;
+	public static final int OPTION_QUALITY_HIGH = 3;
+	
+	// All of the objects that can be rendered, as an array which is replaced rather than modified
+	private final AtomicReference<Renderable[]> renderables = new AtomicReference<Renderable[]>(new Renderable[0]);
+	
+	// The current layout description
+	private volatile LayoutDescription layoutDescription;
+	
+	// Z-ordered snapshot of renderables and their properties, rebuilt when either changes
+	private volatile RenderList renderList = null;
+	
+	// Resolved pixel bounds for the most recent size rendered or hit-tested, null until first needed
+	private HitTestGrid hitTestGrid = null;
+	
+	// Rendering quality is, by default, medium
+	private volatile int quality = OPTION_QUALITY_MED;
+	
+	// Whether to paint ConcurrentRenderables into tiles on a shared thread pool
+	private volatile boolean parallelRendering = false;
+	
+	// Paints tiles for parallel rendering, keeping their images between frames
+	private final ParallelRasterizer rasterizer = new ParallelRasterizer();
+	
+	// Color filling the image behind the renderables, null to leave it transparent
+	private volatile Color background = null;
+	
+	/**
+	 * Create a LayoutRenderer with the provided LayoutDescription and no renderables
+	 * 
+	 * @param layoutDescription Describes the layout to use
+	 */
+	public LayoutRenderer(LayoutDescription layoutDescription)
+	{
+		this.layoutDescription = layoutDescription;
+	}
+	
+	/**
+	 * Add a Renderable. Rendering carries on with the renderables present when it started.
+	 * 
+	 * @param renderable Renderable to add
+	 */
+	public void add(Renderable renderable)
+	{
+		if (renderable == null)
+		{
+			return;
+		}
+		Renderable[] current;
+		Renderable[] updated;
+		do
+		{
+			current = renderables.get();
+			updated = Arrays.copyOf(current, current.length + 1);
+			updated[current.length] = renderable;
+		} while (!renderables.compareAndSet(current, updated));
+	}
+	
+	/**
+	 * Remove a Renderable
+	 * 
+	 * @param renderable Renderable to remove
+	 * @return Whether the Renderable was present
+	 */
+	public boolean remove(Renderable renderable)
+	{
+		Renderable[] current;
+		Renderable[] updated;
+		do
+		{
+			current = renderables.get();
+			int index = indexOf(current, renderable);
+			if (index < 0)
+			{
+				return false;
+			}
+			updated = new Renderable[current.length - 1];
+			System.arraycopy(current, 0, updated, 0, index);
+			System.arraycopy(current, index + 1, updated, index, updated.length - index);
+		} while (!renderables.compareAndSet(current, updated));
+		return true;
+	}
+	
+	/**
+	 * Replace a Renderable with another, drawn in the same order
+	 * 
+	 * @param original Renderable to remove
+	 * @param replacement Renderable to add in its place
+	 * @return Whether the original Renderable was present
+	 */
+	public boolean replace(Renderable original, Renderable replacement)
+	{
+		if (replacement == null)
+		{
+			return remove(original);
+		}
+		Renderable[] current;
+		Renderable[] updated;
+		do
+		{
+			current = renderables.get();
+			int index = indexOf(current, original);
+			if (index < 0)
+			{
+				return false;
+			}
+			updated = current.clone();
+			updated[index] = replacement;
+		} while (!renderables.compareAndSet(current, updated));
+		return true;
+	}
+	
+	/**
+	 * Find a Renderable in a snapshot of the renderables
+	 * 
+	 * @param snapshot The renderables to search
+	 * @param renderable The Renderable to look for
+	 * @return Index of the Renderable, or -1 if it isn't present
+	 */
+	private static int indexOf(Renderable[] snapshot, Renderable renderable)
+	{
+		for (int i = 0; i < snapshot.length; i++)
+		{
+			if (snapshot[i] == renderable)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Get the layout renderables are positioned by
+	 * 
+	 * @return The current LayoutDescription
+	 */
+	public LayoutDescription getLayout()
+	{
+		return layoutDescription;
+	}
+	
+	/**
+	 * Position renderables by a different layout from the next paint onwards
+	 * 
+	 * @param layoutDescription New LayoutDescription
+	 */
+	public void setLayout(LayoutDescription layoutDescription)
+	{
+		this.layoutDescription = layoutDescription;
+	}
+	
+	/**
+	 * Get the rendering quality
+	 * 
+	 * @return One of OPTION_QUALITY_LOW, OPTION_QUALITY_MED or OPTION_QUALITY_HIGH
+	 */
+	public int getQuality()
+	{
+		return quality;
+	}
+	
+	/**
+	 * Set the rendering quality
+	 * 
+	 * @param quality One of OPTION_QUALITY_LOW, OPTION_QUALITY_MED or OPTION_QUALITY_HIGH
+	 */
+	public void setQuality(int quality)
+	{
+		this.quality = quality;
+	}
+	
+	/**
+	 * Enable or disable painting ConcurrentRenderables in parallel, each into its
+	 * own offscreen tile on a thread pool shared by every LayoutRenderer
+	 * 
+	 * @param parallelRendering Whether to paint ConcurrentRenderables in parallel
+	 */
+	public void setParallelRendering(boolean parallelRendering)
+	{
+		this.parallelRendering = parallelRendering;
+	}
+	
+	/**
+	 * Set the color drawn behind the renderables by paint and render
+	 * 
+	 * @param background Background color, or null for none
+	 */
+	public void setBackground(Color background)
+	{
+		this.background = background;
+	}
+	
+	/**
+	 * Paint every renderable laid out within an area of the provided size, starting
+	 * at the Graphics2D's origin. Only renderables intersecting its clip are painted.
+	 * 
+	 * @param graphics Graphics2D to paint with
+	 * @param width Width of the area the layout fills, in pixels
+	 * @param height Height of the area the layout fills, in pixels
+	 */
+	public synchronized void paint(Graphics2D graphics, int width, int height)
+	{
+		RenderList renderList = getRenderList();
+		HitTestGrid bounds = getHitTestGrid(renderList, width, height);
+		
+		applyQuality(graphics);
+		Color background = this.background;
+		if (background != null)
+		{
+			graphics.setColor(background);
+			graphics.fillRect(0, 0, width, height);
+		}
+		paintEntries(graphics, renderList.getEntries(), bounds, 0, renderList.getEntries().length, graphics.getClipBounds(), null);
+		notifyOffScreen(renderList);
+	}
+	
+	/**
+	 * Wait for every FlexibleImage being rendered, including those inside
+	 * FlexibleContainers, to finish loading its image, so that rendering draws the
+	 * images rather than their placeholders. Images are delivered on the event
+	 * dispatch thread, so this must not be called on it.
+	 * 
+	 * @param timeoutMillis Longest time to wait for all of the images, in milliseconds
+	 * @return Whether every image arrived or failed to load before the timeout
+	 * @throws InterruptedException If the thread is interrupted while waiting
+	 * @throws IllegalStateException If called on the event dispatch thread
+	 */
+	public boolean awaitImages(long timeoutMillis) throws InterruptedException
+	{
+		if (EventQueue.isDispatchThread())
+		{
+			throw new IllegalStateException("Images are delivered on the event dispatch thread, so can't be awaited on it");
+		}
+		return awaitImagesUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+	}
+	
+	/**
+	 * Wait for every FlexibleImage being rendered to finish loading its image
+	 * 
+	 * @param deadlineNanos System.nanoTime at which to stop waiting
+	 * @return Whether every image arrived or failed to load before the deadline
+	 * @throws InterruptedException If the thread is interrupted while waiting
+	 */
+	boolean awaitImagesUntil(long deadlineNanos) throws InterruptedException
+	{
+		Renderable[] snapshot = renderables.get();
+		for (int i = 0; i < snapshot.length; i++)
+		{
+			if (snapshot[i] instanceof FlexibleImage)
+			{
+				long remaining = Math.max(deadlineNanos - System.nanoTime(), 0);
+				if (!((FlexibleImage)snapshot[i]).awaitLoaded(remaining, TimeUnit.NANOSECONDS))
+				{
+					return false;
+				}
+			}
+			else if (snapshot[i] instanceof FlexibleContainer)
+			{
+				if (!((FlexibleContainer)snapshot[i]).getChildren().awaitImagesUntil(deadlineNanos))
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Render the layout into a new image
+	 * 
+	 * @param width Width of the image in pixels
+	 * @param height Height of the image in pixels
+	 * @return An ARGB image of the layout
+	 */
+	public BufferedImage render(int width, int height)
+	{
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		render(image);
+		return image;
+	}
+	
+	/**
+	 * Render the layout over the whole of an existing image, replacing its contents
+	 * 
+	 * @param image Image to render into, whose size the layout fills
+	 */
+	public void render(BufferedImage image)
+	{
+		Graphics2D graphics = image.createGraphics();
+		try
+		{
+			graphics.setComposite(AlphaComposite.Clear);
+			graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+			graphics.setComposite(AlphaComposite.SrcOver);
+			paint(graphics, image.getWidth(), image.getHeight());
+		}
+		finally
+		{
+			graphics.dispose();
+		}
+	}
+	
+	/**
+	 * Render the layout and write it as a PNG
+	 * 
+	 * @param width Width of the image in pixels
+	 * @param height Height of the image in pixels
+	 * @param outputStream Stream to write to, which is left open
+	 * @throws IOException If the image can't be written
+	 */
+	public void writePNG(int width, int height, OutputStream outputStream) throws IOException
+	{
+		writePNG(render(width, height), outputStream);
+	}
+	
+	/**
+	 * Write an image as a PNG, buffering in memory rather than in a temporary file
+	 * 
+	 * @param image The image to write
+	 * @param outputStream Stream to write to, which is left open
+	 * @throws IOException If the image can't be written
+	 */
+	public static void writePNG(RenderedImage image, OutputStream outputStream) throws IOException
+	{
+		Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("png");
+		if (!writers.hasNext())
+		{
+			throw new IOException("No PNG writer available");
+		}
+		ImageWriter writer = writers.next();
+		ImageOutputStream imageStream = new MemoryCacheImageOutputStream(outputStream);
+		try
+		{
+			writer.setOutput(imageStream);
+			writer.write(image);
+			imageStream.flush();
+		}
+		finally
+		{
+			writer.dispose();
+			imageStream.close();
+		}
+	}
+	
+	/**
+	 * Get the z-ordered RenderList for the current renderables and layout,
+	 * rebuilding it if either has changed since it was last built.
+	 * 
+	 * @return The current RenderList
+	 */
+	RenderList getRenderList()
+	{
+		Renderable[] snapshot = renderables.get();
+		LayoutDescription layout = layoutDescription;
+		RenderList current = renderList;
+		if (current == null || !current.matches(snapshot, layout))
+		{
+			current = new RenderList(snapshot, layout);
+			renderList = current;
+		}
+		return current;
+	}
+	
+	/**
+	 * Get the resolved bounds and hit-test index for the provided RenderList at the
+	 * provided size, rebuilding them if either has changed since they were last resolved
+	 * 
+	 * @param renderList The RenderList to resolve
+	 * @param width Width of the area the layout fills, in pixels
+	 * @param height Height of the area the layout fills, in pixels
+	 * @return A HitTestGrid matching the RenderList and size
+	 */
+	synchronized HitTestGrid getHitTestGrid(RenderList renderList, int width, int height)
+	{
+		HitTestGrid bounds = hitTestGrid;
+		if (bounds == null || !bounds.matches(renderList, width, height))
+		{
+			bounds = new HitTestGrid(renderList, width, height);
+			hitTestGrid = bounds;
+		}
+		return bounds;
+	}
+	
+	/**
+	 * Paint a range of entries whose bounds intersect the provided clip
+	 * 
+	 * @param graphics Graphics2D to paint with
+	 * @param entries Entries sorted back-to-front
+	 * @param bounds Resolved bounds of the entries
+	 * @param start Index of the first entry to paint
+	 * @param end Index following the last entry to paint
+	 * @param clip Area to paint, or null to paint everything
+	 * @param metrics Listener to report each Renderable's paint time to, or null
+	 * @return The number of entries painted
+	 */
+	int paintEntries(Graphics2D graphics, RenderEntry[] entries, HitTestGrid bounds, int start, int end, Rectangle clip, RenderMetricsListener metrics)
+	{
+		int drawn = 0;
+		
+		// Expensive renderables which can paint off the painting thread are drawn into tiles first
+		ParallelRasterizer.Tile[] tiles = parallelRendering ? rasterizer.rasterize(graphics, entries, bounds, start, end, clip, metrics) : null;
+		for (int i = start; i < end; i++)
+		{
+			int insertXLocation = bounds.getX(i);
+			int insertYLocation = bounds.getY(i);
+			int drawWidth = bounds.getWidth(i);
+			int drawHeight = bounds.getHeight(i);
+			float opacity = bounds.getOpacity(i);
+			if (opacity > 0f && (clip == null || clip.intersects(insertXLocation, insertYLocation, drawWidth + 1, drawHeight + 1)))
+			{
+				Composite oldComposite = null;
+				if (opacity < 1f)
+				{
+					oldComposite = graphics.getComposite();
+					graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+				}
+				Renderable renderable = entries[i].getRenderable();
+				if (tiles != null && tiles[i - start] != null)
+				{
+					tiles[i - start].draw(graphics);
+				}
+				else if (metrics == null)
+				{
+					renderable.paint(graphics, insertXLocation, insertYLocation, drawWidth, drawHeight);
+				}
+				else
+				{
+					long renderableStart = System.nanoTime();
+					renderable.paint(graphics, insertXLocation, insertYLocation, drawWidth, drawHeight);
+					metrics.renderablePainted(renderable, System.nanoTime() - renderableStart);
+				}
+				if (oldComposite != null)
+				{
+					graphics.setComposite(oldComposite);
+				}
+				drawn++;
+			}
+		}
+		if (tiles != null)
+		{
+			rasterizer.release(tiles);
+		}
+		return drawn;
+	}
+	
+	/**
+	 * Alert renderables without a place in the layout that they are not on the screen
+	 * 
+	 * @param renderList The RenderList being painted
+	 */
+	void notifyOffScreen(RenderList renderList)
+	{
+		Renderable[] offScreen = renderList.getOffScreen();
+		for (int i = 0; i < offScreen.length; i++)
+		{
+			offScreen[i].offScreen();
+		}
+	}
+	
+	/**
+	 * Set the rendering hints on a Graphics2D object for the current rendering quality
+	 * 
+	 * @param graphics Graphics2D object to set quality on
+	 */
+	void applyQuality(Graphics2D graphics)
+	{
+		int quality = this.quality;
+		if (quality == OPTION_QUALITY_LOW)
+		{
+			graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+			graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+			graphics.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+			graphics.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
+			graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
+			graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
+		}
+		else if (quality == OPTION_QUALITY_MED)
+		{
+			graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+			graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
+			graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+			graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+		}
+		else if (quality == OPTION_QUALITY_HIGH)
+		{
+			graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+			graphics.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
+			graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+			graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+		}
+	}
+}
@@ -0,0 +1,276 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Resolves the pixel bounds of every element of a layout at a panel size, applying
+ * each element's LayoutConstraints. Elements are put in an order where each comes
+ * after the elements it is anchored to, once per layout, so any panel size is then
+ * resolved in a single pass. The bounds of the last few sizes are kept, so they are
+ * only resolved again when the panel is resized.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+class LayoutSolver
+{
+	// Number of panel sizes whose bounds are kept
+	private static final int MAX_CACHED_SIZES = 4;
+
+	// States of an element while ordering
+	private static final int UNVISITED = 0;
+	private static final int VISITING = 1;
+	private static final int ORDERED = 2;
+
+	// The layout's elements, and the constraints of each, null where unconstrained
+	private final ElementStore elements;
+	private final LayoutConstraints[] constraints;
+
+	// Index of the element each element is anchored to, or -1 for the panel or no anchor
+	private final int[] horizontalTargets;
+	private final int[] verticalTargets;
+
+	// Anchors of each element, null where unanchored or where the anchor would form a cycle
+	private final LayoutConstraints.Anchor[] horizontalAnchors;
+	private final LayoutConstraints.Anchor[] verticalAnchors;
+
+	// Elements in resolution order
+	private final int[] order;
+
+	// Recently resolved sizes and their bounds, most recent first
+	private final int[] cachedWidths = new int[MAX_CACHED_SIZES];
+	private final int[] cachedHeights = new int[MAX_CACHED_SIZES];
+	private final int[][] cachedBounds = new int[MAX_CACHED_SIZES][];
+
+	/**
+	 * Create a LayoutSolver for the provided elements, ordering them by their anchors
+	 *
+	 * @param elements Elements of the layout
+	 */
+	LayoutSolver(ElementStore elements)
+	{
+		this.elements = elements;
+		int count = elements.size();
+		constraints = new LayoutConstraints[count];
+		horizontalTargets = new int[count];
+		verticalTargets = new int[count];
+		horizontalAnchors = new LayoutConstraints.Anchor[count];
+		verticalAnchors = new LayoutConstraints.Anchor[count];
+		boolean anchored = false;
+		for (int i = 0; i < count; i++)
+		{
+			horizontalTargets[i] = -1;
+			verticalTargets[i] = -1;
+			LayoutConstraints elementConstraints = elements.getConstraints(i);
+			constraints[i] = elementConstraints;
+			if (elementConstraints != null)
+			{
+				horizontalAnchors[i] = elementConstraints.getHorizontalAnchor();
+				verticalAnchors[i] = elementConstraints.getVerticalAnchor();
+				if (horizontalAnchors[i] != null && elementConstraints.getHorizontalAnchorID() != null)
+				{
+					horizontalTargets[i] = elements.indexOf(elementConstraints.getHorizontalAnchorID());
+				}
+				if (verticalAnchors[i] != null && elementConstraints.getVerticalAnchorID() != null)
+				{
+					verticalTargets[i] = elements.indexOf(elementConstraints.getVerticalAnchorID());
+				}
+				anchored |= horizontalTargets[i] >= 0 || verticalTargets[i] >= 0;
+			}
+		}
+
+		order = new int[count];
+		if (anchored)
+		{
+			orderByAnchors();
+		}
+		else
+		{
+			for (int i = 0; i < count; i++)
+			{
+				order[i] = i;
+			}
+		}
+	}
+
+	/**
+	 * Fill the resolution order with every element after the elements it is anchored to,
+	 * dropping any anchor which would form a cycle
+	 */
+	private void orderByAnchors()
+	{
+		int count = order.length;
+		int[] state = new int[count];
+		int[] stack = new int[count];
+		int ordered = 0;
+		for (int root = 0; root < count; root++)
+		{
+			if (state[root] != UNVISITED)
+			{
+				continue;
+			}
+			int depth = 0;
+			stack[depth++] = root;
+			state[root] = VISITING;
+			while (depth > 0)
+			{
+				int element = stack[depth - 1];
+				int next = nextUnordered(element, state);
+				if (next >= 0)
+				{
+					state[next] = VISITING;
+					stack[depth++] = next;
+				}
+				else
+				{
+					state[element] = ORDERED;
+					order[ordered++] = element;
+					depth--;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Find an element which the provided element is anchored to and which hasn't been
+	 * visited, dropping anchors to elements being visited, which would form a cycle
+	 *
+	 * @return The element to visit next, or -1 if every anchor is ordered
+	 */
+	private int nextUnordered(int element, int[] state)
+	{
+		int target = horizontalTargets[element];
+		if (target >= 0 && state[target] != ORDERED)
+		{
+			if (state[target] == UNVISITED)
+			{
+				return target;
+			}
+			horizontalAnchors[element] = null;
+			horizontalTargets[element] = -1;
+		}
+		target = verticalTargets[element];
+		if (target >= 0 && state[target] != ORDERED)
+		{
+			if (state[target] == UNVISITED)
+			{
+				return target;
+			}
+			verticalAnchors[element] = null;
+			verticalTargets[element] = -1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Get the pixel bounds of every element at the provided panel size
+	 *
+	 * @param panelWidth Width of the panel in pixels
+	 * @param panelHeight Height of the panel in pixels
+	 * @return The x, y, width and height of each element at index * 4, which must not be modified
+	 */
+	synchronized int[] solve(int panelWidth, int panelHeight)
+	{
+		for (int i = 0; i < MAX_CACHED_SIZES; i++)
+		{
+			if (cachedBounds[i] != null && cachedWidths[i] == panelWidth && cachedHeights[i] == panelHeight)
+			{
+				int[] bounds = cachedBounds[i];
+				moveToFront(i, panelWidth, panelHeight, bounds);
+				return bounds;
+			}
+		}
+		int[] bounds = resolve(panelWidth, panelHeight);
+		moveToFront(MAX_CACHED_SIZES - 1, panelWidth, panelHeight, bounds);
+		return bounds;
+	}
+
+	/**
+	 * Place a size's bounds first in the cache, shifting down the sizes ahead of the provided slot
+	 */
+	private void moveToFront(int slot, int panelWidth, int panelHeight, int[] bounds)
+	{
+		System.arraycopy(cachedWidths, 0, cachedWidths, 1, slot);
+		System.arraycopy(cachedHeights, 0, cachedHeights, 1, slot);
+		System.arraycopy(cachedBounds, 0, cachedBounds, 1, slot);
+		cachedWidths[0] = panelWidth;
+		cachedHeights[0] = panelHeight;
+		cachedBounds[0] = bounds;
+	}
+
+	/**
+	 * Resolve every element's bounds in one pass over the resolution order
+	 */
+	private int[] resolve(int panelWidth, int panelHeight)
+	{
+		int[] bounds = new int[order.length * 4];
+		for (int i = 0; i < order.length; i++)
+		{
+			int element = order[i];
+			int offset = element * 4;
+			LayoutConstraints elementConstraints = constraints[element];
+			if (elementConstraints == null)
+			{
+				bounds[offset] = (int)(panelWidth * elements.getPosX(element));
+				bounds[offset + 1] = (int)(panelHeight * elements.getPosY(element));
+				bounds[offset + 2] = (int)(panelWidth * elements.getWidth(element));
+				bounds[offset + 3] = (int)(panelHeight * elements.getHeight(element));
+				continue;
+			}
+
+			int width = (int)clamp(length(elementConstraints, LayoutConstraints.PIXEL_WIDTH, elements.getWidth(element), panelWidth),
+			                       elementConstraints.getMinWidth(), elementConstraints.getMaxWidth());
+			int height = (int)clamp(length(elementConstraints, LayoutConstraints.PIXEL_HEIGHT, elements.getHeight(element), panelHeight),
+			                        elementConstraints.getMinHeight(), elementConstraints.getMaxHeight());
+			int gapX = (int)length(elementConstraints, LayoutConstraints.PIXEL_POS_X, elements.getPosX(element), panelWidth);
+			int gapY = (int)length(elementConstraints, LayoutConstraints.PIXEL_POS_Y, elements.getPosY(element), panelHeight);
+
+			int target = horizontalTargets[element];
+			LayoutConstraints.Anchor anchor = horizontalAnchors[element];
+			if (anchor == LayoutConstraints.Anchor.RIGHT_OF)
+			{
+				bounds[offset] = (target >= 0 ? bounds[target * 4] + bounds[target * 4 + 2] : 0) + gapX;
+			}
+			else if (anchor == LayoutConstraints.Anchor.LEFT_OF)
+			{
+				bounds[offset] = (target >= 0 ? bounds[target * 4] : panelWidth) - gapX - width;
+			}
+			else
+			{
+				bounds[offset] = gapX;
+			}
+
+			target = verticalTargets[element];
+			anchor = verticalAnchors[element];
+			if (anchor == LayoutConstraints.Anchor.BELOW)
+			{
+				bounds[offset + 1] = (target >= 0 ? bounds[target * 4 + 1] + bounds[target * 4 + 3] : 0) + gapY;
+			}
+			else if (anchor == LayoutConstraints.Anchor.ABOVE)
+			{
+				bounds[offset + 1] = (target >= 0 ? bounds[target * 4 + 1] : panelHeight) - gapY - height;
+			}
+			else
+			{
+				bounds[offset + 1] = gapY;
+			}
+			bounds[offset + 2] = width;
+			bounds[offset + 3] = height;
+		}
+		return bounds;
+	}
+
+	/**
+	 * Convert a position or size to pixels
+	 */
+	private static double length(LayoutConstraints constraints, int unit, double value, int panelLength)
+	{
+		return constraints.isPixels(unit) ? value : (int)(panelLength * value);
+	}
+
+	/**
+	 * Limit a size to a range, the minimum winning over the maximum
+	 */
+	private static double clamp(double value, double min, double max)
+	{
+		return Math.max(min, Math.min(max, value));
+	}
+}
@@ -0,0 +1,150 @@
+package com.theopeneffect.flexml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a layout description file and, each time it is saved, reads it again
+ * and reports what changed to a LayoutChangeListener.
+ *
+ * Each save is read as leniently as the layout was first loaded, so malformed
+ * values are reported with their line and column and skipped while the rest of
+ * the layout still reaches the listener. Saves which can't be read at all are
+ * reported and otherwise ignored.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+public class LayoutWatcher implements Runnable
+{
+	// How long to wait for a burst of writes to the file to finish before reading it
+	private static final long SETTLE_MILLISECONDS = 50;
+
+	// The file being watched
+	private final File layoutFile;
+
+	// Notified of each change
+	private final LayoutChangeListener listener;
+
+	// Watches the directory containing the file
+	private final WatchService watchService;
+
+	// The most recently read version of the layout
+	private LayoutDescription currentLayout;
+
+	/**
+	 * Start watching a layout file on a background thread
+	 *
+	 * @param layoutFile The file to watch
+	 * @param currentLayout The layout as it was last read from the file
+	 * @param listener Listener to notify of changes
+	 * @throws IOException If the file's directory can't be watched
+	 */
+	public LayoutWatcher(File layoutFile, LayoutDescription currentLayout, LayoutChangeListener listener) throws IOException
+	{
+		this.layoutFile = layoutFile.getAbsoluteFile();
+		this.currentLayout = currentLayout;
+		this.listener = listener;
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.layoutFile.getParentFile().toPath().register(watchService,
+				StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+		Thread thread = new Thread(this, "FlexML layout watcher: " + layoutFile.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stop watching the file
+	 */
+	public void close()
+	{
+		try
+		{
+			watchService.close();
+		} catch (IOException e) { e.printStackTrace(); }
+	}
+
+	/**
+	 * Wait for changes to the file until closed
+	 */
+	@Override
+	public void run()
+	{
+		Path fileName = layoutFile.toPath().getFileName();
+		try
+		{
+			while (true)
+			{
+				WatchKey key = watchService.take();
+				boolean changed = false;
+
+				// Editors often save in several writes, so collect everything arriving shortly after
+				while (key != null)
+				{
+					for (WatchEvent<?> event : key.pollEvents())
+					{
+						if (fileName.equals(event.context()))
+						{
+							changed = true;
+						}
+					}
+					key.reset();
+					key = watchService.poll(SETTLE_MILLISECONDS, TimeUnit.MILLISECONDS);
+				}
+
+				if (changed)
+				{
+					reload();
+				}
+			}
+		}
+		catch (InterruptedException e) { /* Stop watching */ }
+		catch (ClosedWatchServiceException e) { /* Stop watching */ }
+	}
+
+	/**
+	 * Read the file again, reporting and skipping malformed values as the initial
+	 * load does, and report any differences
+	 */
+	private void reload()
+	{
+		long loadStart = System.nanoTime();
+		ElementTable elements = new ElementTable();
+		try
+		{
+			Reader reader = new InputStreamReader(new FileInputStream(layoutFile));
+			try
+			{
+				new LayoutParser(reader, false).parse(elements);
+			}
+			finally
+			{
+				reader.close();
+			}
+		} catch (Exception e)
+		{
+			System.err.println(layoutFile + ": " + e.getMessage());
+			return;
+		}
+
+		LayoutDescription newLayout = new LayoutDescription(elements, System.nanoTime() - loadStart, layoutFile);
+		LayoutDiff diff = new LayoutDiff(currentLayout, newLayout);
+		currentLayout = newLayout;
+		if (!diff.isEmpty())
+		{
+			listener.layoutChanged(newLayout, diff);
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Supplies the rows shown by a FlexibleList. Rows are only requested while they
+ * are visible, so a data source can be backed by anything which can be indexed,
+ * such as a database cursor or a file of records, without loading every row.
+ * 
+ * @author Maxwell Sanchez
+ *
+ * @param <T> Type of each row
+ */
+public interface ListDataSource<T>
+{
+	/**
+	 * Get the number of rows
+	 * 
+	 * @return The number of rows
+	 */
+	public int getRowCount();
+	
+	/**
+	 * Get a row
+	 * 
+	 * @param index Index of the row, from 0 to one less than the row count
+	 * @return The row
+	 */
+	public T getRow(int index);
+}
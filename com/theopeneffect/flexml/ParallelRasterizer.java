@@ -0,0 +1,275 @@
+package com.theopeneffect.flexml;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Paints the ConcurrentRenderables among a range of RenderList entries into
+ * offscreen tiles on a fork-join pool shared by every RenderPanel, so they can be
+ * drawn over the panel in zScore order by the painting thread. Tile images are
+ * kept and reused from frame to frame.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+class ParallelRasterizer
+{
+	// Fewest ConcurrentRenderables in the area being painted worth handing to the pool
+	private static final int MIN_PARALLEL_ENTRIES = 2;
+
+	// Most tile images kept for reuse between frames
+	private static final int MAX_SPARE_TILES = 16;
+
+	// Transforms a tile can be drawn back through pixel for pixel
+	private static final int SCALE_AND_TRANSLATION = AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE | AffineTransform.TYPE_GENERAL_SCALE;
+
+	// Pool shared by every RenderPanel, created on first use
+	private static ForkJoinPool pool;
+
+	// Tile images no longer in use
+	private final ArrayList<BufferedImage> spareImages = new ArrayList<BufferedImage>();
+
+	/**
+	 * Paint the ConcurrentRenderables among a range of entries into tiles, in parallel
+	 *
+	 * @param graphics Graphics2D the tiles will be drawn with, whose transform and rendering hints the tiles match
+	 * @param entries Entries sorted back-to-front
+	 * @param bounds Resolved bounds of the entries
+	 * @param start Index of the first entry
+	 * @param end Index following the last entry
+	 * @param clip Area being painted, or null for everything
+	 * @param metrics Listener to report each Renderable's paint time to, or null
+	 * @return The tile of each entry, indexed from start, null for entries to be painted directly; or null if none are worth painting in parallel
+	 */
+	Tile[] rasterize(Graphics2D graphics, RenderEntry[] entries, HitTestGrid bounds, int start, int end, Rectangle clip, RenderMetricsListener metrics)
+	{
+		// Only a scale and translation can be matched by a tile at device resolution
+		AffineTransform transform = graphics.getTransform();
+		double scaleX = transform.getScaleX();
+		double scaleY = transform.getScaleY();
+		if ((transform.getType() & ~SCALE_AND_TRANSLATION) != 0 || scaleX <= 0 || scaleY <= 0)
+		{
+			return null;
+		}
+
+		Tile[] tiles = new Tile[end - start];
+		int[] candidates = new int[end - start];
+		int candidateCount = 0;
+		for (int i = start; i < end; i++)
+		{
+			if (entries[i].getRenderable() instanceof ConcurrentRenderable && bounds.getOpacity(i) > 0f)
+			{
+				// Bounds include their right and bottom edges
+				Rectangle area = new Rectangle(bounds.getX(i), bounds.getY(i), bounds.getWidth(i) + 1, bounds.getHeight(i) + 1);
+				if (clip != null)
+				{
+					area = area.intersection(clip);
+				}
+				if (!area.isEmpty())
+				{
+					tiles[i - start] = new Tile(area, scaleX, scaleY);
+					candidates[candidateCount++] = i;
+				}
+			}
+		}
+		if (candidateCount < MIN_PARALLEL_ENTRIES)
+		{
+			return null;
+		}
+
+		getPool().invoke(new TileTask(graphics.getRenderingHints(), entries, bounds, start, tiles, candidates, 0, candidateCount, metrics));
+		return tiles;
+	}
+
+	/**
+	 * Keep the images of a frame's tiles for the next frame
+	 *
+	 * @param tiles The tiles returned by rasterize
+	 */
+	void release(Tile[] tiles)
+	{
+		synchronized (spareImages)
+		{
+			for (int i = 0; i < tiles.length; i++)
+			{
+				if (tiles[i] != null && tiles[i].image != null && spareImages.size() < MAX_SPARE_TILES)
+				{
+					spareImages.add(tiles[i].image);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Take a spare image at least as large as the provided size, or create one
+	 *
+	 * @param width Width needed in pixels
+	 * @param height Height needed in pixels
+	 * @return An image whose contents are undefined
+	 */
+	private BufferedImage acquireImage(int width, int height)
+	{
+		synchronized (spareImages)
+		{
+			// Choose the smallest spare which fits
+			int best = -1;
+			long bestArea = Long.MAX_VALUE;
+			for (int i = 0; i < spareImages.size(); i++)
+			{
+				BufferedImage image = spareImages.get(i);
+				long area = (long)image.getWidth() * image.getHeight();
+				if (image.getWidth() >= width && image.getHeight() >= height && area < bestArea)
+				{
+					best = i;
+					bestArea = area;
+				}
+			}
+			if (best >= 0)
+			{
+				return spareImages.remove(best);
+			}
+		}
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+	}
+
+	/**
+	 * Get the pool shared by every RenderPanel, creating it if needed
+	 *
+	 * @return The shared ForkJoinPool
+	 */
+	private static synchronized ForkJoinPool getPool()
+	{
+		if (pool == null)
+		{
+			pool = new ForkJoinPool();
+		}
+		return pool;
+	}
+
+	/**
+	 * One entry's offscreen rendering, covering part of the panel at device resolution
+	 */
+	class Tile
+	{
+		// Area of the panel the tile covers
+		private final Rectangle area;
+
+		// Device pixels per panel pixel
+		private final double scaleX;
+		private final double scaleY;
+
+		// Holds the rendering in its top-left corner, once painted
+		private BufferedImage image;
+
+		Tile(Rectangle area, double scaleX, double scaleY)
+		{
+			this.area = area;
+			this.scaleX = scaleX;
+			this.scaleY = scaleY;
+		}
+
+		/**
+		 * Paint an entry into this tile
+		 */
+		void paint(Renderable renderable, int x, int y, int width, int height, RenderingHints hints, RenderMetricsListener metrics)
+		{
+			int pixelWidth = (int)Math.ceil(area.width * scaleX);
+			int pixelHeight = (int)Math.ceil(area.height * scaleY);
+			image = acquireImage(pixelWidth, pixelHeight);
+			Graphics2D tileGraphics = image.createGraphics();
+			try
+			{
+				tileGraphics.setRenderingHints(hints);
+				tileGraphics.setComposite(AlphaComposite.Clear);
+				tileGraphics.fillRect(0, 0, pixelWidth, pixelHeight);
+				tileGraphics.setComposite(AlphaComposite.SrcOver);
+				tileGraphics.clipRect(0, 0, pixelWidth, pixelHeight);
+				tileGraphics.scale(scaleX, scaleY);
+				tileGraphics.translate(-area.x, -area.y);
+				tileGraphics.clip(area);
+				if (metrics == null)
+				{
+					renderable.paint(tileGraphics, x, y, width, height);
+				}
+				else
+				{
+					long renderableStart = System.nanoTime();
+					renderable.paint(tileGraphics, x, y, width, height);
+					metrics.renderablePainted(renderable, System.nanoTime() - renderableStart);
+				}
+			}
+			finally
+			{
+				tileGraphics.dispose();
+			}
+		}
+
+		/**
+		 * Draw the tile in place over the panel
+		 *
+		 * @param graphics Graphics2D painting the panel
+		 */
+		void draw(Graphics2D graphics)
+		{
+			int pixelWidth = (int)Math.ceil(area.width * scaleX);
+			int pixelHeight = (int)Math.ceil(area.height * scaleY);
+			AffineTransform placement = new AffineTransform(1 / scaleX, 0, 0, 1 / scaleY, area.x, area.y);
+			graphics.drawImage(image.getSubimage(0, 0, pixelWidth, pixelHeight), placement, null);
+		}
+	}
+
+	/**
+	 * Paints a range of the candidate entries, splitting it between threads until one entry is left
+	 */
+	private static class TileTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 0xFEED;
+
+		private final RenderingHints hints;
+		private final RenderEntry[] entries;
+		private final HitTestGrid bounds;
+		private final int start;
+		private final Tile[] tiles;
+		private final int[] candidates;
+		private final int from;
+		private final int to;
+		private final RenderMetricsListener metrics;
+
+		TileTask(RenderingHints hints, RenderEntry[] entries, HitTestGrid bounds, int start, Tile[] tiles, int[] candidates, int from, int to, RenderMetricsListener metrics)
+		{
+			this.hints = hints;
+			this.entries = entries;
+			this.bounds = bounds;
+			this.start = start;
+			this.tiles = tiles;
+			this.candidates = candidates;
+			this.from = from;
+			this.to = to;
+			this.metrics = metrics;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from == 1)
+			{
+				int entry = candidates[from];
+				tiles[entry - start].paint(entries[entry].getRenderable(), bounds.getX(entry), bounds.getY(entry),
+				                           bounds.getWidth(entry), bounds.getHeight(entry), hints, metrics);
+			}
+			else
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new TileTask(hints, entries, bounds, start, tiles, candidates, from, middle, metrics),
+				          new TileTask(hints, entries, bounds, start, tiles, candidates, middle, to, metrics));
+			}
+		}
+	}
+}
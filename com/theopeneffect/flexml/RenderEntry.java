@@ -0,0 +1,65 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Binds a Renderable to the index of its element in the current layout, so
+ * painting and event handling can read its properties without looking its
+ * identifier up again.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+class RenderEntry
+{
+	// The Renderable to draw
+	private final Renderable renderable;
+
+	// Index of the Renderable's element in the LayoutDescription
+	private final int elementIndex;
+
+	// The element's zScore, kept here since entries are sorted and grouped by it
+	private final int zScore;
+
+	/**
+	 * Construct a RenderEntry for the provided Renderable and its element
+	 *
+	 * @param renderable The Renderable to draw
+	 * @param elementIndex Index of its element in the LayoutDescription
+	 * @param zScore The element's zScore
+	 */
+	RenderEntry(Renderable renderable, int elementIndex, int zScore)
+	{
+		this.renderable = renderable;
+		this.elementIndex = elementIndex;
+		this.zScore = zScore;
+	}
+
+	/**
+	 * Get the Renderable this entry draws
+	 *
+	 * @return The Renderable
+	 */
+	Renderable getRenderable()
+	{
+		return renderable;
+	}
+
+	/**
+	 * Get the index of this entry's element in the LayoutDescription
+	 *
+	 * @return The element index
+	 */
+	int getElementIndex()
+	{
+		return elementIndex;
+	}
+
+	/**
+	 * Get the zScore of this entry's element
+	 *
+	 * @return The zScore
+	 */
+	int getZScore()
+	{
+		return zScore;
+	}
+}
@@ -0,0 +1,224 @@
+package com.theopeneffect.flexml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * A precomputed, z-ordered list of everything a RenderPanel draws for one
+ * combination of renderables and LayoutDescription, with each Renderable bound
+ * to the index of its element in the layout.
+ *
+ * Built once whenever the renderables or the layout change, so a frame is a
+ * single walk over the entries instead of one pass per zScore. A RenderList is
+ * never modified once built, so any thread can use one while another thread
+ * builds its replacement.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+class RenderList
+{
+	// Orders entries back-to-front; Arrays.sort is stable, so equal zScores keep insertion order
+	private static final Comparator<RenderEntry> Z_ORDER = new Comparator<RenderEntry>()
+	{
+		@Override
+		public int compare(RenderEntry first, RenderEntry second)
+		{
+			int firstZ = first.getZScore();
+			int secondZ = second.getZScore();
+			return firstZ < secondZ ? -1 : (firstZ == secondZ ? 0 : 1);
+		}
+	};
+
+	// The snapshot of renderables this list was built from
+	private final Renderable[] renderables;
+
+	// The layout the entries' element indices refer to
+	private final LayoutDescription layoutDescription;
+	
+	// Entries to draw, sorted by ascending zScore
+	private final RenderEntry[] entries;
+
+	// Renderables which have no element in the layout
+	private final Renderable[] offScreen;
+
+	// Entries' renderables which are Animated, in drawing order
+	private final Animated[] animated;
+
+	// The highest zScore of any entry, or -1 if there are none
+	private final int highestZScore;
+	
+	// Position of each Renderable's entry in the sorted entries
+	private final IdentityHashMap<Renderable, Integer> entryIndices;
+
+	// Positions of the entries drawn for each identifier in the sorted entries
+	private final HashMap<String, int[]> identifierEntries;
+
+	/**
+	 * Build a RenderList for the provided renderables laid out by the provided LayoutDescription
+	 *
+	 * @param renderables Snapshot of all renderables registered with the RenderPanel, which must not be modified
+	 * @param layoutDescription The layout to resolve properties from
+	 */
+	RenderList(Renderable[] renderables, LayoutDescription layoutDescription)
+	{
+		this.renderables = renderables;
+		this.layoutDescription = layoutDescription;
+		ArrayList<RenderEntry> onScreen = new ArrayList<RenderEntry>(renderables.length);
+		ArrayList<Renderable> missing = new ArrayList<Renderable>();
+		for (int i = 0; i < renderables.length; i++)
+		{
+			Renderable renderable = renderables[i];
+			if (renderable != null)
+			{
+				int elementIndex = layoutDescription.getElementIndex(renderable.getIdentifier());
+				if (elementIndex >= 0)
+				{
+					onScreen.add(new RenderEntry(renderable, elementIndex, layoutDescription.getZScore(elementIndex)));
+				}
+				else
+				{
+					missing.add(renderable);
+				}
+			}
+		}
+
+		entries = onScreen.toArray(new RenderEntry[onScreen.size()]);
+		Arrays.sort(entries, Z_ORDER);
+		offScreen = missing.toArray(new Renderable[missing.size()]);
+		
+		ArrayList<Animated> animatedRenderables = new ArrayList<Animated>();
+		for (int i = 0; i < entries.length; i++)
+		{
+			if (entries[i].getRenderable() instanceof Animated)
+			{
+				animatedRenderables.add((Animated)entries[i].getRenderable());
+			}
+		}
+		animated = animatedRenderables.toArray(new Animated[animatedRenderables.size()]);
+		
+		highestZScore = entries.length > 0 ? entries[entries.length - 1].getZScore() : -1;
+		
+		entryIndices = new IdentityHashMap<Renderable, Integer>(entries.length * 2);
+		for (int i = 0; i < entries.length; i++)
+		{
+			entryIndices.put(entries[i].getRenderable(), i);
+		}
+		
+		// Several renderables may share an identifier, and so an element
+		identifierEntries = new HashMap<String, int[]>(entries.length * 2);
+		for (int i = 0; i < entries.length; i++)
+		{
+			String identifier = entries[i].getRenderable().getIdentifier();
+			int[] existing = identifierEntries.get(identifier);
+			if (existing == null)
+			{
+				identifierEntries.put(identifier, new int[] { i });
+			}
+			else
+			{
+				int[] grown = Arrays.copyOf(existing, existing.length + 1);
+				grown[existing.length] = i;
+				identifierEntries.put(identifier, grown);
+			}
+		}
+	}
+
+	/**
+	 * Check whether this list was built from the provided snapshot of renderables and layout
+	 *
+	 * @param renderables The current snapshot of renderables
+	 * @param layoutDescription The current layout
+	 * @return Whether the list can be used as-is
+	 */
+	boolean matches(Renderable[] renderables, LayoutDescription layoutDescription)
+	{
+		return this.renderables == renderables && this.layoutDescription == layoutDescription;
+	}
+
+	/**
+	 * Get the snapshot of renderables this list was built from. The returned array must not be modified.
+	 *
+	 * @return Every renderable registered with the RenderPanel when the list was built
+	 */
+	Renderable[] getRenderables()
+	{
+		return renderables;
+	}
+
+	/**
+	 * Get the layout this list was built from
+	 *
+	 * @return The LayoutDescription the entries' element indices refer to
+	 */
+	LayoutDescription getLayoutDescription()
+	{
+		return layoutDescription;
+	}
+
+	/**
+	 * Get the entries to draw, sorted back-to-front. The returned array must not be modified.
+	 *
+	 * @return Entries sorted by ascending zScore
+	 */
+	RenderEntry[] getEntries()
+	{
+		return entries;
+	}
+
+	/**
+	 * Get the renderables which the layout doesn't place. The returned array must not be modified.
+	 *
+	 * @return Renderables without an element in the layout
+	 */
+	Renderable[] getOffScreen()
+	{
+		return offScreen;
+	}
+
+	/**
+	 * Get the renderables on the screen which are Animated. The returned array must not be modified.
+	 *
+	 * @return Animated renderables with an element in the layout
+	 */
+	Animated[] getAnimated()
+	{
+		return animated;
+	}
+
+	/**
+	 * Find the entry drawing the provided Renderable
+	 *
+	 * @param renderable The Renderable to look for
+	 * @return Index of its entry in getEntries(), or -1 if it isn't drawn
+	 */
+	int indexOf(Renderable renderable)
+	{
+		Integer index = entryIndices.get(renderable);
+		return index != null ? index : -1;
+	}
+
+	/**
+	 * Find the entries drawing renderables with the provided identifier. The returned array must not be modified.
+	 *
+	 * @param identifier Identifier of the renderables
+	 * @return Indices of their entries in getEntries(), or null if none are drawn
+	 */
+	int[] getEntryIndices(String identifier)
+	{
+		return identifierEntries.get(identifier);
+	}
+
+	/**
+	 * Get the highest zScore of any entry in this list
+	 *
+	 * @return The highest zScore, or -1 if the list is empty
+	 */
+	int getHighestZScore()
+	{
+		return highestZScore;
+	}
+}
@@ -0,0 +1,217 @@
+package com.theopeneffect.flexml;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Collects the measurements reported by a RenderPanel into histograms and totals,
+ * which can be read directly or published as a JMX MBean.
+ * 
+ * Usage: panel.setMetricsListener(new RenderMetrics()).
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public class RenderMetrics implements RenderMetricsListener, RenderMetricsMXBean
+{
+	private final LatencyHistogram frameTimes = new LatencyHistogram();
+	private final LatencyHistogram hitTestTimes = new LatencyHistogram();
+	
+	// Paint times of each Renderable, keyed by identifier
+	private final HashMap<String, LatencyHistogram> paintTimes = new HashMap<String, LatencyHistogram>();
+	
+	private volatile long lastFrameNanos = 0;
+	private volatile long lastLayoutLoadNanos = 0;
+	private long renderablesDrawn = 0;
+	private long renderablesSkipped = 0;
+	
+	// Name registered with the platform MBean server, if any
+	private ObjectName registeredName;
+	
+	@Override
+	public void frameRendered(long paintNanos, int renderablesDrawn, int renderablesSkipped)
+	{
+		frameTimes.record(paintNanos);
+		lastFrameNanos = paintNanos;
+		synchronized (this)
+		{
+			this.renderablesDrawn += renderablesDrawn;
+			this.renderablesSkipped += renderablesSkipped;
+		}
+	}
+	
+	@Override
+	public void renderablePainted(Renderable renderable, long paintNanos)
+	{
+		getPaintTimes(renderable.getIdentifier()).record(paintNanos);
+	}
+	
+	@Override
+	public void hitTested(long hitTestNanos)
+	{
+		hitTestTimes.record(hitTestNanos);
+	}
+	
+	@Override
+	public void layoutLoaded(LayoutDescription layoutDescription, long loadNanos)
+	{
+		lastLayoutLoadNanos = loadNanos;
+	}
+	
+	/**
+	 * Get the histogram of frame paint times
+	 * 
+	 * @return Frame paint times
+	 */
+	public LatencyHistogram getFrameTimes()
+	{
+		return frameTimes;
+	}
+	
+	/**
+	 * Get the histogram of hit-test times
+	 * 
+	 * @return Hit-test times
+	 */
+	public LatencyHistogram getHitTestTimes()
+	{
+		return hitTestTimes;
+	}
+	
+	/**
+	 * Get the histogram of paint times for the Renderables with the provided identifier
+	 * 
+	 * @param identifier The identifier of the Renderable
+	 * @return Paint times of the Renderable
+	 */
+	public synchronized LatencyHistogram getPaintTimes(String identifier)
+	{
+		LatencyHistogram histogram = paintTimes.get(identifier);
+		if (histogram == null)
+		{
+			histogram = new LatencyHistogram();
+			paintTimes.put(identifier, histogram);
+		}
+		return histogram;
+	}
+	
+	/**
+	 * Publish these metrics through the platform MBean server
+	 * 
+	 * @param name Name to register under, such as "com.theopeneffect.flexml:type=RenderMetrics,name=main"
+	 * @throws JMException If the name is invalid or already registered
+	 */
+	public synchronized void registerMBean(String name) throws JMException
+	{
+		ObjectName objectName = new ObjectName(name);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		registeredName = objectName;
+	}
+	
+	/**
+	 * Stop publishing these metrics through the platform MBean server
+	 * 
+	 * @throws JMException If unregistering fails
+	 */
+	public synchronized void unregisterMBean() throws JMException
+	{
+		if (registeredName != null)
+		{
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+			registeredName = null;
+		}
+	}
+	
+	@Override
+	public long getFrameCount()
+	{
+		return frameTimes.getCount();
+	}
+	
+	@Override
+	public long getLastFrameNanos()
+	{
+		return lastFrameNanos;
+	}
+	
+	@Override
+	public long getMeanFrameNanos()
+	{
+		return frameTimes.getMeanNanos();
+	}
+	
+	@Override
+	public long getMaxFrameNanos()
+	{
+		return frameTimes.getMaxNanos();
+	}
+	
+	@Override
+	public long getFrame99thPercentileNanos()
+	{
+		return frameTimes.getPercentileNanos(99);
+	}
+	
+	@Override
+	public synchronized long getRenderablesDrawn()
+	{
+		return renderablesDrawn;
+	}
+	
+	@Override
+	public synchronized long getRenderablesSkipped()
+	{
+		return renderablesSkipped;
+	}
+	
+	@Override
+	public long getHitTestCount()
+	{
+		return hitTestTimes.getCount();
+	}
+	
+	@Override
+	public long getMeanHitTestNanos()
+	{
+		return hitTestTimes.getMeanNanos();
+	}
+	
+	@Override
+	public long getMaxHitTestNanos()
+	{
+		return hitTestTimes.getMaxNanos();
+	}
+	
+	@Override
+	public long getLastLayoutLoadNanos()
+	{
+		return lastLayoutLoadNanos;
+	}
+	
+	@Override
+	public synchronized Map<String, Long> getMeanPaintNanosByIdentifier()
+	{
+		HashMap<String, Long> means = new HashMap<String, Long>();
+		for (Map.Entry<String, LatencyHistogram> entry : paintTimes.entrySet())
+		{
+			means.put(entry.getKey(), entry.getValue().getMeanNanos());
+		}
+		return means;
+	}
+	
+	@Override
+	public synchronized void reset()
+	{
+		frameTimes.reset();
+		hitTestTimes.reset();
+		paintTimes.clear();
+		lastFrameNanos = 0;
+		lastLayoutLoadNanos = 0;
+		renderablesDrawn = 0;
+		renderablesSkipped = 0;
+	}
+}
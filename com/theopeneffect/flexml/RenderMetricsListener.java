@@ -0,0 +1,44 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Receives timing measurements from a RenderPanel's hot paths. Measurements are
+ * only taken while a listener is set, and are delivered on the thread doing the
+ * measured work, so implementations should be quick.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public interface RenderMetricsListener
+{
+	/**
+	 * Called after each frame is painted
+	 * 
+	 * @param paintNanos Time taken to paint the frame, in nanoseconds
+	 * @param renderablesDrawn Number of renderables painted during the frame
+	 * @param renderablesSkipped Number of renderables not painted because they were outside the repainted area or cached
+	 */
+	public void frameRendered(long paintNanos, int renderablesDrawn, int renderablesSkipped);
+	
+	/**
+	 * Called after each individual Renderable is painted
+	 * 
+	 * @param renderable The Renderable which was painted
+	 * @param paintNanos Time its paint method took, in nanoseconds
+	 */
+	public void renderablePainted(Renderable renderable, long paintNanos);
+	
+	/**
+	 * Called after each mouse event has been matched to the Renderable under the pointer
+	 * 
+	 * @param hitTestNanos Time taken to find the Renderable, in nanoseconds
+	 */
+	public void hitTested(long hitTestNanos);
+	
+	/**
+	 * Called when a layout is put in use, with the time it took to read
+	 * 
+	 * @param layoutDescription The layout
+	 * @param loadNanos Time taken to parse or open the layout, in nanoseconds
+	 */
+	public void layoutLoaded(LayoutDescription layoutDescription, long loadNanos);
+}
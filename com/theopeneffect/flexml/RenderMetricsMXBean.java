@@ -0,0 +1,101 @@
+package com.theopeneffect.flexml;
+
+import java.util.Map;
+
+/**
+ * Management interface publishing a RenderPanel's metrics through JMX.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public interface RenderMetricsMXBean
+{
+	/**
+	 * Get the number of frames painted
+	 * 
+	 * @return The number of frames
+	 */
+	public long getFrameCount();
+	
+	/**
+	 * Get the paint time of the most recent frame
+	 * 
+	 * @return Paint time in nanoseconds
+	 */
+	public long getLastFrameNanos();
+	
+	/**
+	 * Get the mean paint time of a frame
+	 * 
+	 * @return Mean paint time in nanoseconds
+	 */
+	public long getMeanFrameNanos();
+	
+	/**
+	 * Get the longest paint time of a frame
+	 * 
+	 * @return Longest paint time in nanoseconds
+	 */
+	public long getMaxFrameNanos();
+	
+	/**
+	 * Get the paint time which 99% of frames are painted within
+	 * 
+	 * @return 99th percentile paint time in nanoseconds
+	 */
+	public long getFrame99thPercentileNanos();
+	
+	/**
+	 * Get the number of renderables painted across every frame
+	 * 
+	 * @return Total renderables painted
+	 */
+	public long getRenderablesDrawn();
+	
+	/**
+	 * Get the number of renderables skipped across every frame, because they were outside the repainted area or cached
+	 * 
+	 * @return Total renderables skipped
+	 */
+	public long getRenderablesSkipped();
+	
+	/**
+	 * Get the number of mouse events hit-tested
+	 * 
+	 * @return The number of hit tests
+	 */
+	public long getHitTestCount();
+	
+	/**
+	 * Get the mean time taken to hit-test a mouse event
+	 * 
+	 * @return Mean hit-test time in nanoseconds
+	 */
+	public long getMeanHitTestNanos();
+	
+	/**
+	 * Get the longest time taken to hit-test a mouse event
+	 * 
+	 * @return Longest hit-test time in nanoseconds
+	 */
+	public long getMaxHitTestNanos();
+	
+	/**
+	 * Get the time taken to parse or open the most recently loaded layout
+	 * 
+	 * @return Load time in nanoseconds
+	 */
+	public long getLastLayoutLoadNanos();
+	
+	/**
+	 * Get the mean paint time of each Renderable
+	 * 
+	 * @return Mean paint time of each Renderable in nanoseconds, keyed by identifier
+	 */
+	public Map<String, Long> getMeanPaintNanosByIdentifier();
+	
+	/**
+	 * Discard all measurements
+	 */
+	public void reset();
+}
@@ -1,16 +1,22 @@
 package com.theopeneffect.flexml;
 
+import java.awt.AlphaComposite;
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
+import java.awt.Rectangle;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
-import java.util.ArrayList;
+import java.awt.event.MouseWheelEvent;
+import java.awt.event.MouseWheelListener;
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+import java.util.Iterator;
 
 /**
  * Top-level semi-flexible component to handle drawing user interfaces adhering
@@ -19,7 +25,7 @@ import java.util.ArrayList;
  * @author Maxwell Sanchez
  * 
  */
-public class RenderPanel extends Component implements MouseListener, MouseMotionListener, KeyListener
+public class RenderPanel extends Component implements MouseListener, MouseMotionListener, MouseWheelListener, KeyListener, InvalidationListener, LayoutChangeListener
 {
 	private static final long serialVersionUID = 0xFEED;
 	
@@ -27,17 +33,46 @@ public class RenderPanel extends Component implements MouseListener, MouseMotion
 	private static final int DEFAULT_WIDTH = 850;
 	private static final int DEFAULT_HEIGHT = 478;
 	
-	// The highest zScore reached during the last render
-	private int highestZScoreLastRender = 0;
+	// Holds the renderables and layout, and paints them
+	private final LayoutRenderer renderer;
 	
-	// All of the objects that can be rendered
-	private ArrayList<Renderable> renderables;
+	// Resolved pixel bounds and hit-test index for the render list at the current size, null until first needed
+	private volatile HitTestGrid hitTestGrid = null;
 	
-	// The current layout description
-	private LayoutDescription layoutDescription;
+	// Whether to composite frames from cached images of each zScore layer
+	private volatile boolean layerCaching = false;
 	
-	// The selected Renderable, if it exists
-	private Renderable selected = null;
+	// Cached layer images for the render list at the current size, null until first needed
+	private volatile LayerCache layerCache = null;
+	
+	// Receives timing measurements, null when measurements are disabled
+	private RenderMetricsListener metricsListener = null;
+	
+	// Runs tweens on the positions, sizes and opacities of elements
+	private final Animator animator = new Animator(this);
+	
+	// Tracks the focused Renderable and routes key events to it
+	private final FocusManager focusManager = new FocusManager(this);
+	
+	// Latest pointer position awaiting hover resolution, whether it is over the panel, and whether a resolution is queued
+	private final Object hoverLock = new Object();
+	private int hoverX = 0;
+	private int hoverY = 0;
+	private boolean pointerInside = false;
+	private boolean hoverPending = false;
+	
+	// The Renderable under the mouse, if any
+	private volatile Renderable hovered = null;
+	
+	// Resolves the Renderable under the mouse once per burst of mouse events, reused rather than allocated per event
+	private final Runnable hoverResolver = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			resolveHover();
+		}
+	};
 	
 	/**
 	 * Create a RenderPanel with the provided LayoutDescription, width, and height
@@ -48,12 +83,12 @@ public class RenderPanel extends Component implements MouseListener, MouseMotion
 	 */
 	public RenderPanel(LayoutDescription layoutDescription, int width, int height)
 	{
-		renderables = new ArrayList<Renderable>();
 		addMouseListener(this);
 		addMouseMotionListener(this);
+		addMouseWheelListener(this);
 		addKeyListener(this);
 		setFocusTraversalKeysEnabled(false);
-		this.layoutDescription = layoutDescription;
+		this.renderer = new LayoutRenderer(layoutDescription);
 		this.setPreferredSize(new Dimension(width, height));
 		this.setMinimumSize(new Dimension(width, height));
 	}
@@ -68,13 +103,143 @@ public class RenderPanel extends Component implements MouseListener, MouseMotion
 	}
 	
 	/**
-	 * Adds a Renderable object to the RenderPanel
+	 * Adds a Renderable object to the RenderPanel. Renderables can be added, removed
+	 * and replaced from any thread; painting and input handling carry on with the
+	 * renderables present when they started.
 	 * 
 	 * @param renderableGraphicObject Renderable to add
 	 */
 	public void add(Renderable renderableGraphicObject)
 	{
-		renderables.add(renderableGraphicObject);
+		if (renderableGraphicObject == null)
+		{
+			return;
+		}
+		renderer.add(renderableGraphicObject);
+		if (renderableGraphicObject instanceof Invalidatable)
+		{
+			((Invalidatable)renderableGraphicObject).setInvalidationListener(this);
+		}
+	}
+	
+	/**
+	 * Removes a Renderable object from the RenderPanel, repainting the area it occupied
+	 * 
+	 * @param renderableGraphicObject Renderable to remove
+	 * @return Whether the Renderable was present
+	 */
+	public boolean remove(Renderable renderableGraphicObject)
+	{
+		Rectangle area = getArea(renderableGraphicObject);
+		if (!renderer.remove(renderableGraphicObject))
+		{
+			return false;
+		}
+		
+		if (renderableGraphicObject instanceof Invalidatable)
+		{
+			((Invalidatable)renderableGraphicObject).setInvalidationListener(null);
+		}
+		if (focusManager.getFocused() == renderableGraphicObject)
+		{
+			focusManager.focus(null);
+		}
+		if (hovered == renderableGraphicObject)
+		{
+			hovered = null;
+			renderableGraphicObject.mouseAbsent();
+		}
+		if (area != null)
+		{
+			repaint(area.x, area.y, area.width, area.height);
+		}
+		return true;
+	}
+	
+	/**
+	 * Replaces a Renderable object with another in the same position in the RenderPanel,
+	 * repainting the areas both occupy. The replacement is focused if the original was.
+	 * 
+	 * @param original Renderable to remove
+	 * @param replacement Renderable to add in its place
+	 * @return Whether the original Renderable was present
+	 */
+	public boolean replace(Renderable original, Renderable replacement)
+	{
+		if (replacement == null)
+		{
+			return remove(original);
+		}
+		Rectangle area = getArea(original);
+		if (!renderer.replace(original, replacement))
+		{
+			return false;
+		}
+		
+		if (original instanceof Invalidatable)
+		{
+			((Invalidatable)original).setInvalidationListener(null);
+		}
+		if (replacement instanceof Invalidatable)
+		{
+			((Invalidatable)replacement).setInvalidationListener(this);
+		}
+		if (focusManager.getFocused() == original)
+		{
+			focusManager.focus(replacement);
+		}
+		if (hovered == original)
+		{
+			hovered = null;
+			original.mouseAbsent();
+		}
+		if (area != null)
+		{
+			repaint(area.x, area.y, area.width, area.height);
+		}
+		invalidated(replacement);
+		return true;
+	}
+	
+	/**
+	 * Get the area of the panel a Renderable currently occupies
+	 * 
+	 * @param renderable The Renderable
+	 * @return The Renderable's bounds, including their right and bottom edges, or null if it isn't drawn
+	 */
+	private Rectangle getArea(Renderable renderable)
+	{
+		RenderList renderList = getRenderList();
+		int entry = renderList.indexOf(renderable);
+		if (entry < 0)
+		{
+			return null;
+		}
+		HitTestGrid bounds = getHitTestGrid(renderList);
+		return new Rectangle(bounds.getX(entry), bounds.getY(entry), bounds.getWidth(entry) + 1, bounds.getHeight(entry) + 1);
+	}
+	
+	/**
+	 * Repaint only the area occupied by the provided Renderable. Renderables which
+	 * implement Invalidatable call this automatically when they change.
+	 * 
+	 * @param renderable The Renderable which needs to be redrawn
+	 */
+	@Override
+	public void invalidated(Renderable renderable)
+	{
+		RenderList renderList = getRenderList();
+		int entry = renderList.indexOf(renderable);
+		if (entry >= 0)
+		{
+			Rectangle region = getArea(renderable);
+			LayerCache cache = layerCache;
+			if (cache != null && cache.matches(renderList, getWidth(), getHeight()))
+			{
+				cache.markDirty(entry, region);
+			}
+			repaint(region.x, region.y, region.width, region.height);
+		}
 	}
 	
 	/**
@@ -84,8 +249,345 @@ public class RenderPanel extends Component implements MouseListener, MouseMotion
 	 */
 	public void setLayout(LayoutDescription newLayout)
 	{
-		this.layoutDescription = newLayout;
-		selected = null;
+		renderer.setLayout(newLayout);
+		focusManager.focus(null);
+		
+		RenderMetricsListener metrics = metricsListener;
+		if (metrics != null)
+		{
+			metrics.layoutLoaded(newLayout, newLayout.getLoadNanos());
+		}
+	}
+	
+	/**
+	 * Set the listener to receive frame, paint, hit-test and layout load times, or
+	 * null to stop measuring. Nothing is measured while no listener is set. The load
+	 * time of the current layout is reported immediately.
+	 * 
+	 * @param metricsListener Listener to receive measurements, such as a RenderMetrics
+	 */
+	public void setMetricsListener(RenderMetricsListener metricsListener)
+	{
+		this.metricsListener = metricsListener;
+		if (metricsListener != null)
+		{
+			LayoutDescription layout = renderer.getLayout();
+			metricsListener.layoutLoaded(layout, layout.getLoadNanos());
+		}
+	}
+	
+	/**
+	 * Apply a changed version of the current layout in place, as reported by a
+	 * LayoutWatcher. Unlike setLayout, the focused Renderable is kept unless its
+	 * element was removed, and only the areas of elements which were added, removed
+	 * or moved are repainted. The change is applied on the event dispatch thread.
+	 * 
+	 * @param newLayout The changed layout
+	 * @param diff The elements which changed
+	 */
+	@Override
+	public void layoutChanged(final LayoutDescription newLayout, final LayoutDiff diff)
+	{
+		if (!EventQueue.isDispatchThread())
+		{
+			EventQueue.invokeLater(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					layoutChanged(newLayout, diff);
+				}
+			});
+			return;
+		}
+		
+		// Repaint where affected elements were, swap the layout, then repaint where they are now
+		repaintAffectedEntries(diff);
+		renderer.setLayout(newLayout);
+		Renderable current = focusManager.getFocused();
+		if (current != null && diff.getRemoved().contains(current.getIdentifier()))
+		{
+			focusManager.focus(null);
+		}
+		repaintAffectedEntries(diff);
+		
+		RenderMetricsListener metrics = metricsListener;
+		if (metrics != null)
+		{
+			metrics.layoutLoaded(newLayout, newLayout.getLoadNanos());
+		}
+	}
+	
+	/**
+	 * Repaint the current area of every entry affected by a layout change
+	 * 
+	 * @param diff The elements which changed
+	 */
+	private void repaintAffectedEntries(LayoutDiff diff)
+	{
+		RenderList renderList = getRenderList();
+		RenderEntry[] entries = renderList.getEntries();
+		HitTestGrid bounds = getHitTestGrid(renderList);
+		for (int i = 0; i < entries.length; i++)
+		{
+			if (diff.affects(entries[i].getRenderable().getIdentifier()))
+			{
+				repaint(bounds.getX(i), bounds.getY(i), bounds.getWidth(i) + 1, bounds.getHeight(i) + 1);
+			}
+		}
+	}
+	
+	/**
+	 * Enable or disable caching each zScore layer in an offscreen image. When enabled,
+	 * a frame composites the cached layers and only redraws the layers holding
+	 * renderables which reported a change through Invalidatable, which is much cheaper
+	 * for screens where most layers are static.
+	 * 
+	 * Only enable this when every renderable which can change implements Invalidatable,
+	 * as changes which aren't reported will not appear until the cache is rebuilt by a
+	 * resize or a new layout.
+	 * 
+	 * @param layerCaching Whether to cache layers
+	 */
+	public void setLayerCaching(boolean layerCaching)
+	{
+		this.layerCaching = layerCaching;
+		layerCache = null;
+		repaint();
+	}
+	
+	/**
+	 * Enable or disable painting ConcurrentRenderables in parallel. When enabled and
+	 * at least two ConcurrentRenderables are in the area being painted, each is drawn
+	 * into its own offscreen tile on a thread pool shared by every RenderPanel, and
+	 * the tiles are drawn in zScore order with the other renderables, which are still
+	 * painted directly on the painting thread.
+	 * 
+	 * @param parallelRendering Whether to paint ConcurrentRenderables in parallel
+	 */
+	public void setParallelRendering(boolean parallelRendering)
+	{
+		renderer.setParallelRendering(parallelRendering);
+	}
+	
+	/**
+	 * Get the Animator running tweens on this panel's elements
+	 * 
+	 * @return The panel's Animator
+	 */
+	public Animator getAnimator()
+	{
+		return animator;
+	}
+	
+	/**
+	 * Get the FocusManager tracking which Renderable receives keyboard input
+	 * 
+	 * @return The panel's FocusManager
+	 */
+	public FocusManager getFocusManager()
+	{
+		return focusManager;
+	}
+	
+	/**
+	 * Get the current properties of an element, including any values being
+	 * animated by the panel's Animator. While an element is animated, its position
+	 * and size are given as fractions of the panel's current size, with its
+	 * constraints already applied.
+	 * 
+	 * @param identifier Identifier of the element
+	 * @return The element's current properties, or null if the layout has no such element
+	 */
+	public GraphicProperties getCurrentProperties(String identifier)
+	{
+		LayoutDescription layout = renderer.getLayout();
+		int element = layout.getElementIndex(identifier);
+		if (element < 0)
+		{
+			return null;
+		}
+		double[] values = animator.getValues(identifier);
+		if (values == null)
+		{
+			return layout.getPropertiesForID(identifier);
+		}
+		return new GraphicProperties(animatedValue(values, Tween.Property.POS_X, getLayoutValue(identifier, Tween.Property.POS_X)),
+		                             animatedValue(values, Tween.Property.POS_Y, getLayoutValue(identifier, Tween.Property.POS_Y)),
+		                             animatedValue(values, Tween.Property.WIDTH, getLayoutValue(identifier, Tween.Property.WIDTH)),
+		                             animatedValue(values, Tween.Property.HEIGHT, getLayoutValue(identifier, Tween.Property.HEIGHT)),
+		                             layout.getZScore(element), layout.getEnterable(element),
+		                             animatedValue(values, Tween.Property.OPACITY, 1.0));
+	}
+	
+	/**
+	 * Get an element's value of a property as described by the layout, ignoring
+	 * animation. Positions and sizes are fractions of the panel's current size, with
+	 * the element's constraints applied.
+	 * 
+	 * @param identifier Identifier of the element
+	 * @param property The property
+	 * @return The property's value in the layout, or its default if the layout has no such element
+	 */
+	double getLayoutValue(String identifier, Tween.Property property)
+	{
+		LayoutDescription layout = renderer.getLayout();
+		int element = layout.getElementIndex(identifier);
+		if (element < 0 || property == Tween.Property.OPACITY)
+		{
+			return property == Tween.Property.OPACITY ? 1.0 : 0.0;
+		}
+		int width = getWidth();
+		int height = getHeight();
+		if (width <= 0 || height <= 0)
+		{
+			// Nothing to resolve constraints against yet
+			switch (property)
+			{
+				case POS_X:
+					return layout.getPosX(element);
+				case POS_Y:
+					return layout.getPosY(element);
+				case WIDTH:
+					return layout.getWidth(element);
+				default:
+					return layout.getHeight(element);
+			}
+		}
+		int[] bounds = layout.resolveBounds(width, height);
+		int panelLength = property == Tween.Property.POS_X || property == Tween.Property.WIDTH ? width : height;
+		return bounds[element * 4 + property.ordinal()] / (double)panelLength;
+	}
+	
+	/**
+	 * Apply a frame of animation to the elements whose animated values changed,
+	 * repainting only the area each one moved through. Called on the thread which
+	 * paints the panel: the event dispatch thread, or the ActiveRenderLoop's thread.
+	 * The elements are moved in a copy of the hit-test grid which then replaces it,
+	 * as the event dispatch thread may be hit-testing the current grid meanwhile.
+	 * 
+	 * @param identifiers Identifiers of the changed elements
+	 */
+	void animatedPropertiesChanged(Collection<String> identifiers)
+	{
+		RenderList renderList = getRenderList();
+		HitTestGrid bounds = new HitTestGrid(getHitTestGrid(renderList));
+		LayerCache cache = layerCache;
+		boolean cacheValid = cache != null && cache.matches(renderList, getWidth(), getHeight());
+		Iterator<String> iterator = identifiers.iterator();
+		while (iterator.hasNext())
+		{
+			String identifier = iterator.next();
+			int[] entries = renderList.getEntryIndices(identifier);
+			if (entries == null)
+			{
+				continue;
+			}
+			double[] values = animator.getValues(identifier);
+			for (int i = 0; i < entries.length; i++)
+			{
+				// Bounds include their right and bottom edges
+				int entry = entries[i];
+				Rectangle before = new Rectangle(bounds.getX(entry), bounds.getY(entry), bounds.getWidth(entry) + 1, bounds.getHeight(entry) + 1);
+				applyAnimatedValues(renderList, bounds, entry, values);
+				Rectangle after = new Rectangle(bounds.getX(entry), bounds.getY(entry), bounds.getWidth(entry) + 1, bounds.getHeight(entry) + 1);
+				Rectangle changed = before.union(after);
+				if (cacheValid)
+				{
+					if (cache.covers(entry, after))
+					{
+						cache.markDirty(entry, changed);
+					}
+					else
+					{
+						// The entry moved beyond its layer's image, which has to be rebuilt
+						layerCache = null;
+						cacheValid = false;
+					}
+				}
+				repaint(changed.x, changed.y, changed.width, changed.height);
+			}
+		}
+		hitTestGrid = bounds;
+	}
+	
+	/**
+	 * Return an element to its place in the layout once its animation is reset
+	 * 
+	 * @param identifier Identifier of the element
+	 */
+	void animationReset(String identifier)
+	{
+		// The grid is rebuilt from the layout, keeping the other elements' animated values
+		hitTestGrid = null;
+		layerCache = null;
+		repaint();
+	}
+	
+	/**
+	 * Apply an element's animated values to the resolved bounds and opacity of one of its entries
+	 * 
+	 * @param renderList The RenderList the entry belongs to
+	 * @param bounds Resolved bounds of the RenderList's entries
+	 * @param entry Index of the entry in RenderList.getEntries()
+	 * @param values The element's animated values, as given by Animator.getValues
+	 */
+	private void applyAnimatedValues(RenderList renderList, HitTestGrid bounds, int entry, double[] values)
+	{
+		if (values == null)
+		{
+			return;
+		}
+		int width = getWidth();
+		int height = getHeight();
+		int element = renderList.getEntries()[entry].getElementIndex() * 4;
+		int[] layoutBounds = renderList.getLayoutDescription().resolveBounds(width, height);
+		bounds.setBounds(entry, animatedPixels(values, Tween.Property.POS_X, width, layoutBounds[element]),
+		                 animatedPixels(values, Tween.Property.POS_Y, height, layoutBounds[element + 1]),
+		                 animatedPixels(values, Tween.Property.WIDTH, width, layoutBounds[element + 2]),
+		                 animatedPixels(values, Tween.Property.HEIGHT, height, layoutBounds[element + 3]));
+		bounds.setOpacity(entry, (float)animatedValue(values, Tween.Property.OPACITY, 1.0));
+	}
+	
+	/**
+	 * Get the animated value of a position or size in pixels, or the provided layout bound if it isn't animated
+	 */
+	private static int animatedPixels(double[] values, Tween.Property property, int panelLength, int layoutPixels)
+	{
+		if (Double.isNaN(values[property.ordinal()]))
+		{
+			return layoutPixels;
+		}
+		return (int)(panelLength * values[property.ordinal()]);
+	}
+	
+	/**
+	 * Get the animated value of a property, or the provided value if it isn't animated
+	 */
+	private static double animatedValue(double[] values, Tween.Property property, double layoutValue)
+	{
+		if (values == null || Double.isNaN(values[property.ordinal()]))
+		{
+			return layoutValue;
+		}
+		return values[property.ordinal()];
+	}
+	
+	/**
+	 * Advance every Animated Renderable on the screen, and every tween run by the
+	 * panel's Animator while it is externally clocked. Called once per frame by an
+	 * ActiveRenderLoop, or by whatever else drives the RenderPanel's animations.
+	 * 
+	 * @param deltaNanos Time since the previous tick, in nanoseconds
+	 */
+	public void tick(long deltaNanos)
+	{
+		animator.advance(deltaNanos);
+		Animated[] animated = getRenderList().getAnimated();
+		for (int i = 0; i < animated.length; i++)
+		{
+			animated[i].tick(deltaNanos);
+		}
 	}
 	
 	/**
@@ -94,127 +596,117 @@ public class RenderPanel extends Component implements MouseListener, MouseMotion
 	 */
 	public void paint(Graphics g)
 	{
+		RenderMetricsListener metrics = metricsListener;
+		long paintStart = metrics != null ? System.nanoTime() : 0;
+		
 		super.paint(g);
 		
-		ArrayList<Renderable> renderables =  this.renderables; // Limit possibility of race condition
+		RenderList renderList = getRenderList(); // One snapshot for the whole frame, whatever other threads change
 		if (g instanceof Graphics2D)
 		{
-			// Get width and height of RenderPanel
-			int width = this.getWidth();
-			int height = this.getHeight();
-			
 			// Cast provided Graphics to Graphics2D
 			Graphics2D graphics = (Graphics2D)g;
 			
 			// Set the graphic rendering quality
-			setQualityOnGraphics2D(graphics);
+			renderer.applyQuality(graphics);
 			
-			// Start at zIndex of 0
-			int currentZIndex = 0;
+			// Only entries intersecting the area being repainted need to be drawn
+			Rectangle clip = graphics.getClipBounds();
 			
-			// Count number of items that should be rendered
-			int renderedItems = 0;
-			for (int i = 0; i < renderables.size(); i++)
+			HitTestGrid bounds = getHitTestGrid(renderList);
+			int drawn;
+			if (layerCaching)
 			{
-				if (layoutDescription.getPropertiesForID(renderables.get(i).getIdentifier()) == null)
-				{
-					renderedItems++;
-				}
+				drawn = paintCachedLayers(graphics, renderList, bounds, clip, metrics);
 			}
-			// Loop until all relevant renderables have been painted
-			while (renderedItems < renderables.size())
+			else
 			{
-				// Loop through all renderables, and see if they should be rendered now
-				for (int i = 0; i < renderables.size(); i++)
-				{
-					Renderable itemToRender = renderables.get(i);
-					if (itemToRender != null)
-					{
-						// Get GraphicProperties for the relevant renderable
-						GraphicProperties itemToRenderProperties = layoutDescription.getPropertiesForID(itemToRender.getIdentifier());
-						
-						// Check if GraphicProperties exist
-						if (itemToRenderProperties != null)
-						{
-							// Item should be rendered now, because zScore of object matches current zScore
-							if (itemToRenderProperties.getZScore() == currentZIndex)
-							{
-								// Calculate location and size based on RenderPanel size
-								int insertXLocation = (int)(width * itemToRenderProperties.getPosX());
-								int insertYLocation = (int)(height * itemToRenderProperties.getPosY());
-								int drawWidth = (int)(width * itemToRenderProperties.getWidth());
-								int drawHeight = (int)(height * itemToRenderProperties.getHeight()); 
-								itemToRender.paint(graphics, insertXLocation, insertYLocation, drawWidth, drawHeight);
-								renderedItems++;
-							}
-						}
-						else
-						{
-							// Alert item that it is no longer on the screen
-							itemToRender.offScreen();
-						}
-					}
-					else
-					{
-						renderables.remove(i);
-						i--;
-					}
-				}
-				currentZIndex++;
+				// Entries are already sorted back-to-front, so one pass paints every layer in order
+				drawn = renderer.paintEntries(graphics, renderList.getEntries(), bounds, 0, renderList.getEntries().length, clip, metrics);
+			}
+			
+			// Alert items without a place in the layout that they are no longer on the screen
+			renderer.notifyOffScreen(renderList);
+			
+			if (metrics != null)
+			{
+				metrics.frameRendered(System.nanoTime() - paintStart, drawn, renderList.getEntries().length - drawn);
 			}
-			highestZScoreLastRender = currentZIndex;
 		}
 	}
 	
 	/**
-	 * Set the quality on a Graphics2D object based on the class rendering quality state
+	 * Bring the dirty regions of each cached layer up to date, then composite the
+	 * layers intersecting the clip back-to-front.
 	 * 
-	 * @param graphics Graphics2D object to set quality on
+	 * @param graphics Graphics2D to paint with
+	 * @param renderList The RenderList being painted
+	 * @param bounds Resolved bounds of the RenderList's entries
+	 * @param clip Area to paint, or null to paint everything
+	 * @param metrics Listener to report each Renderable's paint time to, or null
+	 * @return The number of entries redrawn into layer images
 	 */
-	private void setQualityOnGraphics2D(Graphics2D graphics)
+	private int paintCachedLayers(Graphics2D graphics, RenderList renderList, HitTestGrid bounds, Rectangle clip, RenderMetricsListener metrics)
 	{
-		if (quality == OPTION_QUALITY_LOW)
-		{
-			graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-			graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
-			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-			graphics.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_SPEED);
-			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
-			graphics.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
-			graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_OFF);
-			graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
-		}
-		else if (quality == OPTION_QUALITY_MED)
+		int drawn = 0;
+		int width = this.getWidth();
+		int height = this.getHeight();
+		LayerCache cache = layerCache;
+		if (cache == null || !cache.matches(renderList, width, height))
 		{
-			graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-			graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-			graphics.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-			graphics.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_DISABLE);
-			graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-			graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+			cache = new LayerCache(renderList, bounds, width, height);
+			layerCache = cache;
 		}
-		else if (quality == OPTION_QUALITY_HIGH)
+		
+		RenderEntry[] entries = renderList.getEntries();
+		for (int layer = 0; layer < cache.getLayerCount(); layer++)
 		{
-			graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-			graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-			graphics.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-			graphics.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
-			graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-			graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+			Rectangle layerBounds = cache.getLayerBounds(layer);
+			if (layerBounds == null)
+			{
+				continue;
+			}
+			BufferedImage layerImage = cache.getLayerImage(layer, graphics.getDeviceConfiguration());
+			
+			// Redraw the part of the layer which changed, in the layer image's own coordinates
+			Rectangle dirty = cache.takeDirtyRegion(layer);
+			if (dirty != null)
+			{
+				Graphics2D layerGraphics = layerImage.createGraphics();
+				renderer.applyQuality(layerGraphics);
+				layerGraphics.translate(-layerBounds.x, -layerBounds.y);
+				layerGraphics.clip(dirty);
+				layerGraphics.setComposite(AlphaComposite.Clear);
+				layerGraphics.fill(dirty);
+				layerGraphics.setComposite(AlphaComposite.SrcOver);
+				drawn += renderer.paintEntries(layerGraphics, entries, bounds, cache.getLayerStart(layer), cache.getLayerEnd(layer), dirty, metrics);
+				layerGraphics.dispose();
+			}
+			
+			if (clip == null || clip.intersects(layerBounds))
+			{
+				graphics.drawImage(layerImage, layerBounds.x, layerBounds.y, null);
+			}
 		}
+		return drawn;
 	}
 	
-	// Possible options for rendering quality
-	public static final int OPTION_QUALITY_LOW = 1;
-	public static final int OPTION_QUALITY_MED = 2;
-	public static final int OPTION_QUALITY_HIGH = 3;
+	/**
+	 * Get the z-ordered RenderList for the current renderables and layout. Callers
+	 * use the returned list throughout, so they see one consistent set of renderables
+	 * even if another thread changes them meanwhile.
+	 * 
+	 * @return The current RenderList
+	 */
+	RenderList getRenderList()
+	{
+		return renderer.getRenderList();
+	}
 	
-	// Rendering quality is, by default, medium
-	private int quality = OPTION_QUALITY_MED;
+	// Possible options for rendering quality
+	public static final int OPTION_QUALITY_LOW = LayoutRenderer.OPTION_QUALITY_LOW;
+	public static final int OPTION_QUALITY_MED = LayoutRenderer.OPTION_QUALITY_MED;
+	public static final int OPTION_QUALITY_HIGH = LayoutRenderer.OPTION_QUALITY_HIGH;
 	
 	/**
 	 * Set the rendering quality to the provided rendering quality
@@ -223,7 +715,12 @@ public class RenderPanel extends Component implements MouseListener, MouseMotion
 	 */
 	public void setQuality(int quality)
 	{
-		this.quality = quality;
+		renderer.setQuality(quality);
+		LayerCache cache = layerCache;
+		if (cache != null)
+		{
+			cache.markAllDirty();
+		}
 	}
 	
 	/**
@@ -234,40 +731,62 @@ public class RenderPanel extends Component implements MouseListener, MouseMotion
 	{
 		int clickX = e.getX();
 		int clickY = e.getY();
+		
+		// Find the front-most Renderable in the click zone; only one object can be clicked
+		RenderMetricsListener metrics = metricsListener;
+		long hitTestStart = metrics != null ? System.nanoTime() : 0;
+		RenderList renderList = getRenderList();
+		HitTestGrid hitTestGrid = getHitTestGrid(renderList);
+		int clickedEntry = hitTestGrid.findEntryAt(clickX, clickY);
+		if (metrics != null)
+		{
+			metrics.hitTested(System.nanoTime() - hitTestStart);
+		}
+		if (clickedEntry >= 0)
+		{
+			Renderable clickedItem = renderList.getEntries()[clickedEntry].getRenderable();
+			clickedItem.mouseClick(clickX - hitTestGrid.getX(clickedEntry), clickY - hitTestGrid.getY(clickedEntry));
+			focusManager.focus(clickedItem);
+		}
+	}
+	
+	/**
+	 * Get the resolved bounds and hit-test index for the provided RenderList at the
+	 * current size, rebuilding them if the list or the RenderPanel size has changed.
+	 * 
+	 * @param renderList The RenderList to resolve
+	 * @return A HitTestGrid matching the RenderList and current size
+	 */
+	HitTestGrid getHitTestGrid(RenderList renderList)
+	{
 		int width = this.getWidth();
 		int height = this.getHeight();
-		
-		// Begin at the highest-zScore-index and work down, looking for a Renderable in the click zone
-		searchLoop: for (int i = highestZScoreLastRender; i >= 0; i--)
+		HitTestGrid current = hitTestGrid;
+		if (current == null || !current.matches(renderList, width, height))
 		{
-			// Search through all renderables
-			for (int j = 0; j < renderables.size(); j++)
+			current = new HitTestGrid(renderList, width, height);
+			
+			// Elements being animated keep their animated values in the new grid
+			if (animator.hasAnimatedValues())
 			{
-				Renderable possibleClickedItem = renderables.get(j);
-				if (possibleClickedItem != null)
+				Iterator<String> identifiers = animator.getAnimatedIdentifiers().iterator();
+				while (identifiers.hasNext())
 				{
-					// Check if the Renderable is drawn where the click occurs
-					GraphicProperties itemToRenderProperties = layoutDescription.getPropertiesForID(possibleClickedItem.getIdentifier());
-					if (itemToRenderProperties != null)
+					String identifier = identifiers.next();
+					int[] entries = renderList.getEntryIndices(identifier);
+					if (entries != null)
 					{
-						if (itemToRenderProperties.getZScore() == i)
+						double[] values = animator.getValues(identifier);
+						for (int i = 0; i < entries.length; i++)
 						{
-							int insertXLocation = (int)(width * itemToRenderProperties.getPosX());
-							int insertYLocation = (int)(height * itemToRenderProperties.getPosY());
-							int drawWidth = (int)(width * itemToRenderProperties.getWidth());
-							int drawHeight = (int)(height * itemToRenderProperties.getHeight());
-							if (clickX >= insertXLocation && clickX <= (insertXLocation + drawWidth) &&
-							    clickY >= insertYLocation && clickY <= (insertYLocation + drawHeight))
-							{
-								possibleClickedItem.mouseClick(clickX - insertXLocation, clickY - insertYLocation);
-								selected = possibleClickedItem;
-								break searchLoop; // Only one object can be clicked
-							}
+							applyAnimatedValues(renderList, current, entries[i], values);
 						}
 					}
 				}
 			}
-		} 
+			hitTestGrid = current;
+		}
+		return current;
 	}
 	
 	@Override
@@ -276,10 +795,17 @@ public class RenderPanel extends Component implements MouseListener, MouseMotion
 		// Do Nothing
 	}
 
+	/**
+	 * Queue a hover resolution so the Renderable under the mouse is told the mouse left
+	 */
 	@Override
 	public void mouseExited(MouseEvent e) 
 	{
-		// Do Nothing
+		synchronized (hoverLock)
+		{
+			pointerInside = false;
+			scheduleHoverResolution();
+		}
 	}
 
 	@Override
@@ -295,55 +821,113 @@ public class RenderPanel extends Component implements MouseListener, MouseMotion
 	}
 
 	/**
-	 * Pass on mouse movement events to the appropriate renderable child
+	 * Record the mouse position and queue a hover resolution. A burst of movement
+	 * events waiting on the event queue is resolved once, at the latest position.
 	 */
 	@Override
 	public void mouseMoved(MouseEvent e) 
 	{
-		int mouseX = e.getX();
-		int mouseY = e.getY();
-		int width = this.getWidth();
-		int height = this.getHeight();
+		synchronized (hoverLock)
+		{
+			hoverX = e.getX();
+			hoverY = e.getY();
+			pointerInside = true;
+			scheduleHoverResolution();
+		}
+	}
+	
+	/**
+	 * Queue a hover resolution on the event dispatch thread, unless one is already
+	 * queued. Called while holding hoverLock.
+	 */
+	private void scheduleHoverResolution()
+	{
+		if (!hoverPending)
+		{
+			hoverPending = true;
+			EventQueue.invokeLater(hoverResolver);
+		}
+	}
+	
+	/**
+	 * Find the front-most Renderable under the latest mouse position and pass on
+	 * the movement to it. Only the Renderable the mouse left, if it left one, is
+	 * told the mouse is absent, rather than every Renderable on the panel.
+	 */
+	private void resolveHover()
+	{
+		int mouseX;
+		int mouseY;
+		boolean inside;
+		synchronized (hoverLock)
+		{
+			hoverPending = false;
+			mouseX = hoverX;
+			mouseY = hoverY;
+			inside = pointerInside;
+		}
+		
+		// Find the front-most Renderable under the mouse; only one object can be moused over
 		Renderable objectMousedOver = null;
+		HitTestGrid hitTestGrid = null;
+		int mousedOverEntry = -1;
+		if (inside)
+		{
+			RenderMetricsListener metrics = metricsListener;
+			long hitTestStart = metrics != null ? System.nanoTime() : 0;
+			RenderList renderList = getRenderList();
+			hitTestGrid = getHitTestGrid(renderList);
+			mousedOverEntry = hitTestGrid.findEntryAt(mouseX, mouseY);
+			if (metrics != null)
+			{
+				metrics.hitTested(System.nanoTime() - hitTestStart);
+			}
+			if (mousedOverEntry >= 0)
+			{
+				objectMousedOver = renderList.getEntries()[mousedOverEntry].getRenderable();
+			}
+		}
 		
-		// Begin at the highest-zScore-index and work down, looking for a Renderable in the click zone
-		searchLoop: for (int i = highestZScoreLastRender; i >= 0; i--)
+		Renderable previous = hovered;
+		if (previous != objectMousedOver)
 		{
-			// Search through all renderables
-			for (int j = 0; j < renderables.size(); j++)
+			hovered = objectMousedOver;
+			if (previous != null)
 			{
-				Renderable possibleMousedOverItem = renderables.get(j);
-				if (possibleMousedOverItem != null)
-				{
-					// Check if the Renderable is drawn where the mouse is currently located
-					GraphicProperties itemToRenderProperties = layoutDescription.getPropertiesForID(possibleMousedOverItem.getIdentifier());
-					if (itemToRenderProperties != null)
-					{
-						if (itemToRenderProperties.getZScore() == i)
-						{
-							int insertXLocation = (int)(width * itemToRenderProperties.getPosX());
-							int insertYLocation = (int)(height * itemToRenderProperties.getPosY());
-							int drawWidth = (int)(width * itemToRenderProperties.getWidth());
-							int drawHeight = (int)(height * itemToRenderProperties.getHeight());
-							if (mouseX >= insertXLocation && mouseX <= (insertXLocation + drawWidth) &&
-							    mouseY >= insertYLocation && mouseY <= (insertYLocation + drawHeight))
-							{
-								possibleMousedOverItem.mouseOver(mouseX - insertXLocation, mouseY - insertYLocation);
-								objectMousedOver = possibleMousedOverItem;
-								break searchLoop; // Only one object can be moused over
-							}
-						}
-					}
-				}
+				previous.mouseAbsent();
 			}
 		}
+		if (objectMousedOver != null)
+		{
+			objectMousedOver.mouseOver(mouseX - hitTestGrid.getX(mousedOverEntry), mouseY - hitTestGrid.getY(mousedOverEntry));
+		}
+	}
+
+	/**
+	 * Pass on mouse wheel movement to the front-most Scrollable under the mouse
+	 */
+	@Override
+	public void mouseWheelMoved(MouseWheelEvent e)
+	{
+		int mouseX = e.getX();
+		int mouseY = e.getY();
+		
+		RenderMetricsListener metrics = metricsListener;
+		long hitTestStart = metrics != null ? System.nanoTime() : 0;
+		RenderList renderList = getRenderList();
+		HitTestGrid hitTestGrid = getHitTestGrid(renderList);
+		int scrolledEntry = hitTestGrid.findEntryAt(mouseX, mouseY);
+		if (metrics != null)
+		{
+			metrics.hitTested(System.nanoTime() - hitTestStart);
+		}
 		
-		// Inform all other renderables that the mouse isn't within them
-		for (int i = 0; i < renderables.size(); i++)
+		if (scrolledEntry >= 0)
 		{
-			if (renderables.get(i) != objectMousedOver)
+			Renderable scrolledItem = renderList.getEntries()[scrolledEntry].getRenderable();
+			if (scrolledItem instanceof Scrollable)
 			{
-				renderables.get(i).mouseAbsent();
+				((Scrollable)scrolledItem).mouseWheelMoved(mouseX - hitTestGrid.getX(scrolledEntry), mouseY - hitTestGrid.getY(scrolledEntry), e.getWheelRotation());
 			}
 		}
 	}
@@ -355,52 +939,24 @@ public class RenderPanel extends Component implements MouseListener, MouseMotion
 		// Caused by pressing the mouse button and releasing.
 	}
 
+	/**
+	 * Pass on key presses to the FocusManager, which moves focus or routes them to the focused Renderable
+	 */
 	@Override
 	public void keyPressed(KeyEvent keyEvent) 
 	{
-		if (keyEvent.getKeyCode() == KeyEvent.VK_TAB)
-		{
-			if (selected != null)
-			{
-				int level = layoutDescription.getZScoreForRenderable(selected);
-				for (Renderable renderable : renderables)
-				{
-					if (layoutDescription.getZScoreForRenderable(renderable) == level &&
-							renderable != selected)
-					{
-						selected = renderable;
-						return;
-					}
-				}
-			}
-		}
-		else if (keyEvent.getKeyCode() == KeyEvent.VK_ENTER)
-		{
-			for (Renderable renderable : renderables)
-			{
-				if (layoutDescription.getPropertiesForID(renderable.getIdentifier()).getEnterable())
-				{
-					
-				}
-			}
-		}
+		focusManager.keyPressed(keyEvent);
 	}
 
 	@Override
 	public void keyReleased(KeyEvent keyEvent) 
 	{
-		if (selected != null)
-		{
-			selected.keyReleased(keyEvent);
-		}
+		focusManager.keyReleased(keyEvent);
 	}
 
 	@Override
 	public void keyTyped(KeyEvent keyEvent) 
 	{
-		if (selected != null)
-		{
-			selected.keyTyped(keyEvent);
-		}
+		focusManager.keyTyped(keyEvent);
 	}
 }
@@ -0,0 +1,30 @@
+package com.theopeneffect.flexml;
+
+import java.awt.Graphics2D;
+
+/**
+ * Draws the rows of a FlexibleList. A single RowRenderer draws every visible row
+ * in turn, so it should keep any fonts or other resources it needs between calls
+ * rather than creating them for each row.
+ * 
+ * @author Maxwell Sanchez
+ *
+ * @param <T> Type of row drawn
+ */
+public interface RowRenderer<T>
+{
+	/**
+	 * Draw one row
+	 * 
+	 * @param g Graphics2D to draw with
+	 * @param row The row to draw
+	 * @param index Index of the row in the data source
+	 * @param startX X coordinate of the top-left corner of the row
+	 * @param startY Y coordinate of the top-left corner of the row
+	 * @param width Width of the row
+	 * @param height Height of the row
+	 * @param selected Whether the row is selected
+	 * @param mouseOver Whether the mouse is over the row
+	 */
+	public void paintRow(Graphics2D g, T row, int index, int startX, int startY, int width, int height, boolean selected, boolean mouseOver);
+}
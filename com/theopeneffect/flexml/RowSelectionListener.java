@@ -0,0 +1,18 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Receives the rows selected in a FlexibleList, by clicking or with the keyboard.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public interface RowSelectionListener
+{
+	/**
+	 * Called when a row is selected
+	 * 
+	 * @param list The list the row is in
+	 * @param index Index of the selected row in the list's data source
+	 */
+	public void rowSelected(FlexibleList<?> list, int index);
+}
@@ -0,0 +1,235 @@
+package com.theopeneffect.flexml;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A memory-bounded cache of images already scaled to the size they are drawn at,
+ * shared by every FlexibleImage. Drawing a cached copy is a straight pixel copy,
+ * rather than a resample of the source image on every frame.
+ *
+ * Scaled copies are keyed by the source image, the target size and the
+ * interpolation in use, and the least recently drawn copies are evicted once the
+ * cache grows past its capacity. Source images are assumed not to change once
+ * drawn; call evict after modifying one in place. Owners which display a source
+ * image, such as FlexibleImages, retain it and release it once they stop, and its
+ * scaled copies are discarded only when its last owner releases it.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+public class ScaledImageCache
+{
+	// Default capacity of 64MB of scaled pixels
+	private static final long DEFAULT_CAPACITY_BYTES = 64L * 1024 * 1024;
+
+	// Scaled images, in order from least to most recently drawn
+	private static final LinkedHashMap<ScaledImageKey, BufferedImage> scaledImages = new LinkedHashMap<ScaledImageKey, BufferedImage>(16, 0.75f, true);
+
+	// Number of owners displaying each source image, held weakly so sources can still be collected
+	private static final WeakHashMap<BufferedImage, Integer> owners = new WeakHashMap<BufferedImage, Integer>();
+
+	// Maximum and current size of all cached images, in bytes
+	private static long capacityBytes = DEFAULT_CAPACITY_BYTES;
+	private static long cachedBytes = 0;
+
+	private ScaledImageCache()
+	{
+		// Only static access
+	}
+
+	/**
+	 * Get a copy of the provided image scaled to the provided size using the
+	 * interpolation set on the provided Graphics2D, and in a pixel format compatible
+	 * with the Graphics2D's device. The size is in the device's pixels, so callers
+	 * drawing through a scaling transform should scale to the transformed size and
+	 * draw the copy without the transform.
+	 *
+	 * @param source The image to scale
+	 * @param width Width to scale to, in device pixels
+	 * @param height Height to scale to, in device pixels
+	 * @param g Graphics2D the scaled image will be drawn with
+	 * @return The scaled image, or null if it is too large to cache
+	 */
+	public static BufferedImage getScaledImage(BufferedImage source, int width, int height, Graphics2D g)
+	{
+		Object interpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+		ScaledImageKey key = new ScaledImageKey(source, width, height, interpolation);
+		long size = (long)width * height * 4;
+		synchronized (ScaledImageCache.class)
+		{
+			BufferedImage scaled = scaledImages.get(key);
+			if (scaled != null || size > capacityBytes / 4)
+			{
+				return scaled;
+			}
+		}
+
+		// Scale outside the lock, so other images can be drawn meanwhile
+		BufferedImage scaled = g.getDeviceConfiguration().createCompatibleImage(width, height, source.getTransparency());
+		Graphics2D scaledGraphics = scaled.createGraphics();
+		scaledGraphics.setRenderingHints(g.getRenderingHints());
+		scaledGraphics.drawImage(source, 0, 0, width, height, null);
+		scaledGraphics.dispose();
+
+		synchronized (ScaledImageCache.class)
+		{
+			BufferedImage previous = scaledImages.put(key, scaled);
+			if (previous == null)
+			{
+				cachedBytes += size;
+			}
+			trim();
+		}
+		return scaled;
+	}
+
+	/**
+	 * Record that another owner displays the provided image, keeping its scaled
+	 * copies until every owner has released it
+	 *
+	 * @param source The image now displayed
+	 */
+	public static synchronized void retain(BufferedImage source)
+	{
+		Integer count = owners.get(source);
+		owners.put(source, count != null ? count + 1 : 1);
+	}
+
+	/**
+	 * Record that an owner no longer displays the provided image, removing its
+	 * scaled copies if no other owner still displays it
+	 *
+	 * @param source The image no longer displayed
+	 */
+	public static synchronized void release(BufferedImage source)
+	{
+		Integer count = owners.get(source);
+		if (count == null)
+		{
+			return;
+		}
+		if (count > 1)
+		{
+			owners.put(source, count - 1);
+		}
+		else
+		{
+			owners.remove(source);
+			evict(source);
+		}
+	}
+
+	/**
+	 * Remove every scaled copy of the provided image
+	 *
+	 * @param source The image whose scaled copies should be discarded
+	 */
+	public static synchronized void evict(BufferedImage source)
+	{
+		Iterator<Map.Entry<ScaledImageKey, BufferedImage>> iterator = scaledImages.entrySet().iterator();
+		while (iterator.hasNext())
+		{
+			Map.Entry<ScaledImageKey, BufferedImage> entry = iterator.next();
+			if (entry.getKey().source == source)
+			{
+				cachedBytes -= entry.getKey().getSizeInBytes();
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Remove every scaled image from the cache
+	 */
+	public static synchronized void clear()
+	{
+		scaledImages.clear();
+		cachedBytes = 0;
+	}
+
+	/**
+	 * Set the maximum memory the cache may use for scaled images. Images larger than
+	 * a quarter of the capacity are scaled on every draw instead of being cached.
+	 *
+	 * @param bytes The capacity in bytes
+	 */
+	public static synchronized void setCapacity(long bytes)
+	{
+		capacityBytes = bytes;
+		trim();
+	}
+
+	/**
+	 * Get the memory currently used by cached scaled images
+	 *
+	 * @return Size of the cached images in bytes
+	 */
+	public static synchronized long getCachedBytes()
+	{
+		return cachedBytes;
+	}
+
+	/**
+	 * Evict the least recently drawn images until the cache fits its capacity
+	 */
+	private static void trim()
+	{
+		Iterator<ScaledImageKey> iterator = scaledImages.keySet().iterator();
+		while (cachedBytes > capacityBytes && iterator.hasNext())
+		{
+			cachedBytes -= iterator.next().getSizeInBytes();
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Identifies one scaled copy of a source image
+	 */
+	private static class ScaledImageKey
+	{
+		private final BufferedImage source;
+		private final int width;
+		private final int height;
+		private final Object interpolation;
+
+		ScaledImageKey(BufferedImage source, int width, int height, Object interpolation)
+		{
+			this.source = source;
+			this.width = width;
+			this.height = height;
+			this.interpolation = interpolation;
+		}
+
+		long getSizeInBytes()
+		{
+			return (long)width * height * 4;
+		}
+
+		@Override
+		public boolean equals(Object other)
+		{
+			if (!(other instanceof ScaledImageKey))
+			{
+				return false;
+			}
+			ScaledImageKey key = (ScaledImageKey)other;
+			return source == key.source && width == key.width && height == key.height &&
+			       (interpolation == null ? key.interpolation == null : interpolation.equals(key.interpolation));
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int hash = System.identityHashCode(source);
+			hash = hash * 31 + width;
+			hash = hash * 31 + height;
+			return hash * 31 + (interpolation == null ? 0 : interpolation.hashCode());
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Implemented by Renderables which scroll their contents in response to the
+ * mouse wheel. The RenderPanel passes wheel movement to the front-most
+ * Scrollable under the mouse.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public interface Scrollable
+{
+	/**
+	 * Called when the mouse wheel is moved over this Renderable
+	 * 
+	 * @param x X coordinate of the mouse relative to this Renderable
+	 * @param y Y coordinate of the mouse relative to this Renderable
+	 * @param wheelRotation Number of notches moved, negative when moved away from the user
+	 */
+	public void mouseWheelMoved(int x, int y, int wheelRotation);
+}
@@ -0,0 +1,18 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Implemented by Renderables which change their appearance while they are
+ * selected to receive keyboard input, such as by showing a caret.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public interface Selectable
+{
+	/**
+	 * Called by the RenderPanel when this becomes, or stops being, the selected Renderable
+	 * 
+	 * @param selected Whether this is now selected
+	 */
+	public void setSelected(boolean selected);
+}
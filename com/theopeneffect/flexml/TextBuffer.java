@@ -0,0 +1,232 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Mutable text stored as a gap buffer: the characters are kept in one array with
+ * a gap at the most recent edit, so typing or deleting at the same place moves no
+ * characters, and moving to another place only moves the characters in between.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+public class TextBuffer implements CharSequence
+{
+	// Characters before the gap are at [0, gapStart), characters after it at [gapEnd, buffer.length)
+	private char[] buffer;
+	private int gapStart;
+	private int gapEnd;
+
+	// The contents as a String, created on first request after each change
+	private String string = null;
+
+	/**
+	 * Create an empty TextBuffer
+	 */
+	public TextBuffer()
+	{
+		buffer = new char[16];
+		gapStart = 0;
+		gapEnd = buffer.length;
+	}
+
+	/**
+	 * Create a TextBuffer holding the provided text
+	 *
+	 * @param text Initial contents
+	 */
+	public TextBuffer(CharSequence text)
+	{
+		this();
+		insert(0, text);
+	}
+
+	@Override
+	public int length()
+	{
+		return buffer.length - (gapEnd - gapStart);
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		if (index < 0 || index >= length())
+		{
+			throw new IndexOutOfBoundsException("Index " + index + ", length " + length());
+		}
+		return index < gapStart ? buffer[index] : buffer[index + gapEnd - gapStart];
+	}
+
+	/**
+	 * Copy characters out of the buffer
+	 *
+	 * @param start Index of the first character to copy
+	 * @param end Index following the last character to copy
+	 * @param destination Array to copy into
+	 * @param destinationStart Index in the destination of the first copied character
+	 */
+	public void getChars(int start, int end, char[] destination, int destinationStart)
+	{
+		checkRange(start, end);
+		if (start < gapStart)
+		{
+			int beforeGap = Math.min(end, gapStart) - start;
+			System.arraycopy(buffer, start, destination, destinationStart, beforeGap);
+			destinationStart += beforeGap;
+			start += beforeGap;
+		}
+		if (start < end)
+		{
+			System.arraycopy(buffer, start + gapEnd - gapStart, destination, destinationStart, end - start);
+		}
+	}
+
+	/**
+	 * Insert a character
+	 *
+	 * @param index Index to insert at
+	 * @param character Character to insert
+	 */
+	public void insert(int index, char character)
+	{
+		checkRange(index, index);
+		prepareGap(index, 1);
+		buffer[gapStart++] = character;
+		string = null;
+	}
+
+	/**
+	 * Insert text
+	 *
+	 * @param index Index to insert at
+	 * @param text Text to insert
+	 */
+	public void insert(int index, CharSequence text)
+	{
+		checkRange(index, index);
+		int length = text.length();
+		prepareGap(index, length);
+		if (text instanceof String)
+		{
+			((String)text).getChars(0, length, buffer, gapStart);
+		}
+		else
+		{
+			for (int i = 0; i < length; i++)
+			{
+				buffer[gapStart + i] = text.charAt(i);
+			}
+		}
+		gapStart += length;
+		string = null;
+	}
+
+	/**
+	 * Remove a range of characters
+	 *
+	 * @param start Index of the first character to remove
+	 * @param end Index following the last character to remove
+	 */
+	public void delete(int start, int end)
+	{
+		checkRange(start, end);
+		if (start == end)
+		{
+			return;
+		}
+		moveGap(start);
+		gapEnd += end - start;
+		string = null;
+	}
+
+	/**
+	 * Replace the entire contents
+	 *
+	 * @param text New contents
+	 */
+	public void setText(CharSequence text)
+	{
+		gapStart = 0;
+		gapEnd = buffer.length;
+		insert(0, text);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		checkRange(start, end);
+		char[] characters = new char[end - start];
+		getChars(start, end, characters, 0);
+		return new String(characters);
+	}
+
+	@Override
+	public String toString()
+	{
+		String current = string;
+		if (current == null)
+		{
+			current = subSequence(0, length()).toString();
+			string = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Move the gap to the provided index and make sure it can hold at least the provided number of characters
+	 *
+	 * @param index Index the gap should start at
+	 * @param required Number of characters about to be inserted
+	 */
+	private void prepareGap(int index, int required)
+	{
+		if (gapEnd - gapStart < required)
+		{
+			// Grow geometrically, leaving the characters after the gap at the end of the new array
+			int length = length();
+			int capacity = Math.max(buffer.length * 2, length + required + 16);
+			char[] grown = new char[capacity];
+			int afterGap = buffer.length - gapEnd;
+			System.arraycopy(buffer, 0, grown, 0, gapStart);
+			System.arraycopy(buffer, gapEnd, grown, capacity - afterGap, afterGap);
+			buffer = grown;
+			gapEnd = capacity - afterGap;
+		}
+		moveGap(index);
+	}
+
+	/**
+	 * Move the gap to start at the provided index, shifting only the characters between the old and new positions
+	 *
+	 * @param index Index the gap should start at
+	 */
+	private void moveGap(int index)
+	{
+		if (index < gapStart)
+		{
+			int moving = gapStart - index;
+			System.arraycopy(buffer, index, buffer, gapEnd - moving, moving);
+			gapStart -= moving;
+			gapEnd -= moving;
+		}
+		else if (index > gapStart)
+		{
+			int moving = index - gapStart;
+			System.arraycopy(buffer, gapEnd, buffer, gapStart, moving);
+			gapStart += moving;
+			gapEnd += moving;
+		}
+	}
+
+	/**
+	 * Check that a range lies within the text
+	 *
+	 * @param start Start of the range
+	 * @param end End of the range
+	 */
+	private void checkRange(int start, int end)
+	{
+		if (start < 0 || end < start || end > length())
+		{
+			throw new IndexOutOfBoundsException("Range " + start + " to " + end + ", length " + length());
+		}
+	}
+}
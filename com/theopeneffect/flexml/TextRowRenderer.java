@@ -0,0 +1,76 @@
+package com.theopeneffect.flexml;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+
+/**
+ * Draws each row of a FlexibleList as a line of text, highlighting the selected
+ * row and the row under the mouse.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public class TextRowRenderer implements RowRenderer<Object>
+{
+	private Font font = new Font("Arial", Font.PLAIN, 1);
+	
+	// Font derived from font at the most recently drawn row height
+	private Font derivedFont = null;
+	private int derivedFontSize = -1;
+	
+	private Color textColor;
+	private Color selectedColor;
+	private Color mouseOverColor;
+	
+	// Font size as a fraction of the row height
+	private double scale;
+	
+	/**
+	 * Create a TextRowRenderer
+	 * 
+	 * @param scale Font size as a fraction of the row height
+	 * @param textColor Color of the text
+	 * @param selectedColor Background of the selected row
+	 * @param mouseOverColor Background of the row under the mouse
+	 */
+	public TextRowRenderer(double scale, Color textColor, Color selectedColor, Color mouseOverColor)
+	{
+		this.scale = scale;
+		this.textColor = textColor;
+		this.selectedColor = selectedColor;
+		this.mouseOverColor = mouseOverColor;
+	}
+	
+	/**
+	 * Create a TextRowRenderer drawing white text
+	 * 
+	 * @param scale Font size as a fraction of the row height
+	 */
+	public TextRowRenderer(double scale)
+	{
+		this(scale, Color.WHITE, new Color(255, 200, 0, 96), new Color(255, 255, 255, 32));
+	}
+	
+	@Override
+	public void paintRow(Graphics2D g, Object row, int index, int startX, int startY, int width, int height, boolean selected, boolean mouseOver)
+	{
+		if (selected || mouseOver)
+		{
+			g.setColor(selected ? selectedColor : mouseOverColor);
+			g.fillRect(startX, startY, width, height);
+		}
+		
+		int fontSize = (int) (scale * height);
+		if (fontSize != derivedFontSize)
+		{
+			derivedFont = new Font(font.getFontName(), font.getStyle(), fontSize);
+			derivedFontSize = fontSize;
+		}
+		g.setColor(textColor);
+		g.setFont(derivedFont);
+		
+		// Center the text vertically within the row
+		g.drawString(String.valueOf(row), startX + (height - fontSize) / 2, startY + (height + fontSize) / 2);
+	}
+}
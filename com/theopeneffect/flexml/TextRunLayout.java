@@ -0,0 +1,270 @@
+package com.theopeneffect.flexml;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.Arrays;
+
+/**
+ * Glyphs for a line of editable text, laid out in short runs of characters so
+ * that an edit only lays out again the runs it touched. Runs grow as text is
+ * typed into them and are split when they become too long.
+ *
+ * @author Maxwell Sanchez
+ *
+ */
+class TextRunLayout
+{
+	// Length runs are split into, and the length at which a run is split
+	private static final int RUN_LENGTH = 64;
+	private static final int MAX_RUN_LENGTH = RUN_LENGTH * 2;
+
+	// Number of characters in each run, its glyphs (null when it needs laying out) and its advance
+	private int[] runLengths = new int[4];
+	private GlyphVector[] runGlyphs = new GlyphVector[4];
+	private float[] runAdvances = new float[4];
+	private int runCount = 0;
+
+	// Reusable buffer for the characters of the run being laid out
+	private final char[] characters = new char[MAX_RUN_LENGTH];
+
+	/**
+	 * Discard every run, replacing them with runs covering the provided number of characters
+	 *
+	 * @param length Number of characters in the text
+	 */
+	void reset(int length)
+	{
+		runCount = 0;
+		if (length > 0)
+		{
+			insertRun(0, length);
+		}
+	}
+
+	/**
+	 * Mark every run as needing layout, such as when the font changes
+	 */
+	void invalidate()
+	{
+		Arrays.fill(runGlyphs, 0, runCount, null);
+	}
+
+	/**
+	 * Record that characters were inserted into the text
+	 *
+	 * @param index Index the characters were inserted at
+	 * @param length Number of characters inserted
+	 */
+	void inserted(int index, int length)
+	{
+		if (runCount == 0)
+		{
+			insertRun(0, length);
+			return;
+		}
+
+		// Characters inserted between two runs join the earlier one, so typing at the end extends the last run
+		int runStart = 0;
+		int run = 0;
+		while (run < runCount - 1 && runStart + runLengths[run] < index)
+		{
+			runStart += runLengths[run];
+			run++;
+		}
+		runLengths[run] += length;
+		runGlyphs[run] = null;
+	}
+
+	/**
+	 * Record that characters were removed from the text
+	 *
+	 * @param start Index of the first character removed
+	 * @param end Index following the last character removed
+	 */
+	void deleted(int start, int end)
+	{
+		int runStart = 0;
+		int kept = 0;
+		for (int run = 0; run < runCount; run++)
+		{
+			int runEnd = runStart + runLengths[run];
+			int removed = Math.min(end, runEnd) - Math.max(start, runStart);
+			if (removed > 0)
+			{
+				runLengths[run] -= removed;
+				runGlyphs[run] = null;
+			}
+			runStart = runEnd;
+
+			// Drop runs left empty
+			if (runLengths[run] > 0)
+			{
+				runLengths[kept] = runLengths[run];
+				runGlyphs[kept] = runGlyphs[run];
+				runAdvances[kept] = runAdvances[run];
+				kept++;
+			}
+		}
+		Arrays.fill(runGlyphs, kept, runCount, null);
+		runCount = kept;
+	}
+
+	/**
+	 * Lay out every run which has changed since it was last laid out
+	 *
+	 * @param text The text the runs cover
+	 * @param password Whether to lay out a mask character in place of each character
+	 * @param font Font to lay out with
+	 * @param fontRenderContext Rendering context the glyphs will be drawn with
+	 */
+	void layout(TextBuffer text, boolean password, Font font, FontRenderContext fontRenderContext)
+	{
+		int runStart = 0;
+		for (int run = 0; run < runCount; run++)
+		{
+			if (runGlyphs[run] == null)
+			{
+				if (runLengths[run] > MAX_RUN_LENGTH)
+				{
+					// Never split a surrogate pair between runs
+					int splitLength = RUN_LENGTH;
+					if (Character.isLowSurrogate(text.charAt(runStart + splitLength)))
+					{
+						splitLength++;
+					}
+					insertRun(run + 1, runLengths[run] - splitLength);
+					runLengths[run] = splitLength;
+				}
+
+				int length = runLengths[run];
+				if (password)
+				{
+					Arrays.fill(characters, 0, length, '*');
+				}
+				else
+				{
+					text.getChars(runStart, runStart + length, characters, 0);
+				}
+				GlyphVector glyphs = font.layoutGlyphVector(fontRenderContext, characters, 0, length, Font.LAYOUT_LEFT_TO_RIGHT);
+				runGlyphs[run] = glyphs;
+				runAdvances[run] = (float)glyphs.getGlyphPosition(glyphs.getNumGlyphs()).getX();
+			}
+			runStart += runLengths[run];
+		}
+	}
+
+	/**
+	 * Draw the runs with the Graphics2D's current color, skipping runs outside the clip.
+	 * The runs must have been laid out.
+	 *
+	 * @param graphics Graphics2D to draw with
+	 * @param x Position of the start of the text
+	 * @param baseline Position of the text's baseline
+	 * @param clip Area being drawn, or null to draw every run
+	 */
+	void draw(Graphics2D graphics, int x, int baseline, Rectangle clip)
+	{
+		float runX = x;
+		for (int run = 0; run < runCount; run++)
+		{
+			if (clip != null && runX > clip.x + clip.width)
+			{
+				break;
+			}
+			float runEndX = runX + runAdvances[run];
+			if (clip == null || runEndX >= clip.x)
+			{
+				graphics.drawGlyphVector(runGlyphs[run], runX, baseline);
+			}
+			runX = runEndX;
+		}
+	}
+
+	/**
+	 * Get the horizontal distance from the start of the text to a character. The runs must have been laid out.
+	 *
+	 * @param index Index of the character, or the length of the text for the end
+	 * @return Distance in pixels
+	 */
+	float getOffset(int index)
+	{
+		float offset = 0;
+		int runStart = 0;
+		for (int run = 0; run < runCount; run++)
+		{
+			int runEnd = runStart + runLengths[run];
+			if (index < runEnd)
+			{
+				GlyphVector glyphs = runGlyphs[run];
+				for (int glyph = 0; glyph < glyphs.getNumGlyphs(); glyph++)
+				{
+					if (runStart + glyphs.getGlyphCharIndex(glyph) >= index)
+					{
+						return offset + (float)glyphs.getGlyphPosition(glyph).getX();
+					}
+				}
+				return offset + runAdvances[run];
+			}
+			offset += runAdvances[run];
+			runStart = runEnd;
+		}
+		return offset;
+	}
+
+	/**
+	 * Find the character boundary closest to a horizontal distance from the start of
+	 * the text. The runs must have been laid out.
+	 *
+	 * @param offset Distance in pixels
+	 * @return Index of the closest boundary, from 0 to the length of the text
+	 */
+	int getIndexAt(float offset)
+	{
+		float runX = 0;
+		int runStart = 0;
+		for (int run = 0; run < runCount; run++)
+		{
+			if (offset < runX + runAdvances[run])
+			{
+				GlyphVector glyphs = runGlyphs[run];
+				for (int glyph = 0; glyph < glyphs.getNumGlyphs(); glyph++)
+				{
+					float left = runX + (float)glyphs.getGlyphPosition(glyph).getX();
+					float right = runX + (float)glyphs.getGlyphPosition(glyph + 1).getX();
+					if (offset < (left + right) / 2)
+					{
+						return runStart + glyphs.getGlyphCharIndex(glyph);
+					}
+				}
+			}
+			runX += runAdvances[run];
+			runStart += runLengths[run];
+		}
+		return runStart;
+	}
+
+	/**
+	 * Insert a run needing layout
+	 *
+	 * @param run Position to insert the run at
+	 * @param length Number of characters in the run
+	 */
+	private void insertRun(int run, int length)
+	{
+		if (runCount == runLengths.length)
+		{
+			runLengths = Arrays.copyOf(runLengths, runCount * 2);
+			runGlyphs = Arrays.copyOf(runGlyphs, runCount * 2);
+			runAdvances = Arrays.copyOf(runAdvances, runCount * 2);
+		}
+		System.arraycopy(runLengths, run, runLengths, run + 1, runCount - run);
+		System.arraycopy(runGlyphs, run, runGlyphs, run + 1, runCount - run);
+		System.arraycopy(runAdvances, run, runAdvances, run + 1, runCount - run);
+		runLengths[run] = length;
+		runGlyphs[run] = null;
+		runCount++;
+	}
+}
@@ -0,0 +1,177 @@
+package com.theopeneffect.flexml;
+
+/**
+ * Changes one property of a layout element from one value to another over time.
+ * Tweens are run by a RenderPanel's Animator, and several tweens on different
+ * properties or elements can be combined, with delays, to form a timeline.
+ * 
+ * Positions and sizes are fractions of the RenderPanel's size, as in a
+ * LayoutDescription, and opacity ranges from 0 (invisible) to 1 (opaque).
+ * Elements given in pixels or with constraints start from their resolved
+ * bounds, as fractions of the panel's current size.
+ * 
+ * @author Maxwell Sanchez
+ *
+ */
+public class Tween
+{
+	/**
+	 * The properties of an element which can be animated
+	 */
+	public static enum Property
+	{
+		POS_X, POS_Y, WIDTH, HEIGHT, OPACITY
+	}
+	
+	private final String identifier;
+	private final Property property;
+	private final double to;
+	private final long durationNanos;
+	private final Easing easing;
+	
+	// Value at the start, or NaN to start from the element's value when the tween begins
+	private double from = Double.NaN;
+	
+	// Time to wait before starting
+	private long delayNanos = 0;
+	
+	// Run on the animating thread once the tween completes
+	private Runnable onFinished;
+	
+	// Time since the tween was started, including the delay
+	private long elapsedNanos = 0;
+	
+	// Value the tween is interpolating from once it has begun
+	private double startValue = Double.NaN;
+	
+	/**
+	 * Create a Tween which starts from the element's value at the time it begins
+	 * 
+	 * @param identifier Identifier of the element to animate
+	 * @param property Property to animate
+	 * @param to Value at the end of the tween
+	 * @param durationMillis Length of the tween in milliseconds
+	 * @param easing Shape of the change over time
+	 */
+	public Tween(String identifier, Property property, double to, long durationMillis, Easing easing)
+	{
+		this.identifier = identifier;
+		this.property = property;
+		this.to = to;
+		this.durationNanos = Math.max(durationMillis, 0) * 1000000L;
+		this.easing = easing;
+	}
+	
+	/**
+	 * Create a Tween which changes at a constant speed
+	 * 
+	 * @param identifier Identifier of the element to animate
+	 * @param property Property to animate
+	 * @param to Value at the end of the tween
+	 * @param durationMillis Length of the tween in milliseconds
+	 */
+	public Tween(String identifier, Property property, double to, long durationMillis)
+	{
+		this(identifier, property, to, durationMillis, Easing.LINEAR);
+	}
+	
+	/**
+	 * Start from a fixed value rather than the element's value when the tween begins
+	 * 
+	 * @param from Value at the start of the tween
+	 */
+	public void setFrom(double from)
+	{
+		this.from = from;
+	}
+	
+	/**
+	 * Wait before starting. The element keeps its value until the delay has passed.
+	 * 
+	 * @param delayMillis Time to wait in milliseconds
+	 */
+	public void setDelay(long delayMillis)
+	{
+		this.delayNanos = Math.max(delayMillis, 0) * 1000000L;
+	}
+	
+	/**
+	 * Run something once the tween completes, such as starting the next step of a sequence
+	 * 
+	 * @param onFinished Called on the animating thread when the tween completes
+	 */
+	public void setOnFinished(Runnable onFinished)
+	{
+		this.onFinished = onFinished;
+	}
+	
+	public String getIdentifier()
+	{
+		return identifier;
+	}
+	
+	public Property getProperty()
+	{
+		return property;
+	}
+	
+	/**
+	 * Check whether the delay has passed and the tween has begun changing its property
+	 * 
+	 * @return Whether the tween has begun
+	 */
+	boolean hasBegun()
+	{
+		return elapsedNanos >= delayNanos;
+	}
+	
+	/**
+	 * Check whether the tween has reached its end
+	 * 
+	 * @return Whether the tween is complete
+	 */
+	boolean isFinished()
+	{
+		return elapsedNanos >= delayNanos + durationNanos;
+	}
+	
+	/**
+	 * Move the tween forward in time
+	 * 
+	 * @param deltaNanos Time passed, in nanoseconds
+	 * @param currentValue The property's value now, used as the start if the tween begins during this step
+	 */
+	void advance(long deltaNanos, double currentValue)
+	{
+		elapsedNanos += deltaNanos;
+		if (Double.isNaN(startValue) && hasBegun())
+		{
+			startValue = Double.isNaN(from) ? currentValue : from;
+		}
+	}
+	
+	/**
+	 * Get the property's value at the current point in the tween. Only valid once begun.
+	 * 
+	 * @return The interpolated value
+	 */
+	double getValue()
+	{
+		if (isFinished())
+		{
+			return to;
+		}
+		double progress = (double) (elapsedNanos - delayNanos) / durationNanos;
+		return startValue + (to - startValue) * easing.ease(progress);
+	}
+	
+	/**
+	 * Get the action to run when the tween completes
+	 * 
+	 * @return The action, or null if there is none
+	 */
+	Runnable getOnFinished()
+	{
+		return onFinished;
+	}
+}